@@ -0,0 +1,28 @@
+package com.izzdarki.wallet.preferences
+
+import androidx.annotation.ColorInt
+import com.izzdarki.wallet.utils.ItemProperty
+import com.izzdarki.wallet.utils.PackedBarcode
+import com.izzdarki.wallet.utils.Utility.PreferenceArrayString
+import java.io.File
+import java.util.*
+
+/**
+ * All data of a single card, as read by [CardPreferenceManager.readComplete].
+ * [codeMatrix] is the pre-rendered [code] or `null` if it has not been rendered yet
+ */
+data class CardData(
+    val ID: Int,
+    val name: String,
+    @ColorInt val color: Int,
+    val creationDate: Date,
+    val alterationDate: Date,
+    val labels: PreferenceArrayString,
+    val code: String,
+    val codeType: Int,
+    val codeTypeText: Boolean,
+    val frontImageFile: File?,
+    val backImageFile: File?,
+    val properties: MutableList<ItemProperty>,
+    val codeMatrix: PackedBarcode? = null,
+)
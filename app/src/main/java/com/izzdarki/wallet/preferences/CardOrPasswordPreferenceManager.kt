@@ -1,12 +1,21 @@
 package com.izzdarki.wallet.preferences
 
 import android.content.Context
+import android.content.SharedPreferences
 import com.izzdarki.wallet.utils.CardOrPasswordPreviewData
 import com.izzdarki.wallet.utils.ItemProperty
 import com.izzdarki.wallet.utils.Utility
 import java.util.*
 
 sealed interface CardOrPasswordPreferenceManager {
+
+    fun getPreferences(context: Context): SharedPreferences
+
+    /**
+     * Cache for [readAll], updated by all write and remove functions
+     */
+    val previewCache: PreviewDataCache
+
     fun readName(context: Context, ID: Int): String
     fun readColor(context: Context, ID: Int): Int
     fun readCreationDate(context: Context, ID: Int): Date
@@ -39,7 +48,7 @@ sealed interface CardOrPasswordPreferenceManager {
     fun writePropertySecret(context: Context, ID: Int, propertyID: Int, propertySecret: Boolean)
 
     /**
-     * Writes data, that is common between cards and passwords
+     * Writes data, that is common between cards and passwords, in a single [transaction]
      * Note that this function also removes old properties
      */
     fun writeCommon(
@@ -51,31 +60,7 @@ sealed interface CardOrPasswordPreferenceManager {
         alterationDate: Date,
         labels: Utility.PreferenceArrayString,
         properties: List<ItemProperty>
-    ) {
-        addToAllIDs(context, ID) // This should be fine. At this moment no other process should modify this preference list (Note that this only adds the ID if it is not yet contained in the list)
-        writeName(context, ID, name)
-        writeColor(context, ID, color)
-        writeCreationDate(context, ID, creationDate)
-        writeAlterationDate(context, ID, alterationDate)
-        writeLabels(context, ID, labels)
-
-        // remove old properties
-        for (propertyID in readPropertyIds(context, ID)) {
-            removePropertyName(context, ID, propertyID)
-            removePropertyValue(context, ID, propertyID)
-            removePropertySecret(context, ID, propertyID)
-        }
-
-        // write properties
-        val currentPropertyIDs =  Utility.PreferenceArrayInt() // Collects all current propertyIDs to write into preferences
-        for (property in properties) {
-            currentPropertyIDs.add(property.propertyID)
-            writePropertyName(context, ID, property.propertyID, property.name)
-            writePropertyValue(context, ID, property.propertyID, property.value)
-            writePropertySecret(context, ID, property.propertyID, property.secret)
-        }
-        writePropertyIds(context, ID, currentPropertyIDs)
-    }
+    )
 
     fun removeName(context: Context, ID: Int)
     fun removeColor(context: Context, ID: Int)
@@ -86,34 +71,78 @@ sealed interface CardOrPasswordPreferenceManager {
     fun removePropertyName(context: Context, ID: Int, propertyID: Int)
     fun removePropertyValue(context: Context, ID: Int, propertyID: Int)
     fun removePropertySecret(context: Context, ID: Int, propertyID: Int)
-    fun removeComplete(context: Context, ID: Int) {
-        removeName(context, ID)
-        removeColor(context, ID)
-        removeCreationDate(context, ID)
-        removeAlterationDate(context, ID)
-        removeLabels(context, ID)
-        for (propertyID in readPropertyIds(context, ID)) {
-            removePropertyName(context, ID, propertyID)
-            removePropertyValue(context, ID, propertyID)
-            removePropertySecret(context, ID, propertyID)
-        }
-        removePropertyIds(context, ID)
-        removeFromAllIDs(context, ID)
+    /**
+     * Removes all data of [ID] (including its entry in the list of all IDs) in a single [transaction]
+     */
+    fun removeComplete(context: Context, ID: Int)
+
+    /**
+     * Removes all data of all [IDs] like [removeComplete], but in a single [transaction] with a single update of the list of all IDs
+     */
+    fun removeMany(context: Context, IDs: Collection<Int>)
+
+    /**
+     * Runs [block] with a single editor, that is applied afterwards. All writes and removes done with that editor
+     * are written to disk at once instead of one disk write per key
+     * @param commit Whether to write synchronously with [SharedPreferences.Editor.commit] instead of [SharedPreferences.Editor.apply]
+     * @return Result of [SharedPreferences.Editor.commit] if [commit] is `true`, otherwise always `true`
+     */
+    fun transaction(context: Context, commit: Boolean = false, block: (editor: SharedPreferences.Editor) -> Unit): Boolean {
+        val editor = getPreferences(context).edit()
+        block(editor)
+        if (commit)
+            return editor.commit()
+        editor.apply()
+        return true
     }
 
     fun readAllIDs(context: Context): Utility.PreferenceArrayInt
     fun writeAllIDs(context: Context, allIDs: Utility.PreferenceArrayInt)
     fun addToAllIDs(context: Context, ID: Int)
     fun removeFromAllIDs(context: Context, ID: Int)
+
+    /**
+     * @param snapshot All preferences as returned by [SharedPreferences.getAll]
+     */
+    fun readAllIDs(snapshot: Map<String, *>): Utility.PreferenceArrayInt
+
+    /**
+     * Reads preview data of [ID] from [snapshot] without accessing the preferences again
+     * @param snapshot All preferences as returned by [SharedPreferences.getAll]
+     */
+    fun readPreviewData(context: Context, snapshot: Map<String, *>, ID: Int): CardOrPasswordPreviewData
+
+    /**
+     * Reads preview data of a single item from the preferences
+     */
+    fun readPreviewData(context: Context, ID: Int): CardOrPasswordPreviewData {
+        return CardOrPasswordPreviewData(
+            ID,
+            readName(context, ID),
+            readColor(context, ID),
+            readLabels(context, ID),
+            readCreationDate(context, ID).time,
+            readAlterationDate(context, ID).time,
+        )
+    }
+
+    /**
+     * Reads preview data of all items. Served from [previewCache], only items that are not cached are read from the preferences
+     */
     fun readAll(context: Context): List<CardOrPasswordPreviewData> {
-        return readAllIDs(context).map { ID ->
-            CardOrPasswordPreviewData(
-                ID,
-                readName(context, ID),
-                readColor(context, ID),
-                readLabels(context, ID)
-            )
-        }
+        return previewCache.readAll(
+            loadAll = { readAllFromPreferences(context) },
+            load = { ID -> readPreviewData(context, ID) }
+        )
+    }
+
+    /**
+     * Reads preview data of all items, bypassing [previewCache]. The preferences are decrypted only once ([SharedPreferences.getAll]),
+     * all items are then decoded from that snapshot. Decoding is cheap compared to the decryption, so it is done on the calling thread
+     */
+    fun readAllFromPreferences(context: Context): List<CardOrPasswordPreviewData> {
+        val snapshot = getPreferences(context).all
+        return readAllIDs(snapshot).map { ID -> readPreviewData(context, snapshot, ID) }
     }
 
     fun readCustomSortingNoGrouping(context: Context): Utility.PreferenceArrayInt
@@ -127,8 +156,8 @@ sealed interface CardOrPasswordPreferenceManager {
             if (lengthCompare != 0) lengthCompare
             else label1.compareTo(label2)
         }
-        for (ID in readAllIDs(context)) {
-            labels.addAll(readLabels(context, ID))
+        for (item in readAll(context)) {
+            labels.addAll(item.labels)
         }
         return labels
     }
@@ -2,6 +2,8 @@ package com.izzdarki.wallet.preferences
 
 import android.content.Context
 import android.content.SharedPreferences
+import android.util.Log
+import androidx.annotation.VisibleForTesting
 import izzdarki.wallet.R
 import com.izzdarki.wallet.utils.Utility.PreferenceArrayString
 import com.izzdarki.wallet.utils.Utility.PreferenceArrayInt
@@ -9,32 +11,41 @@ import com.izzdarki.wallet.utils.Utility.openEncryptedPreferences
 import java.util.*
 
 import com.izzdarki.wallet.utils.AppUtility
+import com.izzdarki.wallet.utils.CardImageCache
+import com.izzdarki.wallet.utils.CardOrPasswordPreviewData
 import com.izzdarki.wallet.utils.ItemProperty
+import com.izzdarki.wallet.utils.PackedBarcode
 import java.io.File
 
 
 object CardPreferenceManager : CardOrPasswordPreferenceManager {
+    private const val TAG = "CardPreferenceManager"
     private const val CARDS_PREFERENCES_NAME_ENCRYPTED = "cards"
-    
+    private const val MIGRATION_COMMIT_ATTEMPTS = 3
+
+    private const val PREFERENCE_STORAGE_VERSION = "storage_version" // int (CardRecord.VERSION, 0 means per-field keys)
     private const val PREFERENCE_ALL_CARD_IDS = "card_ids" // (String) PreferenceArrayInt
     private const val PREFERENCE_CUSTOM_SORTING_NO_GROUPING = "custom_sorting_no_grouping" // String (PreferenceArrayInt)
     private const val PREFERENCE_CUSTOM_SORTING_WITH_GROUPING = "custom_sorting_with_grouping" // String (Map<String, List<String>>)
 
-    private const val PREFERENCE_CARD_NAME = "%d.name" // String
-    private const val PREFERENCE_CARD_CODE = "%d.code" // String
-    private const val PREFERENCE_CARD_CODE_TYPE = "%d.code_type" // int (see preference values below)
-    private const val PREFERENCE_CARD_CODE_TYPE_TEXT = "%d.code_type_text" // boolean
+    private const val PREFERENCE_CARD_RECORD = "%d.record" // String (CardRecord)
     private const val PREFERENCE_CARD_ID = "%d.id" // String
-    private const val PREFERENCE_CARD_COLOR = "%d.color" // @ColorInt int
-    private const val PREFERENCE_CARD_LABELS = "%d.labels" // String (PreferenceArrayString)
-    private const val PREFERENCE_CARD_FRONT_IMAGE = "%d.front_image_file_path" // String
-    private const val PREFERENCE_CARD_BACK_IMAGE = "%d.back_image_file_path" // String
-    private const val PREFERENCE_CARD_CREATION_DATE = "%d.creation_date" // long (Date)
-    private const val PREFERENCE_CARD_ALTERATION_DATE = "%d.alteration_date" // long (Date)
-    private const val PREFERENCE_CARD_PROPERTIES_IDS = "%d.card_properties_ids" // String (PreferenceArrayInt)
-    private const val PREFERENCE_CARD_PROPERTY_NAME = "%d.%d.name" // String
-    private const val PREFERENCE_CARD_PROPERTY_VALUE = "%d.%d.value" // String
-    private const val PREFERENCE_CARD_PROPERTY_SECRET = "%d.%d.property_secret" // boolean
+
+    // per-field keys used before storage version 1 (only needed for migration)
+    private const val LEGACY_PREFERENCE_CARD_NAME = "%d.name" // String
+    private const val LEGACY_PREFERENCE_CARD_CODE = "%d.code" // String
+    private const val LEGACY_PREFERENCE_CARD_CODE_TYPE = "%d.code_type" // int
+    private const val LEGACY_PREFERENCE_CARD_CODE_TYPE_TEXT = "%d.code_type_text" // boolean
+    private const val LEGACY_PREFERENCE_CARD_COLOR = "%d.color" // @ColorInt int
+    private const val LEGACY_PREFERENCE_CARD_LABELS = "%d.labels" // String (PreferenceArrayString)
+    private const val LEGACY_PREFERENCE_CARD_FRONT_IMAGE = "%d.front_image_file_path" // String
+    private const val LEGACY_PREFERENCE_CARD_BACK_IMAGE = "%d.back_image_file_path" // String
+    private const val LEGACY_PREFERENCE_CARD_CREATION_DATE = "%d.creation_date" // long (Date)
+    private const val LEGACY_PREFERENCE_CARD_ALTERATION_DATE = "%d.alteration_date" // long (Date)
+    private const val LEGACY_PREFERENCE_CARD_PROPERTIES_IDS = "%d.card_properties_ids" // String (PreferenceArrayInt)
+    private const val LEGACY_PREFERENCE_CARD_PROPERTY_NAME = "%d.%d.name" // String
+    private const val LEGACY_PREFERENCE_CARD_PROPERTY_VALUE = "%d.%d.value" // String
+    private const val LEGACY_PREFERENCE_CARD_PROPERTY_SECRET = "%d.%d.property_secret" // boolean
 
     private const val CARD_CODE_TYPE_TEXT_DEFAULT = false // only used when value on preferences is missing (should never be missing)
 
@@ -54,90 +65,91 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
     const val CARD_CODE_TYPE_UPC_E = 16
 
 
+    override val previewCache = PreviewDataCache()
+
+
     // region read functions
     /**
      * @return Card name or empty string if not found in preferences
      */
     override fun readName(context: Context, ID: Int): String {
-        return getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_NAME), "")!!
+        return readRecord(context, ID)?.name ?: ""
     }
 
     /**
      * @return Color or [R.color.card_default_color] as default value if not found in preferences
      * */
     override fun readColor(context: Context, ID: Int): Int {
-        return getPreferences(context).getInt(
-            getKey(ID, PREFERENCE_CARD_COLOR),
-            context.resources.getColor(R.color.card_default_color)
-        )
+        return readRecord(context, ID)?.color
+            ?: context.resources.getColor(R.color.card_default_color)
     }
 
     /**
      * @return Creation date or (January 1, 1970, 00:00:00 GMT) if not found in preferences
      * */
     override fun readCreationDate(context: Context, ID: Int): Date {
-        val time = getPreferences(context).getLong(getKey(ID, PREFERENCE_CARD_CREATION_DATE), 0)
-        return Date(time)
+        return Date(readRecord(context, ID)?.creationDate ?: 0)
     }
 
     /**
      * @return Alteration date or (January 1, 1970, 00:00:00 GMT) if not found in preferences
      */
     override fun readAlterationDate(context: Context, ID: Int): Date {
-        val time = getPreferences(context).getLong(getKey(ID, PREFERENCE_CARD_ALTERATION_DATE), 0)
-        return Date(time)
+        return Date(readRecord(context, ID)?.alterationDate ?: 0)
     }
 
     override fun readLabels(context: Context, ID: Int): PreferenceArrayString {
-        val preferenceString =
-            getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_LABELS), "")
-        return PreferenceArrayString(preferenceString)
+        val labels = readRecord(context, ID)?.labels ?: listOf()
+        return PreferenceArrayString(labels.iterator())
     }
 
     override fun readPropertyIds(context: Context, ID: Int): PreferenceArrayInt {
-        return PreferenceArrayInt(
-            getPreferences(context).getString(
-                getKey(
-                    ID,
-                    PREFERENCE_CARD_PROPERTIES_IDS
-                ), null
-            ))
+        val properties = readRecord(context, ID)?.properties ?: listOf()
+        return PreferenceArrayInt(properties.map { it.propertyID }.iterator())
     }
 
     override fun readPropertyName(context: Context, ID: Int, propertyID: Int): String {
-        return getPreferences(context).getString(getPropertyNameKey(ID, propertyID), "")!!
+        return readRecord(context, ID)?.findProperty(propertyID)?.name ?: ""
     }
 
     override fun readPropertyValue(context: Context, ID: Int, propertyID: Int): String {
-        return getPreferences(context).getString(getPropertyValueKey(ID, propertyID), "")!!
+        return readRecord(context, ID)?.findProperty(propertyID)?.value ?: ""
     }
 
     /**
      * @return true if the property should be secret, false otherwise. Also false if not found in preferences
      */
     override fun readPropertySecret(context: Context, ID: Int, propertyID: Int): Boolean {
-        return getPreferences(context).getBoolean(getPropertySecretKey(ID, propertyID), false)
+        return readRecord(context, ID)?.findProperty(propertyID)?.secret ?: false
+    }
+
+    /**
+     * Reads all properties with a single record read
+     */
+    override fun readProperties(context: Context, ID: Int): MutableList<ItemProperty> {
+        val properties = readRecord(context, ID)?.properties ?: return mutableListOf()
+        return properties.map { copyProperty(it) }.toMutableList()
     }
 
     /**
      * @return Card code or empty string as default value if not found in preferences
      */
     fun readCode(context: Context, ID: Int): String? {
-        return getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_CODE), "")
+        return readRecord(context, ID)?.code ?: ""
     }
 
     /**
      * @return Card code type or `-1` if not found in preferences, values defined in [CardPreferenceManager], for example [CARD_CODE_TYPE_QR]
      */
     fun readCodeType(context: Context, ID: Int): Int {
-        return getPreferences(context).getInt(getKey(ID, PREFERENCE_CARD_CODE_TYPE), -1)
+        return readRecord(context, ID)?.codeType ?: -1
     }
 
     /**
      * @return Card code type text or [CARD_CODE_TYPE_TEXT_DEFAULT] as default value if not found in preferences
      */
     fun readCodeTypeText(context: Context, ID: Int): Boolean {
-        return getPreferences(context).getBoolean(getKey(ID, PREFERENCE_CARD_CODE_TYPE_TEXT), CARD_CODE_TYPE_TEXT_DEFAULT)
+        return readRecord(context, ID)?.codeTypeText ?: CARD_CODE_TYPE_TEXT_DEFAULT
     }
 
     /**
@@ -152,7 +164,7 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
      * @return Absolute path of card front image or `null` if not found in preferences
      */
     fun readFrontImagePath(context: Context, ID: Int): String? {
-        return getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_FRONT_IMAGE), null)
+        return readRecord(context, ID)?.frontImagePath
     }
 
     /**
@@ -167,7 +179,7 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
      * @return Absolute path of card back image or `null` if not found in preferences
      */
     fun readBackImagePath(context: Context, ID: Int): String? {
-        return getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_BACK_IMAGE), null)
+        return readRecord(context, ID)?.backImagePath
     }
 
     /**
@@ -177,60 +189,108 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
         val filePath = readBackImagePath(context, ID)
         return if (filePath != null) File(filePath) else null
     }
+
+    /**
+     * Reads the whole card with a single record read
+     * @return Card data or `null` if card [ID] has no record
+     * @throws IllegalStateException if the record can't be decoded (the card is listed with an empty preview, see [readPreviewData])
+     */
+    fun readComplete(context: Context, ID: Int): CardData? {
+        val record = readRecord(context, ID) ?: return null
+        return CardData(
+            ID,
+            name = record.name,
+            color = record.color ?: context.resources.getColor(R.color.card_default_color),
+            creationDate = Date(record.creationDate),
+            alterationDate = Date(record.alterationDate),
+            labels = PreferenceArrayString(record.labels.iterator()),
+            code = record.code,
+            codeType = record.codeType,
+            codeTypeText = record.codeTypeText,
+            frontImageFile = record.frontImagePath?.let { File(it) },
+            backImageFile = record.backImagePath?.let { File(it) },
+            properties = record.properties.map { copyProperty(it) }.toMutableList(),
+            codeMatrix = record.codeMatrix,
+        )
+    }
     // endregion
 
 
     // region write functions
     override fun writeName(context: Context, ID: Int, name: String) {
-        getPreferences(context).edit().putString(getKey(ID, PREFERENCE_CARD_NAME), name).apply()
+        updateRecord(context, ID) { record -> record.name = name }
     }
 
     override fun writeColor(context: Context, ID: Int, color: Int) {
-        getPreferences(context).edit().putInt(getKey(ID, PREFERENCE_CARD_COLOR), color).apply()
+        updateRecord(context, ID) { record -> record.color = color }
     }
 
     override fun writeCreationDate(context: Context, ID: Int, creationDate: Date) {
-        getPreferences(context).edit().putLong(getKey(ID, PREFERENCE_CARD_CREATION_DATE), creationDate.time).apply()
+        updateRecord(context, ID) { record -> record.creationDate = creationDate.time }
     }
 
     override fun writeAlterationDate(context: Context, ID: Int, alterationDate: Date) {
-        getPreferences(context).edit().putLong(getKey(ID, PREFERENCE_CARD_ALTERATION_DATE), alterationDate.time).apply()
+        updateRecord(context, ID) { record -> record.alterationDate = alterationDate.time }
     }
 
     override fun writeLabels(context: Context, ID: Int, labels: PreferenceArrayString) {
-        getPreferences(context).edit().putString(getKey(ID, PREFERENCE_CARD_LABELS), labels.toPreference()).apply()
+        updateRecord(context, ID) { record -> record.labels = labels.toList() }
     }
 
+    /**
+     * Properties not contained in [propertyIDs] are dropped, new ones are added empty
+     */
     override fun writePropertyIds(context: Context, ID: Int, propertyIDs: PreferenceArrayInt) {
-        getPreferences(context).edit().putString(getKey(ID, PREFERENCE_CARD_PROPERTIES_IDS), propertyIDs.toPreference()).apply()
+        updateRecord(context, ID) { record ->
+            record.properties = propertyIDs.map { propertyID ->
+                record.findProperty(propertyID) ?: ItemProperty(propertyID, "", "", false)
+            }.toMutableList()
+        }
     }
 
     override fun writePropertyName(context: Context, ID: Int, propertyID: Int, propertyName: String) {
-        getPreferences(context).edit().putString(getPropertyNameKey(ID, propertyID), propertyName).apply()
+        updateRecord(context, ID) { record -> getOrAddProperty(record, propertyID).name = propertyName }
     }
 
     override fun writePropertyValue(context: Context, ID: Int, propertyID: Int, propertyValue: String) {
-        getPreferences(context).edit().putString(getPropertyValueKey(ID, propertyID), propertyValue).apply()
+        updateRecord(context, ID) { record -> getOrAddProperty(record, propertyID).value = propertyValue }
     }
 
     override fun writePropertySecret(context: Context, ID: Int, propertyID: Int, propertySecret: Boolean) {
-        getPreferences(context).edit().putBoolean(getPropertySecretKey(ID, propertyID), propertySecret).apply()
+        updateRecord(context, ID) { record -> getOrAddProperty(record, propertyID).secret = propertySecret }
     }
 
     fun writeCode(context: Context, ID: Int, cardCode: String?) {
-        getPreferences(context).edit().putString(getKey(ID, PREFERENCE_CARD_CODE), cardCode).apply()
+        updateRecord(context, ID) { record ->
+            record.code = cardCode ?: ""
+            record.codeMatrix = null
+        }
     }
 
     /**
      * @param codeType New card code type, values defined in [CardPreferenceManager], for example [CARD_CODE_TYPE_QR]
      */
     fun writeCodeType(context: Context, ID: Int, codeType: Int) {
-        getPreferences(context).edit().putInt(getKey(ID, PREFERENCE_CARD_CODE_TYPE), codeType).apply()
+        updateRecord(context, ID) { record ->
+            record.codeType = codeType
+            record.codeMatrix = null
+        }
+    }
+
+    /**
+     * Stores [codeMatrix] as the pre-rendered code of card [ID], but only if the card still has [code] in [codeType]
+     * (the code might have been changed while it was rendered). Does nothing if card [ID] doesn't exist or its record can't be decoded
+     */
+    fun writeCodeMatrix(context: Context, ID: Int, code: String, codeType: Int, codeMatrix: PackedBarcode) {
+        val record = decodeRecordOrNull(ID, getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_RECORD), null)) ?: return
+        if (record.code != code || record.codeType != codeType)
+            return
+        record.codeMatrix = codeMatrix
+        writeRecord(context, ID, record)
     }
 
     fun writeCodeTypeText(context: Context, ID: Int, codeTypeText: Boolean) {
-        getPreferences(context).edit()
-            .putBoolean(getKey(ID, PREFERENCE_CARD_CODE_TYPE_TEXT), codeTypeText).apply()
+        updateRecord(context, ID) { record -> record.codeTypeText = codeTypeText }
     }
 
     @Deprecated("Card id doesn't exist anymore")
@@ -245,7 +305,7 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
      */
     fun writeFrontImage(context: Context, ID: Int, frontImageFile: File?) {
         if (frontImageFile != null)
-            getPreferences(context).edit().putString(getKey(ID, PREFERENCE_CARD_FRONT_IMAGE), frontImageFile.absolutePath).apply()
+            updateRecord(context, ID) { record -> record.frontImagePath = frontImageFile.absolutePath }
         else
             removeFrontImage(context, ID)
     }
@@ -257,13 +317,41 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
      */
     fun writeBackImage(context: Context, ID: Int, backImageFile: File?) {
         if (backImageFile != null)
-            getPreferences(context).edit().putString(getKey(ID, PREFERENCE_CARD_BACK_IMAGE), backImageFile.absolutePath).apply()
+            updateRecord(context, ID) { record -> record.backImagePath = backImageFile.absolutePath }
         else
             removeBackImage(context, ID)
     }
 
     /**
+     * Writes the common data into the card record and adds [ID] to all IDs with a single read and write.
+     * Note that this function also removes old properties
+     */
+    override fun writeCommon(
+        context: Context,
+        ID: Int,
+        name: String,
+        color: Int,
+        creationDate: Date,
+        alterationDate: Date,
+        labels: PreferenceArrayString,
+        properties: List<ItemProperty>
+    ) {
+        val record = readRecord(context, ID) ?: CardRecord()
+        record.name = name
+        record.color = color
+        record.creationDate = creationDate.time
+        record.alterationDate = alterationDate.time
+        record.labels = labels.toList()
+        record.properties = properties.map { copyProperty(it) }.toMutableList()
+        writeRecordAndAddToAllIDs(context, ID, record)
+    }
+
+    /**
+     * Writes the whole card as one record and adds [ID] to all IDs in a single [transaction] (no need to read the old record).
      * Note that this function also removes old properties
+     * @param codeMatrix Pre-rendered [code] in [codeType] (see [com.izzdarki.wallet.utils.BarcodeRenderer.prerender]) or `null`
+     * @param commit See [transaction]
+     * @return `false` if [commit] is `true` and the card couldn't be written
      */
     fun writeComplete(
         context: Context,
@@ -279,73 +367,80 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
         frontImage: File?,
         backImage: File?,
         properties: List<ItemProperty>,
-    ) {
-        writeCommon(
-            context,
-            ID,
-            name,
-            color,
-            creationDate,
-            alterationDate,
-            labels,
-            properties,
-        )
-        writeCode(context, ID, code)
-        writeCodeType(context, ID, codeType)
-        writeCodeTypeText(context, ID, codeTypeText)
-        writeFrontImage(context, ID, frontImage)
-        writeBackImage(context, ID, backImage)
+        codeMatrix: PackedBarcode?,
+        commit: Boolean = false,
+    ): Boolean {
+        return writeRecordAndAddToAllIDs(context, ID, CardRecord(
+            name = name,
+            color = color,
+            creationDate = creationDate.time,
+            alterationDate = alterationDate.time,
+            labels = labels.toList(),
+            code = code,
+            codeType = codeType,
+            codeTypeText = codeTypeText,
+            frontImagePath = frontImage?.absolutePath,
+            backImagePath = backImage?.absolutePath,
+            properties = properties.map { copyProperty(it) }.toMutableList(),
+            codeMatrix = codeMatrix,
+        ), commit)
     }
     // endregion
 
 
     // region remove functions
     override fun removeName(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_NAME)).apply()
+        updateExistingRecord(context, ID) { record -> record.name = "" }
     }
 
     override fun removeColor(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_COLOR)).apply()
+        updateExistingRecord(context, ID) { record -> record.color = null }
     }
 
     override fun removeCreationDate(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_CREATION_DATE)).apply()
+        updateExistingRecord(context, ID) { record -> record.creationDate = 0 }
     }
 
     override fun removeAlterationDate(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_ALTERATION_DATE)).apply()
+        updateExistingRecord(context, ID) { record -> record.alterationDate = 0 }
     }
 
     override fun removeLabels(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_LABELS)).apply()
+        updateExistingRecord(context, ID) { record -> record.labels = listOf() }
     }
 
     override fun removePropertyIds(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_PROPERTIES_IDS)).apply()
+        updateExistingRecord(context, ID) { record -> record.properties = mutableListOf() }
     }
 
     override fun removePropertyName(context: Context, ID: Int, propertyID: Int) {
-        getPreferences(context).edit().remove(getPropertyNameKey(ID, propertyID)).apply()
+        updateExistingRecord(context, ID) { record -> record.findProperty(propertyID)?.name = "" }
     }
 
     override fun removePropertyValue(context: Context, ID: Int, propertyID: Int) {
-        getPreferences(context).edit().remove(getPropertyValueKey(ID, propertyID)).apply()
+        updateExistingRecord(context, ID) { record -> record.findProperty(propertyID)?.value = "" }
     }
 
     override fun removePropertySecret(context: Context, ID: Int, propertyID: Int) {
-        getPreferences(context).edit().remove(getPropertySecretKey(ID, propertyID)).apply()
+        updateExistingRecord(context, ID) { record -> record.findProperty(propertyID)?.secret = false }
     }
 
     fun removeCode(context: Context?, ID: Int) {
-        getPreferences(context!!).edit().remove(getKey(ID, PREFERENCE_CARD_CODE)).apply()
+        updateExistingRecord(context!!, ID) { record ->
+            record.code = ""
+            record.codeMatrix = null
+        }
     }
 
     fun removeCodeType(context: Context?, ID: Int) {
-        getPreferences(context!!).edit().remove(getKey(ID, PREFERENCE_CARD_CODE_TYPE)).apply()
+        updateExistingRecord(context!!, ID) { record ->
+            record.codeType = -1
+            record.codeMatrix = null
+        }
     }
 
     fun removeCodeTypeText(context: Context?, ID: Int) {
-        getPreferences(context!!).edit().remove(getKey(ID, PREFERENCE_CARD_CODE_TYPE_TEXT)).apply()
+        updateExistingRecord(context!!, ID) { record -> record.codeTypeText = CARD_CODE_TYPE_TEXT_DEFAULT }
     }
 
     @Deprecated("Card id doesn't exist anymore")
@@ -354,12 +449,13 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
     }
 
     private fun removeFrontImage(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_FRONT_IMAGE)).apply()
+        updateExistingRecord(context, ID) { record -> record.frontImagePath = null }
     }
 
     fun deleteFrontImage(context: Context, ID: Int) {
         val image: File? = readFrontImageFile(context, ID)
         if (image != null) {
+            CardImageCache.remove(context, image)
             if (!image.delete()) {
                 /*
                 if (BuildConfig.DEBUG)
@@ -371,12 +467,13 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
     }
 
     private fun removeBackImage(context: Context, ID: Int) {
-        getPreferences(context).edit().remove(getKey(ID, PREFERENCE_CARD_BACK_IMAGE)).apply()
+        updateExistingRecord(context, ID) { record -> record.backImagePath = null }
     }
 
     fun deleteBackImage(context: Context, ID: Int) {
         val image: File? = readBackImageFile(context, ID)
         if (image != null) {
+            CardImageCache.remove(context, image)
             if (!image.delete()) {
                 /*
                 if (BuildConfig.DEBUG)
@@ -387,14 +484,51 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
         removeBackImage(context, ID)
     }
 
+    /**
+     * Removes the card record and the ID from all IDs in a single [transaction] and deletes the card images.
+     * Also works if the record can't be decoded (then the images are kept)
+     */
     override fun removeComplete(context: Context, ID: Int) {
-        super.removeComplete(context, ID)
+        val record = decodeRecordOrNull(ID, getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_RECORD), null))
+        val cardIDs = readAllIDs(context)
+        cardIDs.remove(ID)
+        transaction(context) { editor ->
+            editor.remove(getKey(ID, PREFERENCE_CARD_RECORD))
+            putAllIDs(editor, cardIDs)
+        }
+        previewCache.remove(ID)
+
+        record?.frontImagePath?.let { deleteImageFile(context, File(it)) }
+        record?.backImagePath?.let { deleteImageFile(context, File(it)) }
+    }
+
+    /**
+     * Removes all card records and [IDs] from all IDs in a single [transaction] and deletes the card images
+     */
+    override fun removeMany(context: Context, IDs: Collection<Int>) {
+        val snapshot = getPreferences(context).all // decrypts everything once
+        val records = IDs.mapNotNull { ID -> decodeRecordOrNull(ID, snapshot[getKey(ID, PREFERENCE_CARD_RECORD)] as String?) }
+        val removedIDs = IDs.toSet()
+        val cardIDs = PreferenceArrayInt(readAllIDs(snapshot).filter { it !in removedIDs }.iterator())
+        transaction(context) { editor ->
+            for (ID in IDs)
+                editor.remove(getKey(ID, PREFERENCE_CARD_RECORD))
+            putAllIDs(editor, cardIDs)
+        }
+        previewCache.remove(IDs)
 
-        removeCode(context, ID)
-        removeCodeType(context, ID)
-        removeCodeTypeText(context, ID)
-        deleteFrontImage(context, ID)
-        deleteBackImage(context, ID)
+        for (record in records) {
+            record.frontImagePath?.let { deleteImageFile(context, File(it)) }
+            record.backImagePath?.let { deleteImageFile(context, File(it)) }
+        }
+    }
+
+    /**
+     * Deletes [imageFile] and its cached thumbnails
+     */
+    private fun deleteImageFile(context: Context, imageFile: File) {
+        CardImageCache.remove(context, imageFile)
+        imageFile.delete()
     }
 
     // endregion
@@ -405,8 +539,29 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
         return PreferenceArrayInt(getPreferences(context).getString(PREFERENCE_ALL_CARD_IDS, null))
     }
 
+    override fun readAllIDs(snapshot: Map<String, *>): PreferenceArrayInt {
+        return PreferenceArrayInt(snapshot[PREFERENCE_ALL_CARD_IDS] as String?)
+    }
+
+    /**
+     * @return Preview data of card [ID] or an empty placeholder if its record can't be decoded (so the card can still be listed and removed)
+     */
+    override fun readPreviewData(context: Context, snapshot: Map<String, *>, ID: Int): CardOrPasswordPreviewData {
+        val record = decodeRecordOrNull(ID, snapshot[getKey(ID, PREFERENCE_CARD_RECORD)] as String?)
+        return createPreviewData(context, ID, record)
+    }
+
+    /**
+     * @return Preview data of card [ID] or an empty placeholder if its record can't be decoded (so the card can still be listed and removed)
+     */
+    override fun readPreviewData(context: Context, ID: Int): CardOrPasswordPreviewData {
+        val record = decodeRecordOrNull(ID, getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_RECORD), null))
+        return createPreviewData(context, ID, record)
+    }
+
     override fun writeAllIDs(context: Context, allIDs: PreferenceArrayInt) {
-        getPreferences(context).edit().putString(PREFERENCE_ALL_CARD_IDS, allIDs.toPreference()).apply()
+        putAllIDs(context, allIDs)
+        previewCache.clear() // the cached items might not match the new list
     }
 
     /**
@@ -420,7 +575,8 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
         val cardIDs: PreferenceArrayInt = readAllIDs(context)
         if (!cardIDs.contains(ID))
             cardIDs.add(ID)
-        writeAllIDs(context, cardIDs)
+        putAllIDs(context, cardIDs)
+        previewCache.add(ID)
     }
 
     /**
@@ -434,7 +590,8 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
         val cardIDs: PreferenceArrayInt = readAllIDs(context)
         cardIDs.remove(ID) // no need to check if cardIDs contains ID
 
-        writeAllIDs(context, cardIDs)
+        putAllIDs(context, cardIDs)
+        previewCache.remove(ID)
     }
     // endregion
 
@@ -469,27 +626,188 @@ object CardPreferenceManager : CardOrPasswordPreferenceManager {
     // region private helper
     private var preferences: SharedPreferences? = null
 
-    @Synchronized fun getPreferences(context: Context): SharedPreferences {
-        if (preferences == null)
+    @Synchronized override fun getPreferences(context: Context): SharedPreferences {
+        if (preferences == null) {
             // preferences = context.getSharedPreferences("cards-test", MODE_PRIVATE) // not encrypted for testing
-            preferences = openEncryptedPreferences(context, CARDS_PREFERENCES_NAME_ENCRYPTED)
+            val openedPreferences = openEncryptedPreferences(context, CARDS_PREFERENCES_NAME_ENCRYPTED)
+            migrateToRecords(openedPreferences)
+            preferences = openedPreferences
+        }
         return preferences!!
     }
 
-    private fun getKey(ID: Int, cardPropertyPreferenceKey: String?): String {
-        return String.format(Locale.ENGLISH, cardPropertyPreferenceKey!!, ID)
+    /**
+     * @return Decoded record of card [ID] or `null` if there is no record
+     * @throws IllegalStateException if the record can't be decoded
+     */
+    private fun readRecord(context: Context, ID: Int): CardRecord? {
+        return CardRecord.fromPreference(getPreferences(context).getString(getKey(ID, PREFERENCE_CARD_RECORD), null))
     }
 
-    private fun getPropertyNameKey(ID: Int, propertyID: Int): String {
-        return String.format(Locale.ENGLISH, PREFERENCE_CARD_PROPERTY_NAME, ID, propertyID)
+    /**
+     * Used where a single broken card must not break the whole list, only opening the card itself reports the error (see [readRecord])
+     * @return Decoded record of card [ID] or `null` if there is no record or it can't be decoded (corrupt or written by a newer version)
+     */
+    private fun decodeRecordOrNull(ID: Int, preferenceString: String?): CardRecord? {
+        return try {
+            CardRecord.fromPreference(preferenceString)
+        } catch (e: IllegalStateException) {
+            Log.e(TAG, "Couldn't decode record of card $ID") // not the exception, its message might contain the record
+            null
+        }
+    }
+
+    private fun writeRecord(context: Context, ID: Int, record: CardRecord) {
+        getPreferences(context).edit().putString(getKey(ID, PREFERENCE_CARD_RECORD), record.toPreference()).apply()
+        previewCache.update(createPreviewData(context, ID, record))
+    }
+
+    /**
+     * Writes [record] and adds [ID] to all IDs (if not yet contained) in a single [transaction]
+     * @return See [transaction]
+     */
+    private fun writeRecordAndAddToAllIDs(context: Context, ID: Int, record: CardRecord, commit: Boolean = false): Boolean {
+        val cardIDs = readAllIDs(context) // This should be fine. At this moment no other process should modify this preference list
+        val written = transaction(context, commit) { editor ->
+            if (!cardIDs.contains(ID)) {
+                cardIDs.add(ID)
+                putAllIDs(editor, cardIDs)
+            }
+            editor.putString(getKey(ID, PREFERENCE_CARD_RECORD), record.toPreference())
+        }
+        if (written)
+            previewCache.put(createPreviewData(context, ID, record))
+        return written
     }
 
-    private fun getPropertyValueKey(ID: Int, propertyID: Int): String {
-        return String.format(Locale.ENGLISH, PREFERENCE_CARD_PROPERTY_VALUE, ID, propertyID)
+    private fun createPreviewData(context: Context, ID: Int, record: CardRecord?): CardOrPasswordPreviewData {
+        return CardOrPasswordPreviewData(
+            ID,
+            name = record?.name ?: "",
+            color = record?.color ?: context.resources.getColor(R.color.card_default_color),
+            labels = record?.labels ?: listOf(),
+            creationDate = record?.creationDate ?: 0,
+            alterationDate = record?.alterationDate ?: 0,
+        )
+    }
+
+    private fun putAllIDs(context: Context, allIDs: PreferenceArrayInt) {
+        transaction(context) { editor -> putAllIDs(editor, allIDs) }
+    }
+
+    private fun putAllIDs(editor: SharedPreferences.Editor, allIDs: PreferenceArrayInt) {
+        editor.putString(PREFERENCE_ALL_CARD_IDS, allIDs.toPreference())
+    }
+
+    /**
+     * Reads the record of card [ID] (or creates an empty one), applies [update] and writes it back
+     */
+    private inline fun updateRecord(context: Context, ID: Int, update: (CardRecord) -> Unit) {
+        val record = readRecord(context, ID) ?: CardRecord()
+        update(record)
+        writeRecord(context, ID, record)
+    }
+
+    /**
+     * Same as [updateRecord], but does nothing if card [ID] has no record
+     */
+    private inline fun updateExistingRecord(context: Context, ID: Int, update: (CardRecord) -> Unit) {
+        val record = readRecord(context, ID) ?: return
+        update(record)
+        writeRecord(context, ID, record)
+    }
+
+    private fun getOrAddProperty(record: CardRecord, propertyID: Int): ItemProperty {
+        return record.findProperty(propertyID)
+            ?: ItemProperty(propertyID, "", "", false).also { record.properties.add(it) }
+    }
+
+    private fun copyProperty(property: ItemProperty): ItemProperty {
+        return ItemProperty(property.propertyID, property.name, property.value, property.secret)
+    }
+
+    /**
+     * Moves all cards stored with per-field keys (storage version 0) into one [CardRecord] each.
+     * Runs once, all changes are committed together before the preferences are used.
+     * A failed commit is retried with a new editor, if it keeps failing the preferences can't be used
+     * @throws IllegalStateException if the changes couldn't be committed after [MIGRATION_COMMIT_ATTEMPTS] attempts
+     */
+    @VisibleForTesting
+    internal fun migrateToRecords(preferences: SharedPreferences) {
+        if (preferences.getInt(PREFERENCE_STORAGE_VERSION, 0) >= CardRecord.VERSION)
+            return
+
+        val records = LinkedHashMap<String, String>() // key -> record
+        val legacyKeys = ArrayList<String>()
+        for (ID in PreferenceArrayInt(preferences.getString(PREFERENCE_ALL_CARD_IDS, null))) {
+            if (preferences.contains(getKey(ID, PREFERENCE_CARD_RECORD)))
+                continue // already migrated
+
+            val colorKey = getKey(ID, LEGACY_PREFERENCE_CARD_COLOR)
+            val propertyIDs = PreferenceArrayInt(preferences.getString(getKey(ID, LEGACY_PREFERENCE_CARD_PROPERTIES_IDS), null))
+            val record = CardRecord(
+                name = preferences.getString(getKey(ID, LEGACY_PREFERENCE_CARD_NAME), null) ?: "",
+                color = if (preferences.contains(colorKey)) preferences.getInt(colorKey, 0) else null,
+                creationDate = preferences.getLong(getKey(ID, LEGACY_PREFERENCE_CARD_CREATION_DATE), 0),
+                alterationDate = preferences.getLong(getKey(ID, LEGACY_PREFERENCE_CARD_ALTERATION_DATE), 0),
+                labels = PreferenceArrayString(preferences.getString(getKey(ID, LEGACY_PREFERENCE_CARD_LABELS), null)),
+                code = preferences.getString(getKey(ID, LEGACY_PREFERENCE_CARD_CODE), null) ?: "",
+                codeType = preferences.getInt(getKey(ID, LEGACY_PREFERENCE_CARD_CODE_TYPE), -1),
+                codeTypeText = preferences.getBoolean(getKey(ID, LEGACY_PREFERENCE_CARD_CODE_TYPE_TEXT), CARD_CODE_TYPE_TEXT_DEFAULT),
+                frontImagePath = preferences.getString(getKey(ID, LEGACY_PREFERENCE_CARD_FRONT_IMAGE), null),
+                backImagePath = preferences.getString(getKey(ID, LEGACY_PREFERENCE_CARD_BACK_IMAGE), null),
+                properties = propertyIDs.map { propertyID ->
+                    ItemProperty(
+                        propertyID,
+                        name = preferences.getString(getPropertyKey(ID, propertyID, LEGACY_PREFERENCE_CARD_PROPERTY_NAME), null) ?: "",
+                        value = preferences.getString(getPropertyKey(ID, propertyID, LEGACY_PREFERENCE_CARD_PROPERTY_VALUE), null) ?: "",
+                        secret = preferences.getBoolean(getPropertyKey(ID, propertyID, LEGACY_PREFERENCE_CARD_PROPERTY_SECRET), false),
+                    )
+                }.toMutableList(),
+            )
+            records[getKey(ID, PREFERENCE_CARD_RECORD)] = record.toPreference()
+
+            for (legacyKey in listOf(
+                LEGACY_PREFERENCE_CARD_NAME,
+                LEGACY_PREFERENCE_CARD_CODE,
+                LEGACY_PREFERENCE_CARD_CODE_TYPE,
+                LEGACY_PREFERENCE_CARD_CODE_TYPE_TEXT,
+                LEGACY_PREFERENCE_CARD_COLOR,
+                LEGACY_PREFERENCE_CARD_LABELS,
+                LEGACY_PREFERENCE_CARD_FRONT_IMAGE,
+                LEGACY_PREFERENCE_CARD_BACK_IMAGE,
+                LEGACY_PREFERENCE_CARD_CREATION_DATE,
+                LEGACY_PREFERENCE_CARD_ALTERATION_DATE,
+                LEGACY_PREFERENCE_CARD_PROPERTIES_IDS,
+            ))
+                legacyKeys.add(getKey(ID, legacyKey))
+            for (propertyID in propertyIDs) {
+                legacyKeys.add(getPropertyKey(ID, propertyID, LEGACY_PREFERENCE_CARD_PROPERTY_NAME))
+                legacyKeys.add(getPropertyKey(ID, propertyID, LEGACY_PREFERENCE_CARD_PROPERTY_VALUE))
+                legacyKeys.add(getPropertyKey(ID, propertyID, LEGACY_PREFERENCE_CARD_PROPERTY_SECRET))
+            }
+        }
+
+        repeat(MIGRATION_COMMIT_ATTEMPTS) { attempt ->
+            val editor = preferences.edit()
+            for ((key, record) in records)
+                editor.putString(key, record)
+            for (legacyKey in legacyKeys)
+                editor.remove(legacyKey)
+            editor.putInt(PREFERENCE_STORAGE_VERSION, CardRecord.VERSION)
+            if (editor.commit()) // synchronously, records have to exist before the first read
+                return
+            Log.e(TAG, "Couldn't commit migration to card records (attempt ${attempt + 1} of $MIGRATION_COMMIT_ATTEMPTS)")
+        }
+        throw IllegalStateException("Couldn't migrate cards to records")
+    }
+
+    private fun getKey(ID: Int, cardPropertyPreferenceKey: String?): String {
+        return String.format(Locale.ENGLISH, cardPropertyPreferenceKey!!, ID)
     }
 
-    private fun getPropertySecretKey(ID: Int, propertyID: Int): String {
-        return String.format(Locale.ENGLISH, PREFERENCE_CARD_PROPERTY_SECRET, ID, propertyID)
+    private fun getPropertyKey(ID: Int, propertyID: Int, propertyPreferenceKey: String): String {
+        return String.format(Locale.ENGLISH, propertyPreferenceKey, ID, propertyID)
     }
     // endregion
 }
@@ -0,0 +1,164 @@
+package com.izzdarki.wallet.preferences
+
+import android.util.Base64
+import com.izzdarki.wallet.utils.ItemProperty
+import com.izzdarki.wallet.utils.PackedBarcode
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+
+/**
+ * All data of a single card. [CardPreferenceManager] stores one record per card as a single encrypted preference value,
+ * so that reading or writing a card only needs one decryption or encryption.
+ * [color] is `null` if the card has no color yet (the default color depends on the context).
+ * [codeMatrix] is the pre-rendered [code] (in [codeType]) or `null` if it has not been rendered, it is removed whenever [code] or [codeType] changes
+ */
+internal class CardRecord(
+    var name: String = "",
+    var color: Int? = null,
+    var creationDate: Long = 0,
+    var alterationDate: Long = 0,
+    var labels: List<String> = listOf(),
+    var code: String = "",
+    var codeType: Int = -1,
+    var codeTypeText: Boolean = false,
+    var frontImagePath: String? = null,
+    var backImagePath: String? = null,
+    var properties: MutableList<ItemProperty> = mutableListOf(),
+    var codeMatrix: PackedBarcode? = null,
+) {
+
+    companion object {
+        /**
+         * Version of the record format. Increase it (and handle the old versions in [fromPreference]) if the format changes
+         */
+        const val VERSION = 1
+
+        private const val KEY_VERSION = "v"
+        private const val KEY_NAME = "name"
+        private const val KEY_COLOR = "color"
+        private const val KEY_CREATION_DATE = "creation_date"
+        private const val KEY_ALTERATION_DATE = "alteration_date"
+        private const val KEY_LABELS = "labels"
+        private const val KEY_CODE = "code"
+        private const val KEY_CODE_TYPE = "code_type"
+        private const val KEY_CODE_TYPE_TEXT = "code_type_text"
+        private const val KEY_FRONT_IMAGE = "front_image_file_path"
+        private const val KEY_BACK_IMAGE = "back_image_file_path"
+        private const val KEY_PROPERTIES = "properties"
+        private const val KEY_CODE_MATRIX = "code_matrix" // optional, so no new version
+        private const val KEY_CODE_MATRIX_WIDTH = "width"
+        private const val KEY_CODE_MATRIX_HEIGHT = "height"
+        private const val KEY_CODE_MATRIX_BITS = "bits"
+        private const val KEY_PROPERTY_ID = "id"
+        private const val KEY_PROPERTY_NAME = "name"
+        private const val KEY_PROPERTY_VALUE = "value"
+        private const val KEY_PROPERTY_SECRET = "secret"
+
+        /**
+         * @param preferenceString String created by [toPreference]
+         * @return The decoded record or `null` if [preferenceString] is `null`
+         * @throws IllegalStateException if [preferenceString] is not a valid record
+         */
+        fun fromPreference(preferenceString: String?): CardRecord? {
+            if (preferenceString == null)
+                return null
+            try {
+                val json = JSONObject(preferenceString)
+                val version = json.getInt(KEY_VERSION)
+                check(version <= VERSION) { "Card record version $version is not supported" }
+
+                val labelsJson = json.optJSONArray(KEY_LABELS) ?: JSONArray()
+                val propertiesJson = json.optJSONArray(KEY_PROPERTIES) ?: JSONArray()
+                return CardRecord(
+                    name = json.optString(KEY_NAME, ""),
+                    color = if (json.has(KEY_COLOR)) json.getInt(KEY_COLOR) else null,
+                    creationDate = json.optLong(KEY_CREATION_DATE, 0),
+                    alterationDate = json.optLong(KEY_ALTERATION_DATE, 0),
+                    labels = List(labelsJson.length()) { labelsJson.getString(it) },
+                    code = json.optString(KEY_CODE, ""),
+                    codeType = json.optInt(KEY_CODE_TYPE, -1),
+                    codeTypeText = json.optBoolean(KEY_CODE_TYPE_TEXT, false),
+                    frontImagePath = if (json.has(KEY_FRONT_IMAGE)) json.getString(KEY_FRONT_IMAGE) else null,
+                    backImagePath = if (json.has(KEY_BACK_IMAGE)) json.getString(KEY_BACK_IMAGE) else null,
+                    properties = MutableList(propertiesJson.length()) {
+                        val propertyJson = propertiesJson.getJSONObject(it)
+                        ItemProperty(
+                            propertyJson.getInt(KEY_PROPERTY_ID),
+                            name = propertyJson.optString(KEY_PROPERTY_NAME, ""),
+                            value = propertyJson.optString(KEY_PROPERTY_VALUE, ""),
+                            secret = propertyJson.optBoolean(KEY_PROPERTY_SECRET, false),
+                        )
+                    },
+                    codeMatrix = json.optJSONObject(KEY_CODE_MATRIX)?.let { decodeCodeMatrix(it) },
+                )
+            } catch (e: JSONException) {
+                throw IllegalStateException("Invalid card record", e)
+            }
+        }
+
+        /**
+         * @return Decoded code matrix or `null` if it is invalid (then it is just rendered again)
+         */
+        private fun decodeCodeMatrix(json: JSONObject): PackedBarcode? {
+            return try {
+                PackedBarcode(
+                    json.getInt(KEY_CODE_MATRIX_WIDTH),
+                    json.getInt(KEY_CODE_MATRIX_HEIGHT),
+                    Base64.decode(json.getString(KEY_CODE_MATRIX_BITS), Base64.NO_WRAP)
+                )
+            } catch (e: JSONException) {
+                null
+            } catch (e: IllegalArgumentException) {
+                null
+            }
+        }
+    }
+
+    /**
+     * @return String representation of the record, that can be decoded with [fromPreference]
+     */
+    fun toPreference(): String {
+        val json = JSONObject()
+        json.put(KEY_VERSION, VERSION)
+        json.put(KEY_NAME, name)
+        if (color != null)
+            json.put(KEY_COLOR, color!!)
+        json.put(KEY_CREATION_DATE, creationDate)
+        json.put(KEY_ALTERATION_DATE, alterationDate)
+        json.put(KEY_LABELS, JSONArray(labels))
+        json.put(KEY_CODE, code)
+        json.put(KEY_CODE_TYPE, codeType)
+        json.put(KEY_CODE_TYPE_TEXT, codeTypeText)
+        if (frontImagePath != null)
+            json.put(KEY_FRONT_IMAGE, frontImagePath)
+        if (backImagePath != null)
+            json.put(KEY_BACK_IMAGE, backImagePath)
+
+        val propertiesJson = JSONArray()
+        for (property in properties) {
+            propertiesJson.put(
+                JSONObject()
+                    .put(KEY_PROPERTY_ID, property.propertyID)
+                    .put(KEY_PROPERTY_NAME, property.name)
+                    .put(KEY_PROPERTY_VALUE, property.value)
+                    .put(KEY_PROPERTY_SECRET, property.secret)
+            )
+        }
+        json.put(KEY_PROPERTIES, propertiesJson)
+        codeMatrix?.let {
+            json.put(
+                KEY_CODE_MATRIX, JSONObject()
+                    .put(KEY_CODE_MATRIX_WIDTH, it.width)
+                    .put(KEY_CODE_MATRIX_HEIGHT, it.height)
+                    .put(KEY_CODE_MATRIX_BITS, Base64.encodeToString(it.bits, Base64.NO_WRAP))
+            )
+        }
+        return json.toString()
+    }
+
+    /**
+     * @return Property with [propertyID] or `null` if the record has no such property
+     */
+    fun findProperty(propertyID: Int): ItemProperty? = properties.firstOrNull { it.propertyID == propertyID }
+}
@@ -0,0 +1,20 @@
+package com.izzdarki.wallet.preferences
+
+import androidx.annotation.ColorInt
+import com.izzdarki.wallet.utils.ItemProperty
+import com.izzdarki.wallet.utils.Utility.PreferenceArrayString
+import java.util.*
+
+/**
+ * All data of a single password, as read by [PasswordPreferenceManager.readComplete]
+ */
+data class PasswordData(
+    val ID: Int,
+    val name: String,
+    val passwordValue: String,
+    @ColorInt val color: Int,
+    val creationDate: Date,
+    val alterationDate: Date,
+    val labels: PreferenceArrayString,
+    val properties: MutableList<ItemProperty>,
+)
@@ -4,6 +4,7 @@ import android.content.Context
 import android.content.SharedPreferences
 import izzdarki.wallet.R
 import com.izzdarki.wallet.utils.AppUtility
+import com.izzdarki.wallet.utils.CardOrPasswordPreviewData
 import com.izzdarki.wallet.utils.ItemProperty
 import com.izzdarki.wallet.utils.Utility
 import com.izzdarki.wallet.utils.Utility.PreferenceArrayString
@@ -28,6 +29,9 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
     private const val PREFERENCE_PASSWORD_PROPERTY_VALUE = "%d.%d.property_value" // String
     private const val PREFERENCE_PASSWORD_PROPERTY_SECRET = "%d.%d.property_secret" // boolean
 
+    override val previewCache = PreviewDataCache()
+
+
     // region read functions
     /**
      * @return Password name or empty string if not found in preferences
@@ -95,28 +99,49 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
     fun readPasswordValue(context: Context, ID: Int): String {
         return getPreferences(context).getString(getKey(ID, PREFERENCE_PASSWORD_VALUE), "")!!
     }
+
+    /**
+     * Reads all values of password [ID]
+     */
+    fun readComplete(context: Context, ID: Int): PasswordData {
+        return PasswordData(
+            ID,
+            name = readName(context, ID),
+            passwordValue = readPasswordValue(context, ID),
+            color = readColor(context, ID),
+            creationDate = readCreationDate(context, ID),
+            alterationDate = readAlterationDate(context, ID),
+            labels = readLabels(context, ID),
+            properties = readProperties(context, ID),
+        )
+    }
     // endregion
 
 
     // region write functions
     override fun writeName(context: Context, ID: Int, name: String) {
         getPreferences(context).edit().putString(getKey(ID, PREFERENCE_PASSWORD_NAME), name).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun writeColor(context: Context, ID: Int, color: Int) {
         getPreferences(context).edit().putInt(getKey(ID, PREFERENCE_PASSWORD_COLOR), color).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun writeCreationDate(context: Context, ID: Int, creationDate: Date) {
         getPreferences(context).edit().putLong(getKey(ID, PREFERENCE_PASSWORD_CREATION_DATE), creationDate.time).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun writeAlterationDate(context: Context, ID: Int, alterationDate: Date) {
         getPreferences(context).edit().putLong(getKey(ID, PREFERENCE_PASSWORD_ALTERATION_DATE), alterationDate.time).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun writeLabels(context: Context, ID: Int, labels: PreferenceArrayString) {
         getPreferences(context).edit().putString(getKey(ID, PREFERENCE_PASSWORD_LABELS), labels.toPreference()).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun writePropertyIds(context: Context, ID: Int, propertyIDs: PreferenceArrayInt) {
@@ -140,6 +165,29 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
     }
 
     /**
+     * Writes everything except the password value in a single [transaction].
+     * Note that this function also removes old properties
+     */
+    override fun writeCommon(
+        context: Context,
+        ID: Int,
+        name: String,
+        color: Int,
+        creationDate: Date,
+        alterationDate: Date,
+        labels: PreferenceArrayString,
+        properties: List<ItemProperty>
+    ) {
+        val oldPropertyIDs = readPropertyIds(context, ID)
+        val allIDs = readAllIDs(context) // This should be fine. At this moment no other process should modify this preference list
+        transaction(context) { editor ->
+            putCommon(editor, ID, name, color, creationDate, alterationDate, labels, properties, oldPropertyIDs, allIDs)
+        }
+        previewCache.put(CardOrPasswordPreviewData(ID, name, color, labels.toList(), creationDate.time, alterationDate.time))
+    }
+
+    /**
+     * Writes the whole password in a single [transaction].
      * Note that this function also removes old properties
      */
     fun writeComplete(
@@ -153,17 +201,13 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
         labels: PreferenceArrayString,
         properties: List<ItemProperty>
     ) {
-        writeCommon(
-            context,
-            ID,
-            name,
-            color,
-            creationDate,
-            alterationDate,
-            labels,
-            properties
-        )
-        writePasswordValue(context, ID, passwordValue)
+        val oldPropertyIDs = readPropertyIds(context, ID)
+        val allIDs = readAllIDs(context) // See writeCommon
+        transaction(context) { editor ->
+            putCommon(editor, ID, name, color, creationDate, alterationDate, labels, properties, oldPropertyIDs, allIDs)
+            editor.putString(getKey(ID, PREFERENCE_PASSWORD_VALUE), passwordValue)
+        }
+        previewCache.put(CardOrPasswordPreviewData(ID, name, color, labels.toList(), creationDate.time, alterationDate.time))
     }
     // endregion
 
@@ -171,22 +215,27 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
     // region remove functions
     override fun removeName(context: Context, ID: Int) {
         getPreferences(context).edit().remove(getKey(ID, PREFERENCE_PASSWORD_NAME)).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun removeColor(context: Context, ID: Int) {
         getPreferences(context).edit().remove(getKey(ID, PREFERENCE_PASSWORD_COLOR)).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun removeCreationDate(context: Context, ID: Int) {
         getPreferences(context).edit().remove(getKey(ID, PREFERENCE_PASSWORD_CREATION_DATE)).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun removeAlterationDate(context: Context, ID: Int) {
         getPreferences(context).edit().remove(getKey(ID, PREFERENCE_PASSWORD_ALTERATION_DATE)).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun removeLabels(context: Context, ID: Int) {
         getPreferences(context).edit().remove(getKey(ID, PREFERENCE_PASSWORD_LABELS)).apply()
+        previewCache.invalidate(ID)
     }
 
     override fun removePropertyIds(context: Context, ID: Int) {
@@ -209,9 +258,35 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
         getPreferences(context).edit().remove(getKey(ID, PREFERENCE_PASSWORD_VALUE)).apply()
     }
 
+    /**
+     * Removes all keys of the password and the ID from all IDs in a single [transaction]
+     */
     override fun removeComplete(context: Context, ID: Int) {
-        super.removeComplete(context, ID)
-        removePasswordValue(context, ID)
+        val propertyIDs = readPropertyIds(context, ID)
+        val allIDs = readAllIDs(context)
+        allIDs.remove(ID) // no need to check if allIDs contains ID
+        transaction(context) { editor ->
+            removeAllKeys(editor, ID, propertyIDs)
+            putAllIDs(editor, allIDs)
+        }
+        previewCache.remove(ID)
+    }
+
+    /**
+     * Removes all keys of all [IDs] and [IDs] from all IDs in a single [transaction]
+     */
+    override fun removeMany(context: Context, IDs: Collection<Int>) {
+        val snapshot = getPreferences(context).all // decrypts everything once
+        val removedIDs = IDs.toSet()
+        val allIDs = PreferenceArrayInt(readAllIDs(snapshot).filter { it !in removedIDs }.iterator())
+        transaction(context) { editor ->
+            for (ID in IDs) {
+                val propertyIDs = PreferenceArrayInt(snapshot[getKey(ID, PREFERENCE_PASSWORD_PROPERTIES_IDS)] as String?)
+                removeAllKeys(editor, ID, propertyIDs)
+            }
+            putAllIDs(editor, allIDs)
+        }
+        previewCache.remove(IDs)
     }
     // endregion
 
@@ -221,8 +296,25 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
         return PreferenceArrayInt(getPreferences(context).getString(PREFERENCE_ALL_PASSWORD_IDS, ""))
     }
 
+    override fun readAllIDs(snapshot: Map<String, *>): PreferenceArrayInt {
+        return PreferenceArrayInt(snapshot[PREFERENCE_ALL_PASSWORD_IDS] as String?)
+    }
+
+    override fun readPreviewData(context: Context, snapshot: Map<String, *>, ID: Int): CardOrPasswordPreviewData {
+        return CardOrPasswordPreviewData(
+            ID,
+            name = snapshot[getKey(ID, PREFERENCE_PASSWORD_NAME)] as String? ?: "",
+            color = snapshot[getKey(ID, PREFERENCE_PASSWORD_COLOR)] as Int?
+                ?: context.resources.getColor(R.color.password_default_color),
+            labels = PreferenceArrayString(snapshot[getKey(ID, PREFERENCE_PASSWORD_LABELS)] as String?),
+            creationDate = snapshot[getKey(ID, PREFERENCE_PASSWORD_CREATION_DATE)] as Long? ?: 0,
+            alterationDate = snapshot[getKey(ID, PREFERENCE_PASSWORD_ALTERATION_DATE)] as Long? ?: 0,
+        )
+    }
+
     override fun writeAllIDs(context: Context, allIDs: PreferenceArrayInt) {
-        getPreferences(context).edit().putString(PREFERENCE_ALL_PASSWORD_IDS, allIDs.toPreference()).apply()
+        putAllIDs(context, allIDs)
+        previewCache.clear() // the cached items might not match the new list
     }
 
     /**
@@ -236,7 +328,8 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
         val allIDs = readAllIDs(context)
         if (ID !in allIDs)
             allIDs.add(ID)
-        writeAllIDs(context, allIDs)
+        putAllIDs(context, allIDs)
+        previewCache.add(ID)
     }
 
 
@@ -250,7 +343,8 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
     override fun removeFromAllIDs(context: Context, ID: Int) {
         val allIDs = readAllIDs(context)
         allIDs.remove(ID) // no need to check if allIDs contains ID
-        writeAllIDs(context, allIDs)
+        putAllIDs(context, allIDs)
+        previewCache.remove(ID)
     }
     // endregion
 
@@ -287,13 +381,82 @@ object PasswordPreferenceManager : CardOrPasswordPreferenceManager {
     // region private helper
     private var preferences: SharedPreferences? = null
 
-    @Synchronized fun getPreferences(context: Context): SharedPreferences {
+    @Synchronized override fun getPreferences(context: Context): SharedPreferences {
         if (preferences == null)
             // preferences = context.getSharedPreferences("passwords-test", Context.MODE_PRIVATE) // not encrypted for testing
             preferences = Utility.openEncryptedPreferences(context, PASSWORDS_PREFERENCES_NAME)
         return preferences!!
     }
 
+    private fun putAllIDs(context: Context, allIDs: PreferenceArrayInt) {
+        transaction(context) { editor -> putAllIDs(editor, allIDs) }
+    }
+
+    private fun putAllIDs(editor: SharedPreferences.Editor, allIDs: PreferenceArrayInt) {
+        editor.putString(PREFERENCE_ALL_PASSWORD_IDS, allIDs.toPreference())
+    }
+
+    /**
+     * Puts all common data into [editor], removes [oldPropertyIDs] and adds [ID] to [allIDs] (if not yet contained)
+     */
+    private fun putCommon(
+        editor: SharedPreferences.Editor,
+        ID: Int,
+        name: String,
+        color: Int,
+        creationDate: Date,
+        alterationDate: Date,
+        labels: PreferenceArrayString,
+        properties: List<ItemProperty>,
+        oldPropertyIDs: PreferenceArrayInt,
+        allIDs: PreferenceArrayInt,
+    ) {
+        if (ID !in allIDs) {
+            allIDs.add(ID)
+            putAllIDs(editor, allIDs)
+        }
+        editor.putString(getKey(ID, PREFERENCE_PASSWORD_NAME), name)
+        editor.putInt(getKey(ID, PREFERENCE_PASSWORD_COLOR), color)
+        editor.putLong(getKey(ID, PREFERENCE_PASSWORD_CREATION_DATE), creationDate.time)
+        editor.putLong(getKey(ID, PREFERENCE_PASSWORD_ALTERATION_DATE), alterationDate.time)
+        editor.putString(getKey(ID, PREFERENCE_PASSWORD_LABELS), labels.toPreference())
+
+        // remove old properties (puts below override removes of the same key)
+        for (propertyID in oldPropertyIDs)
+            removePropertyKeys(editor, ID, propertyID)
+
+        // write properties
+        val currentPropertyIDs = PreferenceArrayInt() // Collects all current propertyIDs to write into preferences
+        for (property in properties) {
+            currentPropertyIDs.add(property.propertyID)
+            editor.putString(getPropertyNameKey(ID, property.propertyID), property.name)
+            editor.putString(getPropertyValueKey(ID, property.propertyID), property.value)
+            editor.putBoolean(getPropertySecretKey(ID, property.propertyID), property.secret)
+        }
+        editor.putString(getKey(ID, PREFERENCE_PASSWORD_PROPERTIES_IDS), currentPropertyIDs.toPreference())
+    }
+
+    private fun removeAllKeys(editor: SharedPreferences.Editor, ID: Int, propertyIDs: PreferenceArrayInt) {
+        for (key in listOf(
+            PREFERENCE_PASSWORD_NAME,
+            PREFERENCE_PASSWORD_VALUE,
+            PREFERENCE_PASSWORD_COLOR,
+            PREFERENCE_PASSWORD_CREATION_DATE,
+            PREFERENCE_PASSWORD_ALTERATION_DATE,
+            PREFERENCE_PASSWORD_LABELS,
+            PREFERENCE_PASSWORD_PROPERTIES_IDS,
+        ))
+            editor.remove(getKey(ID, key))
+        for (propertyID in propertyIDs)
+            removePropertyKeys(editor, ID, propertyID)
+    }
+
+    private fun removePropertyKeys(editor: SharedPreferences.Editor, ID: Int, propertyID: Int) {
+        editor.remove(getPropertyNameKey(ID, propertyID))
+        editor.remove(getPropertyValueKey(ID, propertyID))
+        editor.remove(getPropertySecretKey(ID, propertyID))
+    }
+
     private fun getKey(ID: Int, propertyPreferenceKey: String?): String {
         return String.format(Locale.ENGLISH, propertyPreferenceKey!!, ID)
     }
@@ -0,0 +1,119 @@
+package com.izzdarki.wallet.preferences
+
+import com.izzdarki.wallet.utils.CardOrPasswordPreviewData
+
+/**
+ * Process-wide write-through cache of [CardOrPasswordPreviewData] by ID.
+ * Each [CardOrPasswordPreferenceManager] holds one and keeps it up to date in its write and remove functions,
+ * so that [CardOrPasswordPreferenceManager.readAll] only needs to access the preferences for the first read
+ * and for items that have been invalidated since.
+ * The cache contains exactly the IDs of the list of all IDs: [update] and [invalidate] only change known items,
+ * new items are only added by [put] and [add], which must only be called by functions that also add the ID to the list of all IDs
+ */
+class PreviewDataCache {
+
+    private var items: LinkedHashMap<Int, CardOrPasswordPreviewData>? = null // null until loaded completely
+    private val invalidIDs = mutableSetOf<Int>()
+
+    /**
+     * Incremented on every change. Two equal values mean that [readAll] returns the same data
+     */
+    @Volatile var generation = 0
+        private set
+
+    /**
+     * @param loadAll Loads all items from the preferences (called if nothing is cached)
+     * @param load Loads a single item from the preferences (called for every invalidated or added ID)
+     * @return All items in the order of the list of all IDs
+     */
+    @Synchronized fun readAll(
+        loadAll: () -> List<CardOrPasswordPreviewData>,
+        load: (ID: Int) -> CardOrPasswordPreviewData
+    ): List<CardOrPasswordPreviewData> {
+        var currentItems = items
+        if (currentItems == null) {
+            currentItems = LinkedHashMap()
+            for (item in loadAll())
+                currentItems[item.ID] = item
+            items = currentItems
+            invalidIDs.clear()
+            generation++
+        }
+        else if (invalidIDs.isNotEmpty()) {
+            for (ID in invalidIDs)
+                currentItems[ID] = load(ID) // keeps position of existing items, new items are appended
+            invalidIDs.clear()
+            generation++
+        }
+        return currentItems.values.toList()
+    }
+
+    /**
+     * Replaces the cached item with the ID of [item] (only if the cache is loaded and contains that ID)
+     */
+    @Synchronized fun update(item: CardOrPasswordPreviewData) {
+        if (isKnown(item.ID))
+            put(item)
+    }
+
+    /**
+     * Puts [item] into the cache, it is appended if the cache does not contain its ID yet (only if the cache is loaded)
+     */
+    @Synchronized fun put(item: CardOrPasswordPreviewData) {
+        val currentItems = items ?: return
+        currentItems[item.ID] = item
+        invalidIDs.remove(item.ID)
+        generation++
+    }
+
+    /**
+     * Marks the item with [ID] to be reloaded by the next [readAll] (only if the cache is loaded and contains [ID])
+     */
+    @Synchronized fun invalidate(ID: Int) {
+        if (isKnown(ID))
+            add(ID)
+    }
+
+    /**
+     * Marks the item with [ID] to be loaded by the next [readAll], it is appended if the cache does not contain [ID] yet
+     * (only if the cache is loaded)
+     */
+    @Synchronized fun add(ID: Int) {
+        if (items == null)
+            return
+        invalidIDs.add(ID)
+        generation++
+    }
+
+    @Synchronized fun remove(ID: Int) {
+        val currentItems = items ?: return
+        currentItems.remove(ID)
+        invalidIDs.remove(ID)
+        generation++
+    }
+
+    @Synchronized fun remove(IDs: Collection<Int>) {
+        val currentItems = items ?: return
+        val removedIDs = IDs.toSet()
+        currentItems.keys.removeAll(removedIDs)
+        invalidIDs.removeAll(removedIDs)
+        generation++
+    }
+
+    /**
+     * Drops everything, the next [readAll] reloads all items
+     */
+    @Synchronized fun clear() {
+        items = null
+        invalidIDs.clear()
+        generation++
+    }
+
+    /**
+     * @return Whether [ID] is cached or will be loaded by the next [readAll]
+     */
+    private fun isKnown(ID: Int): Boolean {
+        val currentItems = items ?: return false
+        return ID in currentItems || ID in invalidIDs
+    }
+}
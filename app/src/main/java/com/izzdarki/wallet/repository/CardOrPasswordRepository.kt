@@ -0,0 +1,198 @@
+package com.izzdarki.wallet.repository
+
+import android.content.Context
+import android.util.SparseIntArray
+import com.izzdarki.wallet.preferences.AppPreferenceManager.SortingType
+import com.izzdarki.wallet.preferences.CardOrPasswordPreferenceManager
+import com.izzdarki.wallet.utils.CardOrPasswordPreviewData
+import com.izzdarki.wallet.utils.SearchIndex
+import com.izzdarki.wallet.utils.Utility.PreferenceArrayInt
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.util.*
+import java.util.concurrent.Executors
+
+/**
+ * Access to the stored cards or passwords, that never blocks the calling thread.
+ * All storage access runs on [storageDispatcher], writes are executed one after another in the order they were started.
+ * The preview data of all items is published in [items]
+ */
+sealed class CardOrPasswordRepository(
+    protected val preferenceManager: CardOrPasswordPreferenceManager
+) {
+
+    companion object {
+        /**
+         * Number of threads used for storage access
+         */
+        const val STORAGE_THREAD_COUNT = 2
+
+        /**
+         * Bounded dispatcher for all storage access (decryption is expensive, so there is no point in using more threads)
+         */
+        val storageDispatcher: CoroutineDispatcher = Executors.newFixedThreadPool(STORAGE_THREAD_COUNT).asCoroutineDispatcher()
+
+        /**
+         * Scope for writes that have to complete even if the component that started them is destroyed
+         * (for example deleting an item right before finishing an activity)
+         */
+        val storageScope = CoroutineScope(SupervisorJob() + storageDispatcher)
+    }
+
+    private val writeMutex = Mutex()
+
+    private val mutableItems = MutableStateFlow<List<CardOrPasswordPreviewData>?>(null)
+    private var itemsGeneration = -1 // generation of preferenceManager.previewCache that items were read with
+    private var searchIndex: SearchIndex? = null // index of items, rebuilt when items has changed
+
+    /**
+     * Preview data of all items in the order of the list of all IDs or `null` if not loaded yet.
+     * Call [refresh] to load it. Every write or remove function of this repository refreshes it automatically
+     */
+    val items: StateFlow<List<CardOrPasswordPreviewData>?> = mutableItems.asStateFlow()
+
+    /**
+     * Opens the preferences and loads [items] in the background
+     */
+    fun preload(context: Context): Job {
+        val applicationContext = context.applicationContext
+        return storageScope.launch { refresh(applicationContext) }
+    }
+
+    /**
+     * Reads all items (served from the preview cache if possible) and publishes them in [items] if they have changed
+     */
+    suspend fun refresh(context: Context) = withContext(storageDispatcher) {
+        val generation = preferenceManager.previewCache.generation // read before, so that a concurrent change is never missed
+        val allItems = preferenceManager.readAll(context)
+        synchronized(this@CardOrPasswordRepository) {
+            if (generation > itemsGeneration || mutableItems.value == null) {
+                itemsGeneration = generation
+                mutableItems.value = allItems
+            }
+        }
+    }
+
+    suspend fun readAllIDs(context: Context): PreferenceArrayInt = withContext(storageDispatcher) {
+        preferenceManager.readAllIDs(context)
+    }
+
+    suspend fun collectAllLabelsSorted(context: Context): SortedSet<String> = withContext(storageDispatcher) {
+        preferenceManager.collectAllLabelsSorted(context)
+    }
+
+    /**
+     * Sorts [items] according to [sortingType] and [reverse].
+     * Only the custom sorting is read from storage (once), all sort keys are taken from the preview data
+     * @return New sorted list
+     */
+    suspend fun sort(
+        context: Context,
+        items: List<CardOrPasswordPreviewData>,
+        sortingType: SortingType,
+        reverse: Boolean
+    ): List<CardOrPasswordPreviewData> {
+        val customSortingRanks =
+            if (sortingType == SortingType.CustomSorting)
+                withContext(storageDispatcher) { readCustomSortingRanks(context) }
+            else null
+
+        return withContext(Dispatchers.Default) {
+            val sortedItems = when (sortingType) {
+                SortingType.ByName -> items.sortedBy { it.name }
+                SortingType.CustomSorting -> items.sortedWith { item1, item2 ->
+                    customSortingRanks!!.get(item1.ID, -1).compareTo(customSortingRanks.get(item2.ID, -1)) // items not sorted yet come first
+                }
+                SortingType.ByCreationDate -> items.sortedWith { item1, item2 -> item1.creationDate.compareTo(item2.creationDate) }
+                SortingType.ByAlterationDate -> items.sortedWith { item1, item2 -> item1.alterationDate.compareTo(item2.alterationDate) }
+            }
+            if (reverse) sortedItems.asReversed() else sortedItems
+        }
+    }
+
+    /**
+     * Keeps only items of [sortedItems] whose name or labels contain [searchQuery] (ignoring case).
+     * Never accesses storage, a [SearchIndex] of [items] is built once per change of [items]
+     * @return New filtered list in the order of [sortedItems]
+     */
+    suspend fun filter(
+        sortedItems: List<CardOrPasswordPreviewData>,
+        searchQuery: String
+    ): List<CardOrPasswordPreviewData> {
+        if (searchQuery == "")
+            return sortedItems
+        return withContext(Dispatchers.Default) {
+            getSearchIndex(sortedItems).filter(sortedItems, searchQuery)
+        }
+    }
+
+    /**
+     * @param fallbackItems Items to index if [items] is not loaded yet
+     */
+    private fun getSearchIndex(fallbackItems: List<CardOrPasswordPreviewData>): SearchIndex = synchronized(this) {
+        val currentItems = mutableItems.value ?: fallbackItems
+        searchIndex?.takeIf { it.items === currentItems }
+            ?: SearchIndex(currentItems).also { searchIndex = it }
+    }
+
+    /**
+     * @return Position of every ID in the saved custom sorting
+     */
+    private fun readCustomSortingRanks(context: Context): SparseIntArray {
+        val customSortingIDs = preferenceManager.readCustomSortingNoGrouping(context)
+        val ranks = SparseIntArray(customSortingIDs.size)
+        customSortingIDs.forEachIndexed { rank, ID -> ranks.put(ID, rank) }
+        return ranks
+    }
+
+    // region write functions
+    suspend fun writeCustomSortingNoGrouping(context: Context, customSorting: PreferenceArrayInt) = write {
+        preferenceManager.writeCustomSortingNoGrouping(context, customSorting)
+    }
+
+    suspend fun removeComplete(context: Context, ID: Int) = write {
+        preferenceManager.removeComplete(context, ID)
+        refresh(context)
+    }
+
+    suspend fun removeMany(context: Context, IDs: Collection<Int>) = write {
+        preferenceManager.removeMany(context, IDs)
+        refresh(context)
+    }
+
+    /**
+     * Runs [block] in [storageScope], so that it completes even if the caller is destroyed.
+     * Writes started with this function are executed in the order of the calls
+     */
+    fun launchWrite(block: suspend CoroutineScope.() -> Unit): Job {
+        // undispatched: the write is queued at writeMutex before this function returns
+        return storageScope.launch(start = CoroutineStart.UNDISPATCHED, block = block)
+    }
+
+    /**
+     * Runs [block] on [storageDispatcher] after all previously started writes.
+     * Once called, the write is not cancelled when the caller is cancelled (neither while waiting for previous writes nor while running),
+     * a cancelled caller is resumed with the cancellation afterwards
+     */
+    protected suspend fun <T> write(block: suspend () -> T): T {
+        return withContext(NonCancellable) {
+            writeMutex.withLock {
+                withContext(storageDispatcher) { block() }
+            }
+        }
+    }
+    // endregion
+}
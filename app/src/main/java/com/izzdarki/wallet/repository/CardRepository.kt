@@ -0,0 +1,161 @@
+package com.izzdarki.wallet.repository
+
+import android.content.Context
+import com.google.zxing.BarcodeFormat
+import com.izzdarki.wallet.preferences.CardData
+import com.izzdarki.wallet.preferences.CardPreferenceManager
+import com.izzdarki.wallet.utils.BarcodeRenderer
+import com.izzdarki.wallet.utils.CardImageCache
+import com.izzdarki.wallet.utils.ItemProperty
+import com.izzdarki.wallet.utils.PackedBarcode
+import com.izzdarki.wallet.utils.Utility
+import com.izzdarki.wallet.utils.Utility.PreferenceArrayString
+import izzdarki.wallet.R
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
+import java.util.*
+
+object CardRepository : CardOrPasswordRepository(CardPreferenceManager) {
+
+    /**
+     * @return Card data or `null` if card [ID] doesn't exist
+     * @throws IllegalStateException See [CardPreferenceManager.readComplete]
+     */
+    suspend fun readComplete(context: Context, ID: Int): CardData? = withContext(storageDispatcher) {
+        CardPreferenceManager.readComplete(context, ID)
+    }
+
+    /**
+     * Result of [saveComplete]
+     * @param written Whether the card has been written
+     * @param frontImage Front image in the card images folder (the same object if it has not been moved)
+     * @param backImage Back image in the card images folder (the same object if it has not been moved)
+     */
+    class SaveResult(val written: Boolean, val frontImage: File?, val backImage: File?)
+
+    /**
+     * Saves card [ID] in a single write, see [CardPreferenceManager.writeComplete].
+     * [frontImage] and [backImage] are moved to the card images folder first (if they are not there yet).
+     * The card is written synchronously and [replacedImages] are deleted only after it has been written,
+     * so the stored card never points to a deleted image. If an image can't be moved (for example the disk is full)
+     * or the card can't be written, the stored card and [replacedImages] stay as they are.
+     * Like every write, this is not cancelled once called
+     * @param replacedImages Images, that the stored card used before and that are not used anymore
+     */
+    suspend fun saveComplete(
+        context: Context,
+        ID: Int,
+        name: String,
+        color: Int,
+        creationDate: Date,
+        alterationDate: Date,
+        labels: PreferenceArrayString,
+        code: String,
+        codeType: Int,
+        codeTypeText: Boolean,
+        frontImage: File?,
+        backImage: File?,
+        properties: List<ItemProperty>,
+        codeMatrix: PackedBarcode?,
+        replacedImages: List<File>,
+    ): SaveResult = write {
+        val storedFrontImage = frontImage?.let { moveToImagesDirectory(context, it) ?: return@write SaveResult(false, frontImage, backImage) }
+        val storedBackImage = backImage?.let { moveToImagesDirectory(context, it) ?: return@write SaveResult(false, storedFrontImage, backImage) }
+        val written = CardPreferenceManager.writeComplete(
+            context, ID, name, color, creationDate, alterationDate, labels,
+            code, codeType, codeTypeText, storedFrontImage, storedBackImage, properties, codeMatrix, commit = true
+        )
+        if (written) {
+            for (image in replacedImages) {
+                if (image != storedFrontImage && image != storedBackImage)
+                    deleteImageFile(context, image)
+            }
+            refresh(context)
+        }
+        SaveResult(written, storedFrontImage, storedBackImage)
+    }
+
+    /**
+     * Encodes [code] in [format] in the background after all previously started writes and stores it as the code matrix of card [ID]
+     * (see [CardPreferenceManager.writeCodeMatrix]), so that showing the card later only has to draw it.
+     * Saving doesn't wait for this, until it has finished the code is just encoded when the card is shown
+     */
+    fun launchPrerenderCode(context: Context, ID: Int, code: String, codeType: Int, format: BarcodeFormat): Job {
+        val applicationContext = context.applicationContext
+        return launchWrite {
+            val codeMatrix = withContext(Dispatchers.Default) { BarcodeRenderer.prerender(code, format) } ?: return@launchWrite
+            write {
+                CardPreferenceManager.writeCodeMatrix(applicationContext, ID, code, codeType, codeMatrix)
+            }
+        }
+    }
+
+    /**
+     * See [CardPreferenceManager.deleteFrontImage]
+     */
+    suspend fun deleteFrontImage(context: Context, ID: Int) = write {
+        CardPreferenceManager.deleteFrontImage(context, ID)
+    }
+
+    /**
+     * See [CardPreferenceManager.deleteBackImage]
+     */
+    suspend fun deleteBackImage(context: Context, ID: Int) = write {
+        CardPreferenceManager.deleteBackImage(context, ID)
+    }
+
+    /**
+     * Moves [image] (already encrypted, see [com.izzdarki.wallet.utils.CardImageEncoder]) to the card images folder in the files directory.
+     * The file name stays the same, because it is part of the encryption
+     * @return Moved image file, [image] if it is already in the card images folder or `null` if it couldn't be moved ([image] is kept then)
+     */
+    private fun moveToImagesDirectory(context: Context, image: File): File? {
+        val imagesDirectory = File(context.filesDir, context.getString(R.string.cards_images_folder_name))
+        if (image.parentFile == imagesDirectory)
+            return image
+        if (!imagesDirectory.exists()) imagesDirectory.mkdirs()
+        val newImage = File(imagesDirectory, image.name)
+        if (!image.renameTo(newImage)) {
+            // cache and files directory are on different file systems, copy the encrypted bytes
+            try {
+                Utility.copyFile(FileInputStream(image), newImage)
+            } catch (e: IOException) {
+                newImage.delete() // partial copy
+                return null
+            }
+            image.delete()
+        }
+        return newImage
+    }
+
+    /**
+     * Deletes [imageFile] and its cached thumbnails
+     */
+    private fun deleteImageFile(context: Context, imageFile: File) {
+        CardImageCache.remove(context, imageFile)
+        imageFile.delete()
+    }
+
+    /**
+     * Replaces [imageFile] of card [ID] with [newImageFile] by moving it (atomically, if both are on the same file system).
+     * Runs after all previously started writes and only if card [ID] still uses [imageFile], so that removed images don't come back
+     * @return `true` if [imageFile] has been replaced, otherwise [newImageFile] is deleted
+     */
+    suspend fun replaceImageFile(context: Context, ID: Int, imageFile: File, newImageFile: File): Boolean = write {
+        val path = imageFile.absolutePath
+        val stillUsed = CardPreferenceManager.readFrontImagePath(context, ID) == path
+                || CardPreferenceManager.readBackImagePath(context, ID) == path
+        if (stillUsed && imageFile.exists() && newImageFile.renameTo(imageFile)) {
+            CardImageCache.remove(context, imageFile)
+            true
+        }
+        else {
+            newImageFile.delete()
+            false
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.izzdarki.wallet.repository
+
+import android.content.Context
+import com.izzdarki.wallet.preferences.PasswordData
+import com.izzdarki.wallet.preferences.PasswordPreferenceManager
+import com.izzdarki.wallet.utils.ItemProperty
+import com.izzdarki.wallet.utils.Utility.PreferenceArrayString
+import kotlinx.coroutines.withContext
+import java.util.*
+
+object PasswordRepository : CardOrPasswordRepository(PasswordPreferenceManager) {
+
+    suspend fun readComplete(context: Context, ID: Int): PasswordData = withContext(storageDispatcher) {
+        PasswordPreferenceManager.readComplete(context, ID)
+    }
+
+    /**
+     * See [PasswordPreferenceManager.writeComplete]
+     */
+    suspend fun writeComplete(
+        context: Context,
+        ID: Int,
+        name: String,
+        passwordValue: String,
+        color: Int,
+        creationDate: Date,
+        alterationDate: Date,
+        labels: PreferenceArrayString,
+        properties: List<ItemProperty>
+    ) = write {
+        PasswordPreferenceManager.writeComplete(
+            context, ID, name, passwordValue, color, creationDate, alterationDate, labels, properties
+        )
+        refresh(context)
+    }
+}
@@ -0,0 +1,227 @@
+package com.izzdarki.wallet.services
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.workDataOf
+import com.izzdarki.wallet.preferences.CardPreferenceManager
+import com.izzdarki.wallet.repository.CardOrPasswordRepository
+import com.izzdarki.wallet.repository.CardRepository
+import com.izzdarki.wallet.utils.CardImageCropper
+import com.izzdarki.wallet.utils.CardImageDecoder
+import com.izzdarki.wallet.utils.CardImageEncoder
+import com.izzdarki.wallet.utils.Utility
+import izzdarki.wallet.BuildConfig
+import izzdarki.wallet.R
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
+import java.security.GeneralSecurityException
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+
+/**
+ * Re-encodes existing (encrypted) card images in [FORMAT] at the size they are shown in (see [getTargetSize]).
+ * Older images are often stored at full camera resolution or as they were selected, which wastes storage and decode time.
+ *
+ * - Resumable: optimized images are skipped, so a stopped run just continues with the remaining images next time
+ * - Every image is decoded at most once: processed images (optimized or not worth optimizing) are recorded by name, size and
+ *   modification time in the worker's own preferences ([PREFERENCES_NAME]) and skipped before decoding, until the image changes
+ * - Atomic: the new image is written to another folder in the files directory with the same name (which is part of the encryption)
+ *   and then moved over the old image, so an image is never half-written
+ * - The bytes saved are reported as progress and output ([KEY_BYTES_SAVED])
+ *
+ * The file names (and extensions) stay the same, so that cards don't need to be changed. Decoders don't depend on the extension
+ */
+class CardImageOptimizeWorker(context: Context, parameters: WorkerParameters) : CoroutineWorker(context, parameters) {
+
+    companion object {
+        const val KEY_PROCESSED = "processed"
+        const val KEY_TOTAL = "total"
+        const val KEY_BYTES_SAVED = "bytes_saved"
+
+        private const val TAG = "CardImageOptimizeWorker"
+        private const val UNIQUE_WORK_NAME = "com.izzdarki.wallet.card_image_optimize_worker"
+        private const val TEMPORARY_DIRECTORY = "card_images_optimizing"
+        private const val PREFERENCES_NAME = "card_image_optimize_worker" // not encrypted, only contains file names
+        private const val PREFERENCE_PROCESSED_IMAGES = "processed_images" // Set<String> (see getProcessedKey)
+        private val FORMAT = CardImageEncoder.Format.WEBP
+        private const val QUALITY = 85
+        private const val MIN_SCALE = 0.9 // images less than 10% too big are not scaled
+
+        /**
+         * Runs the optimizer once in the background (if it's not already queued or running), when the battery is not low
+         */
+        @JvmStatic
+        fun enqueue(context: Context) {
+            val request = OneTimeWorkRequestBuilder<CardImageOptimizeWorker>()
+                .setConstraints(Constraints.Builder().setRequiresBatteryNotLow(true).build())
+                .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.KEEP, request)
+        }
+
+        /**
+         * Size that card images are shown in at most (see `CardActivity`), as short side to long side
+         */
+        @JvmStatic
+        fun getTargetSize(context: Context): Pair<Int, Int> {
+            val displayMetrics = context.resources.displayMetrics
+            val padding = 2 * context.resources.getDimension(R.dimen.default_padding)
+            return Pair(
+                (min(displayMetrics.widthPixels, displayMetrics.heightPixels) - padding).toInt(),
+                (max(displayMetrics.widthPixels, displayMetrics.heightPixels) - padding).toInt()
+            )
+        }
+    }
+
+    private val preferences: SharedPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+    private val processedImages = HashSet<String>()
+
+    /**
+     * Decoding and encoding is CPU-bound and runs on [Dispatchers.Default],
+     * only reading the cards and replacing images runs on [CardOrPasswordRepository.storageDispatcher]
+     */
+    override suspend fun doWork(): Result = withContext(Dispatchers.Default) {
+        val imagesDirectory = File(applicationContext.filesDir, applicationContext.getString(R.string.cards_images_folder_name))
+        val temporaryDirectory = File(applicationContext.filesDir, TEMPORARY_DIRECTORY) // same file system as the images
+        temporaryDirectory.listFiles()?.forEach { it.delete() } // left over from a stopped run
+
+        val imageIDs = readImageIDs()
+        // forget images that don't exist anymore (or have been changed)
+        val allImageKeys = imagesDirectory.listFiles()?.map { getProcessedKey(it) }?.toSet() ?: emptySet()
+        processedImages.addAll(preferences.getStringSet(PREFERENCE_PROCESSED_IMAGES, null)?.filter { it in allImageKeys } ?: emptyList())
+        saveProcessedImages()
+
+        val images = imagesDirectory.listFiles()?.filter { file ->
+            file.isFile && file.absolutePath in imageIDs && getProcessedKey(file) !in processedImages
+                    && CardImageDecoder.isEncrypted(applicationContext, file)
+        } ?: emptyList()
+
+        val (maxShortSide, maxLongSide) = getTargetSize(applicationContext)
+        var bytesSaved = 0L
+        for ((index, image) in images.withIndex()) {
+            if (isStopped)
+                break
+            bytesSaved += optimize(image, imageIDs[image.absolutePath]!!, temporaryDirectory, maxShortSide, maxLongSide)
+            setProgress(workDataOf(KEY_PROCESSED to index + 1, KEY_TOTAL to images.size, KEY_BYTES_SAVED to bytesSaved))
+        }
+        temporaryDirectory.delete()
+
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "optimized ${images.size} card images, saved $bytesSaved bytes")
+        Result.success(workDataOf(KEY_TOTAL to images.size, KEY_BYTES_SAVED to bytesSaved))
+    }
+
+    /**
+     * @return IDs of the cards by the paths of their images (only images that belong to a card are optimized)
+     */
+    private suspend fun readImageIDs(): Map<String, Int> = withContext(CardOrPasswordRepository.storageDispatcher) {
+        val imageIDs = HashMap<String, Int>()
+        for (ID in CardPreferenceManager.readAllIDs(applicationContext)) {
+            val card = try {
+                CardPreferenceManager.readComplete(applicationContext, ID)
+            } catch (e: IllegalStateException) {
+                null // record can't be decoded, its images are left as they are
+            } ?: continue
+            card.frontImageFile?.let { imageIDs[it.absolutePath] = ID }
+            card.backImageFile?.let { imageIDs[it.absolutePath] = ID }
+        }
+        imageIDs
+    }
+
+    /**
+     * Marks [imageFile] as processed, unless it failed for a reason that might be gone next time (for example not enough memory)
+     * @return Bytes saved (0 if [imageFile] is already optimized or could not be optimized)
+     */
+    private suspend fun optimize(imageFile: File, ID: Int, temporaryDirectory: File, maxShortSide: Int, maxLongSide: Int): Long {
+        val oldLength = imageFile.length()
+        val bitmap = try {
+            val bounds = CardImageDecoder.decodeBounds(applicationContext, imageFile, encrypted = true)
+            val scale = Utility.getScaleForMaxSize(
+                maxShortSide,
+                maxLongSide,
+                min(bounds.outWidth, bounds.outHeight),
+                max(bounds.outWidth, bounds.outHeight)
+            )
+            if (bounds.outWidth <= 0 || (bounds.outMimeType == FORMAT.mimeType && scale >= MIN_SCALE)) {
+                markProcessed(imageFile) // not an image or already optimized
+                return 0
+            }
+            CardImageDecoder.decode(applicationContext, imageFile, maxShortSide, maxLongSide, encrypted = true)
+        } catch (e: RuntimeException) {
+            null // can't be decrypted or decoded
+        } catch (e: OutOfMemoryError) {
+            return 0
+        }
+        if (bitmap == null) {
+            markProcessed(imageFile)
+            return 0
+        }
+        if (bitmap.hasAlpha()) { // keep transparency as it is
+            CardImageDecoder.reuseBitmap(bitmap)
+            markProcessed(imageFile)
+            return 0
+        }
+
+        // the same name, so that the image can still be decrypted after moving it
+        val newImageFile = File(temporaryDirectory, imageFile.name)
+        try {
+            val scale = min(1.0, Utility.getScaleForMaxSize(maxShortSide, maxLongSide, bitmap))
+            val scaledBitmap = CardImageCropper.scaleDown(
+                bitmap,
+                max(1, (bitmap.width * scale).roundToInt()),
+                max(1, (bitmap.height * scale).roundToInt())
+            )
+            newImageFile.delete()
+            try {
+                CardImageEncoder.writeEncrypted(applicationContext, scaledBitmap, newImageFile, FORMAT, QUALITY)
+            } finally {
+                if (scaledBitmap !== bitmap)
+                    scaledBitmap.recycle()
+            }
+        } catch (e: IOException) {
+            return 0
+        } catch (e: GeneralSecurityException) {
+            return 0
+        } catch (e: OutOfMemoryError) {
+            return 0
+        } finally {
+            CardImageDecoder.reuseBitmap(bitmap)
+        }
+
+        val newLength = newImageFile.length()
+        if (newLength >= oldLength) {
+            newImageFile.delete()
+            markProcessed(imageFile) // can't be made smaller
+            return 0
+        }
+        if (!CardRepository.replaceImageFile(applicationContext, ID, imageFile, newImageFile))
+            return 0
+        markProcessed(imageFile) // the new image
+        return oldLength - newLength
+    }
+
+    /**
+     * @return Key of [imageFile] in [processedImages], changes whenever the file is changed
+     */
+    private fun getProcessedKey(imageFile: File): String {
+        return "${imageFile.name}|${imageFile.length()}|${imageFile.lastModified()}"
+    }
+
+    private fun markProcessed(imageFile: File) {
+        processedImages.add(getProcessedKey(imageFile))
+        saveProcessedImages() // after every image, so that a stopped run doesn't decode them again
+    }
+
+    private fun saveProcessedImages() {
+        preferences.edit().putStringSet(PREFERENCE_PROCESSED_IMAGES, HashSet(processedImages)).apply()
+    }
+}
@@ -16,6 +16,8 @@ import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.os.ResultReceiver
 import androidx.core.app.JobIntentService
+import com.google.zxing.BarcodeFormat
+import com.izzdarki.wallet.utils.BarcodeRenderer
 import com.izzdarki.wallet.utils.ItemProperty
 import com.izzdarki.wallet.utils.Utility
 import java.io.File
@@ -71,7 +73,8 @@ class CreateExampleCardService : JobIntentService() {
                     value = cardIDValue,
                     secret = false
                 )
-            )
+            ),
+            codeMatrix = BarcodeRenderer.prerender(cardCode, BarcodeFormat.QR_CODE), // already in the background
         )
 
         // send result
@@ -9,6 +9,7 @@ import androidx.navigation.ui.AppBarConfiguration
 import androidx.navigation.ui.navigateUp
 import androidx.navigation.ui.setupActionBarWithNavController
 import androidx.navigation.ui.setupWithNavController
+import com.izzdarki.wallet.services.CardImageOptimizeWorker
 import com.izzdarki.wallet.services.ClearDirectoryService
 import izzdarki.wallet.R
 import izzdarki.wallet.databinding.ActivityMainBinding
@@ -40,6 +41,8 @@ class MainActivity : AppCompatActivity() {
         setupActionBarWithNavController(navController, appBarConfiguration)
         binding.navView.setupWithNavController(navController)
 
+        // Shrink card images that are bigger than needed (skips images that are already optimized)
+        CardImageOptimizeWorker.enqueue(this)
     }
 
     override fun onStop() {
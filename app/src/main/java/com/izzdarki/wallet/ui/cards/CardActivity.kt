@@ -6,26 +6,24 @@ import android.widget.FrameLayout
 import androidx.appcompat.widget.LinearLayoutCompat
 import com.izzdarki.wallet.utils.ScrollAnimationImageView
 import androidx.annotation.ColorInt
-import android.os.AsyncTask
-import android.graphics.Bitmap
-import androidx.security.crypto.MasterKey
-import androidx.security.crypto.EncryptedFile
-import android.graphics.BitmapFactory
 import izzdarki.wallet.R
 import android.widget.Toast
 import androidx.core.widget.NestedScrollView
+import androidx.lifecycle.lifecycleScope
+import com.izzdarki.wallet.preferences.CardData
 import com.izzdarki.wallet.preferences.CardPreferenceManager
+import com.izzdarki.wallet.repository.CardRepository
 import com.google.zxing.BarcodeFormat
+import com.izzdarki.wallet.utils.CardImageLoader
 import com.izzdarki.wallet.utils.ItemProperty
 import com.izzdarki.wallet.utils.Utility
 import java.io.File
-import java.io.IOException
-import java.io.InputStream
 import java.lang.IllegalStateException
 import java.lang.RuntimeException
-import java.lang.ref.WeakReference
-import java.security.GeneralSecurityException
 import java.util.*
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
 
 open class CardActivity : AppCompatActivity() {
     // UI
@@ -50,123 +48,9 @@ open class CardActivity : AppCompatActivity() {
     protected var currentFrontImage: File? = null
     protected var currentBackImage: File? = null
 
-    // decode bitmap task
-    protected class DecodeBitmapTask(
-        parentActivity: CardActivity?,
-        imageFile: File?,
-        isFront: Boolean
-    ) : AsyncTask<Void?, Void?, Bitmap?>() {
-        private val parentActivityReference: WeakReference<CardActivity?> = WeakReference(parentActivity)
-        private val imageFile: File? = imageFile
-        private val isFront: Boolean = isFront
-
-        private enum class Error {
-            NoError, FileTooBig, DecryptionFailed
-        }
-
-        private var error = Error.NoError
-        private fun decodeEncryptedFile(): Bitmap? {
-            // stop if parent activity has been killed
-            if (parentActivityReference.get() == null) {
-                error = Error.DecryptionFailed
-                return null
-            }
-            val inputStream: InputStream = try {
-                val context: Context? = parentActivityReference.get()
-                val mainKey = MasterKey.Builder(context!!)
-                    .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
-                    .build()
-                val encryptedImageFile = EncryptedFile.Builder(
-                    context,
-                    imageFile!!,
-                    mainKey,
-                    EncryptedFile.FileEncryptionScheme.AES256_GCM_HKDF_4KB
-                ).build()
-                encryptedImageFile.openFileInput()
-            } catch (e: IOException) {
-                throw RuntimeException(e)
-            } catch (e: GeneralSecurityException) {
-                throw RuntimeException(e)
-            }
-            return BitmapFactory.decodeStream(inputStream)
-        }
-
-        @Deprecated("Deprecated in Java")
-        override fun doInBackground(vararg params: Void?): Bitmap? {
-            return try {
-                //val timer = Utility.Timer("decode bitmap " + (if (isFront) "front" else "back")); // debug timer
-                val context: Context? = parentActivityReference.get()
-
-                // check if file is in files directory, which means it is encrypted
-                val bitmap: Bitmap? = if (parentActivityReference.get()!!.isInFilesDir(imageFile!!)
-                    && imageFile.name != context!!.getString(R.string.example_card_front_image_file_name)
-                    && imageFile.name != context.getString(R.string.example_card_back_image_file_name)
-                ) { // these files don't need to be encrypted
-                    decodeEncryptedFile()
-                }
-                else BitmapFactory.decodeFile(imageFile.absolutePath)
-
-                // timer.end(bitmap.toString()) // debug timer
-                bitmap
-            } catch (e: OutOfMemoryError) {
-                error = Error.FileTooBig
-                null
-            }
-        }
-
-        @Deprecated("Deprecated in Java")
-        override fun onPostExecute(bitmap: Bitmap?) {
-            val parentActivity = parentActivityReference.get()
-            if (error == Error.NoError) {
-                if (parentActivity != null) {
-                    if (isFront)
-                        parentActivity.cardView.frontImage = bitmap
-                    else
-                        parentActivity.cardView.backImage = bitmap
-                }
-            } else if (error == Error.FileTooBig) {
-                // if file was too big, it has to be deleted
-                if (parentActivity != null)
-                    Toast.makeText(
-                        parentActivity,
-                        R.string.file_too_big,
-                        Toast.LENGTH_SHORT
-                    ).show()
-                if (isFront) {
-                    if (imageFile != null && !imageFile.delete()) {
-                        /*
-                        if (BuildConfig.DEBUG)
-                            Log.e("DecodeBitmapTask", "front image file couldn't be deleted")
-                         */
-                    }
-                    if (parentActivity != null)
-                        parentActivity.currentFrontImage = null
-                } else {
-                    if (imageFile != null && !imageFile.delete()) {
-                        /*
-                        if (BuildConfig.DEBUG)
-                            Log.e("DecodeBitmapTask", "back image file couldn't be deleted")
-                         */
-                    }
-                    if (parentActivity != null)
-                        parentActivity.currentBackImage = null
-                }
-            } else if (error == Error.DecryptionFailed) {
-                if (parentActivity != null)
-                        Toast.makeText(
-                        parentActivity,
-                        R.string.image_decryption_failed,
-                        Toast.LENGTH_SHORT
-                    ).show()
-                if (parentActivity != null) {
-                    if (isFront)
-                        parentActivity.currentFrontImage = null
-                    else
-                        parentActivity.currentBackImage = null
-                }
-            }
-        }
-    }
+    private var initJob: Job? = null
+    private var frontImageJob: Job? = null
+    private var backImageJob: Job? = null
 
     protected fun createCardView() {
         cardView = ScrollAnimationImageView(this)
@@ -179,39 +63,110 @@ open class CardActivity : AppCompatActivity() {
         }
     }
 
-    protected open fun initFromPreferences() {
+    protected val isCardViewCreated: Boolean
+        get() = ::cardView.isInitialized
+
+    /**
+     * Reads the card of the intent in the background and calls [onInitialized] afterwards (on the main thread).
+     * If the card can't be read (for example its record is corrupt), an error is shown and the activity is finished.
+     * A previous call that has not finished yet is cancelled
+     */
+    protected fun initFromPreferences(onInitialized: () -> Unit) {
         ID = intent.getIntExtra(EXTRA_CARD_ID, -1)
         check(ID != -1) { "CardActivity: missing intent extra: ID" }
 
-        cardName = CardPreferenceManager.readName(this, ID)
+        initJob?.cancel()
+        initJob = lifecycleScope.launch {
+            val card = try {
+                CardRepository.readComplete(this@CardActivity, ID)
+            } catch (e: IllegalStateException) {
+                null // can't be decoded, see CardPreferenceManager.readComplete
+            }
+            if (card == null) {
+                Toast.makeText(this@CardActivity, R.string.error_occurred, Toast.LENGTH_SHORT).show()
+                finish()
+                return@launch
+            }
+            initFromCard(card)
+            onInitialized()
+        }
+    }
+
+    /**
+     * Helper for [initFromPreferences]
+     */
+    protected open fun initFromCard(card: CardData) {
+        cardName = card.name
         check(cardName != "") { "CardActivity: missing preference: card name" } // necessary
 
-        cardCode = CardPreferenceManager.readCode(this, ID)
-        cardCodeType = CardPreferenceManager.readCodeType(this, ID)
+        cardCode = card.code
+        cardCodeType = card.codeType
         check(cardCodeType != -1) { "CardActivity: missing preference: card code type" }
 
-        cardCodeTypeText = CardPreferenceManager.readCodeTypeText(this, ID)
-        cardColor = CardPreferenceManager.readColor(this, ID)
-        currentFrontImage = CardPreferenceManager.readFrontImageFile(this, ID)
-        currentBackImage = CardPreferenceManager.readBackImageFile(this, ID)
-        cardCreationDate = CardPreferenceManager.readCreationDate(this, ID)
-        cardAlterationDate = CardPreferenceManager.readAlterationDate(this, ID)
-        cardProperties = CardPreferenceManager.readProperties(this, ID)
-        labels = CardPreferenceManager.readLabels(this, ID)
+        cardCodeTypeText = card.codeTypeText
+        cardColor = card.color
+        currentFrontImage = card.frontImageFile
+        currentBackImage = card.backImageFile
+        cardCreationDate = card.creationDate
+        cardAlterationDate = card.alterationDate
+        cardProperties = card.properties
+        labels = card.labels
     }
 
+    /**
+     * Loads [currentFrontImage] in the background and shows it (cancels loading a previous front image)
+     */
     protected fun updateFrontImage() {
-        if (currentFrontImage != null)
-            DecodeBitmapTask(this, currentFrontImage, true).execute()
+        frontImageJob?.cancel()
+        val imageFile = currentFrontImage
+        if (imageFile != null)
+            frontImageJob = lifecycleScope.launch { loadImage(imageFile, isFront = true) }
         else cardView.removeFrontImage()
     }
 
+    /**
+     * Loads [currentBackImage] in the background and shows it (cancels loading a previous back image)
+     */
     protected fun updateBackImage() {
-        if (currentBackImage != null)
-            DecodeBitmapTask(this, currentBackImage, false).execute()
+        backImageJob?.cancel()
+        val imageFile = currentBackImage
+        if (imageFile != null)
+            backImageJob = lifecycleScope.launch { loadImage(imageFile, isFront = false) }
         else cardView.removeBackImage()
     }
 
+    private suspend fun loadImage(imageFile: File, isFront: Boolean) {
+        val bitmap = try {
+            CardImageLoader.load(
+                this,
+                imageFile,
+                maxShortSide = calculatedLayoutWidth.toInt(), // images are rotated to portrait
+                maxLongSide = calculatedLayoutHeight.toInt(),
+                priority = if (isFront) CardImageLoader.PRIORITY_FRONT else CardImageLoader.PRIORITY_BACK
+            )
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: OutOfMemoryError) {
+            // the image is kept, maybe there is enough memory next time
+            Toast.makeText(this, R.string.file_too_big, Toast.LENGTH_SHORT).show()
+            return
+        } catch (e: RuntimeException) {
+            Toast.makeText(this, R.string.image_decryption_failed, Toast.LENGTH_SHORT).show()
+            if (isFront)
+                currentFrontImage = null
+            else
+                currentBackImage = null
+            return
+        }
+
+        if (bitmap != null) {
+            if (isFront)
+                cardView.frontImage = bitmap
+            else
+                cardView.backImage = bitmap
+        }
+    }
+
     protected fun deleteFrontImage() {
         if (currentFrontImage != null) {
             if (!currentFrontImage!!.delete()) {
@@ -3,6 +3,7 @@ package com.izzdarki.wallet.ui.cards
 import android.content.DialogInterface
 import android.content.Intent
 import android.content.res.ColorStateList
+import android.graphics.BitmapFactory
 import android.graphics.Color
 import android.os.Bundle
 import android.text.Editable
@@ -19,24 +20,24 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.widget.LinearLayoutCompat
 import androidx.core.content.res.ResourcesCompat
 import androidx.fragment.app.DialogFragment
+import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
-import androidx.security.crypto.EncryptedFile
-import androidx.security.crypto.MasterKey
+import com.izzdarki.wallet.utils.CardImageEncoder
 import com.izzdarki.colorpickerview.dialog.ColorPickerDialogFragment
 import izzdarki.wallet.R
 import com.izzdarki.wallet.ui.adapters.EditPropertyAdapter
 import com.izzdarki.wallet.preferences.AppPreferenceManager
-import com.izzdarki.wallet.preferences.CardPreferenceManager
-import com.izzdarki.wallet.services.CreateExampleCardService
+import com.izzdarki.wallet.preferences.CardData
+import com.izzdarki.wallet.repository.CardRepository
 import com.izzdarki.wallet.ui.*
 import com.izzdarki.wallet.ui.secondary.CodeScannerActivity
 import com.izzdarki.wallet.ui.secondary.GetContentImageActivity
 import com.izzdarki.wallet.ui.secondary.GetImageActivity
 import com.izzdarki.wallet.ui.secondary.ImageCaptureActivity
 import com.izzdarki.wallet.utils.ItemProperty
+import com.izzdarki.wallet.utils.PackedBarcode
 import com.izzdarki.wallet.utils.Utility
-import com.izzdarki.wallet.utils.Utility.PreferenceArrayInt
 import com.izzdarki.wallet.utils.Utility.PreferenceArrayString
 import com.izzdarki.wallet.utils.Utility.IDGenerator
 import com.izzdarki.wallet.utils.Utility.hideKeyboard
@@ -47,10 +48,11 @@ import com.google.android.material.textfield.MaterialAutoCompleteTextView
 import com.google.android.material.textfield.TextInputEditText
 import com.google.android.material.textfield.TextInputLayout
 import com.google.zxing.BarcodeFormat
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.launch
 import java.io.File
-import java.io.FileInputStream
 import java.io.IOException
-import java.io.OutputStream
 import java.security.GeneralSecurityException
 import java.text.SimpleDateFormat
 import java.util.*
@@ -90,6 +92,9 @@ class EditCardActivity
     private var hasBeenModified = false
     private var lastFrontImage: File? = null
     private var lastBackImage: File? = null
+    private var storedCard: CardData? = null // card as stored when the activity was started (null when creating a new card)
+    private var initialized = false // true as soon as the card has been loaded and the views have been set up
+    private var saveJob: Job? = null
     // endregion
 
     override fun onCreate(savedInstanceState: Bundle?) {
@@ -116,34 +121,46 @@ class EditCardActivity
         cardFrontImageButton = findViewById(R.id.edit_card_front_image_button)
         cardBackImageButton = findViewById(R.id.edit_card_back_image_button)
         spaceForKeyboard = findViewById(R.id.edit_card_space_for_keyboard)
-        editLabelsComponent = EditLabelsComponent(
-            findViewById(R.id.edit_card_labels_chip_group),
-            findViewById(R.id.edit_card_labels_add_chip),
-            allLabels = CardPreferenceManager.collectAllLabelsSorted(this)
-        )
 
         // toolbar
         val toolbar = findViewById<MaterialToolbar>(R.id.toolbar)
         setSupportActionBar(toolbar)
         supportActionBar!!.setDisplayHomeAsUpEnabled(true)
 
-        // init
+        // init (in the background)
+        val allLabels = lifecycleScope.async { CardRepository.collectAllLabelsSorted(this@EditCardActivity) }
         if (isCreateNewCardIntent) {
-            initNewCard() // create new card
             supportActionBar!!.setTitle(R.string.new_card)
+            lifecycleScope.launch {
+                initNewCard() // create new card
+                initViews(allLabels.await())
+            }
         } else {
-            initFromPreferences() // load existing card
             supportActionBar!!.setTitle(R.string.edit_card)
-            lastFrontImage = currentFrontImage
-            lastBackImage = currentBackImage
-            /* explanation (i don't know what this means or whether this is up to date, but i also don't want to know it)
-                last images are the images, that are currently saved preferences, they are never being displayed
-                current images are the images, that are not saved in preferences, they are currently being displayed
-                if EditCardActivity "save"s, the last images get deleted and new ones get saved in preferences
-                if EditCardActivity "cancel"s, the current images get deleted and the preferences remain unchanged
-                if the images remain unchanged, last and current images are the same, then nothing gets deleted and preferences remain unchanged (scenario same for both "cancel" and "save")
-                 */
+            initFromPreferences { // load existing card
+                lastFrontImage = currentFrontImage
+                lastBackImage = currentBackImage
+                /* explanation (i don't know what this means or whether this is up to date, but i also don't want to know it)
+                    last images are the images, that are currently saved preferences, they are never being displayed
+                    current images are the images, that are not saved in preferences, they are currently being displayed
+                    if EditCardActivity "save"s, the last images get deleted and new ones get saved in preferences
+                    if EditCardActivity "cancel"s, the current images get deleted and the preferences remain unchanged
+                    if the images remain unchanged, last and current images are the same, then nothing gets deleted and preferences remain unchanged (scenario same for both "cancel" and "save")
+                     */
+                lifecycleScope.launch { initViews(allLabels.await()) }
+            }
         }
+    }
+
+    /**
+     * Sets up all views, after the card has been loaded
+     */
+    private fun initViews(allLabels: SortedSet<String>) {
+        editLabelsComponent = EditLabelsComponent(
+            findViewById(R.id.edit_card_labels_chip_group),
+            findViewById(R.id.edit_card_labels_add_chip),
+            allLabels = allLabels
+        )
 
         // card name
         cardNameInputEditText.setText(cardName)
@@ -253,12 +270,21 @@ class EditCardActivity
         }
         propertiesRecyclerView.adapter = adapter
 
+        if (!isCreateNewCardIntent && cardProperties.isEmpty()) {
+            // set IME options on last input field to done
+            if (cardCodeInputEditText.visibility != View.GONE)
+                Utility.setImeOptionsAndRestart(cardCodeInputEditText, EditorInfo.IME_ACTION_DONE)
+            else
+                Utility.setImeOptionsAndRestart(cardCodeTypeTextInput, EditorInfo.IME_ACTION_DONE)
+        }
+
         updateSpaceForKeyboard()
+        initialized = true
     }
 
     override fun dispatchTouchEvent(ev: MotionEvent?): Boolean {
         // Every touch event goes through this function
-        if (editLabelsComponent.dispatchTouchEvent(ev))
+        if (::editLabelsComponent.isInitialized && editLabelsComponent.dispatchTouchEvent(ev))
             return true
         else
             return super.dispatchTouchEvent(ev)
@@ -271,19 +297,13 @@ class EditCardActivity
 
 
     // region main functions
-    override fun initFromPreferences() {
-        super.initFromPreferences()
-
-        if (cardProperties.isEmpty()) {
-            // set IME options on last input field to done
-            if (cardCodeInputEditText.visibility != View.GONE)
-                Utility.setImeOptionsAndRestart(cardCodeInputEditText, EditorInfo.IME_ACTION_DONE)
-            else
-                Utility.setImeOptionsAndRestart(cardCodeTypeTextInput, EditorInfo.IME_ACTION_DONE)
-        }
+    override fun initFromCard(card: CardData) {
+        super.initFromCard(card)
+        storedCard = card
+        cardProperties = card.properties.map { it.copy() }.toMutableList() // storedCard must not be modified
     }
 
-    private fun initNewCard() {
+    private suspend fun initNewCard() {
         ID = generateNewCardID()
         cardName = getString(R.string.new_card)
         labels = PreferenceArrayString()
@@ -321,15 +341,23 @@ class EditCardActivity
     }
 
     private fun saveAndShowCard() {
+        if (!initialized || saveJob != null)
+            return // not loaded yet or already saving
+
         if (!readAndCheckAllInput()) {
             // When there are errors, saving will be aborted and Toast will be shown to user
             Toast.makeText(this, R.string.there_are_still_errors, Toast.LENGTH_SHORT).show()
             return
         }
 
-        writeToPreferences()
-
-        finishAndShowCard()
+        saveJob = lifecycleScope.launch {
+            if (writeToPreferences())
+                finishAndShowCard()
+            else {
+                Toast.makeText(this@EditCardActivity, R.string.error_occurred, Toast.LENGTH_SHORT).show()
+                saveJob = null // can be saved again or cancelled
+            }
+        }
     }
 
     /**
@@ -339,6 +367,13 @@ class EditCardActivity
      * @return `true` if the activity got finished, `false` otherwise
      */
     private fun requestCancel(): Boolean {
+        if (!initialized) {
+            finish() // nothing loaded, so nothing can have been modified
+            return true
+        }
+        if (saveJob != null)
+            return false // finishes when saved
+
         readAndCheckAllInput() // Read input to figure out if card has been modified (member variable hasBeenModified)
 
         if (AppPreferenceManager.isBackConfirmNewCardOrPassword(this) && isCreateNewCardIntent
@@ -377,7 +412,10 @@ class EditCardActivity
      */
     private fun deleteAndReturnToHome() {
         finishAndReturnToHome()
-        CardPreferenceManager.removeComplete(this, ID)
+        val context = applicationContext
+        CardRepository.launchWrite {
+            CardRepository.removeComplete(context, ID) // completes after finish
+        }
         // cached front and back images will be deleted with ClearDirectoryService
     }
     //endregion
@@ -469,6 +507,8 @@ class EditCardActivity
             return true
         }
         else if (item.itemId == R.id.edit_action_bar_delete) {
+            if (!initialized || saveJob != null)
+                return true
             AlertDialog.Builder(this)
                 .setTitle(R.string.delete_card)
                 .setMessage(R.string.delete_card_dialog_message)
@@ -538,11 +578,11 @@ class EditCardActivity
         imageCaptureIntent.putExtra(GetImageActivity.EXTRA_FILE_NAME, createImageName(isFront))
         imageCaptureIntent.putExtra(
             GetImageActivity.EXTRA_IMAGE_MAX_NEEDED_SHORT_SIDE,
-            calculatedLayoutWidth
+            calculatedLayoutWidth.toInt()
         )
         imageCaptureIntent.putExtra(
             GetImageActivity.EXTRA_IMAGE_MAX_NEEDED_LONG_SIDE,
-            calculatedLayoutHeight
+            calculatedLayoutHeight.toInt()
         )
 
         if (isFront)
@@ -651,7 +691,8 @@ class EditCardActivity
 
     // region read and check input fields
     /**
-     * Reads all the user input and checks if the card has been modified ({@link #hasBeenModified} will be set true)
+     * Reads all the user input and checks if the card has been modified ({@link #hasBeenModified} will be set true).
+     * Compares with [storedCard], so no storage access is needed
      * @return true if there are no errors, false otherwise
      */
     private fun readAndCheckAllInput(): Boolean {
@@ -674,13 +715,13 @@ class EditCardActivity
         if (cardNameInputLayout.error != null)
             return false
 
-        if (cardName != CardPreferenceManager.readName(this, ID))
+        if (cardName != (storedCard?.name ?: ""))
             hasBeenModified = true
         return true
     }
 
     private fun readAndCheckLabels() {
-        val oldLabels = CardPreferenceManager.readLabels(this, ID)
+        val oldLabels = storedCard?.labels ?: PreferenceArrayString()
         labels = PreferenceArrayString(editLabelsComponent.currentLabels.sorted().iterator())
         if (!oldLabels.containsAll(labels) || !labels.containsAll(oldLabels))
             hasBeenModified = true
@@ -688,19 +729,19 @@ class EditCardActivity
 
     private fun readAndCheckCardCodeInput() {
         cardCode = cardCodeInputEditText.text.toString().trim()
-        if (cardCode != CardPreferenceManager.readCode(this, ID))
+        if (cardCode != (storedCard?.code ?: ""))
             hasBeenModified = true
     }
 
     private fun readAndCheckCardCodeTypeInput() {
         cardCodeType = codeTypeStringToInt(this, cardCodeTypeInput.text.toString())
-        if (cardCodeType != CardPreferenceManager.readCodeType(this, ID))
+        if (cardCodeType != (storedCard?.codeType ?: -1))
             hasBeenModified = true
     }
 
     private fun readAndCheckCardCodeTypeTextInput() {
         cardCodeTypeText = codeTypeTextStringToBool(cardCodeTypeTextInput.text.toString())
-        if (cardCodeTypeText != CardPreferenceManager.readCodeTypeText(this, ID))
+        if (cardCodeTypeText != (storedCard?.codeTypeText ?: false))
             hasBeenModified = true
     }
 
@@ -714,11 +755,10 @@ class EditCardActivity
             holder?.readValue()
 
             val property: ItemProperty = cardProperties[position]
-            if (property.name != CardPreferenceManager.readPropertyName(this, ID, property.propertyID))
-                hasBeenModified = true // This accounts for newly added properties (because preference manager returns null string)
-            if (property.value != CardPreferenceManager.readPropertyValue(this, ID, property.propertyID))
+            val storedProperty = storedCard?.properties?.firstOrNull { it.propertyID == property.propertyID }
+            if (storedProperty == null) // newly added property
                 hasBeenModified = true
-            if (property.secret != CardPreferenceManager.readPropertySecret(this, ID, property.propertyID))
+            else if (property.name != storedProperty.name || property.value != storedProperty.value || property.secret != storedProperty.secret)
                 hasBeenModified = true
         }
     }
@@ -728,8 +768,8 @@ class EditCardActivity
      *  Then sets [hasBeenModified] to true
      */
     private fun checkIfPropertyHasBeenRemoved() {
-        for (propertyID in getCardPropertyIDs()) {
-            if (!doesPropertyIDExist(propertyID)) { // if propertyID doesn't exist anymore after editing
+        for (storedProperty in storedCard?.properties ?: listOf()) {
+            if (!doesPropertyIDExist(storedProperty.propertyID)) { // if propertyID doesn't exist anymore after editing
                 hasBeenModified = true
                 return
             }
@@ -777,116 +817,6 @@ class EditCardActivity
         updateSpaceForKeyboard()
     }
 
-    /**
-     * deletes last front image and copies to current front image from cache to files directory, if front image has been changed. Doesn't copy the file if it's already in files directory
-     */
-    private fun moveFrontImageFromCacheToFiles() {
-        if (currentFrontImage !== lastFrontImage && currentFrontImage != null && !isInFilesDir(currentFrontImage!!)) {
-            // delete last
-            deleteLastFrontImage()
-
-            // copy current
-            if (currentFrontImage != null) {
-                var outputStream: OutputStream? = null
-                try {
-                    val imagesDirectory =
-                        File(filesDir.toString() + "/" + getString(R.string.cards_images_folder_name))
-                    if (!imagesDirectory.exists()) imagesDirectory.mkdirs()
-                    val newFrontImage = File(imagesDirectory, currentFrontImage?.name!!)
-                    val mainKey = MasterKey.Builder(this)
-                        .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
-                        .build()
-                    val encryptedFile = EncryptedFile.Builder(
-                        this,
-                        newFrontImage,
-                        mainKey,
-                        EncryptedFile.FileEncryptionScheme.AES256_GCM_HKDF_4KB
-                    ).build()
-                    outputStream = encryptedFile.openFileOutput()
-                    Utility.copyFile(FileInputStream(currentFrontImage), outputStream)
-                    if (!currentFrontImage!!.delete()) {
-                        //if (BuildConfig.DEBUG)
-                        //    Log.e("EditCardActivity", "Could not delete front image file after copying it from cache to files");
-                    }
-                    currentFrontImage = newFrontImage
-                } catch (e: IOException) {
-                    /*
-                if (BuildConfig.DEBUG)
-                    Log.e("EditCardActivity", "couldn't copy current front image file from cache to files directory");
-                 */
-                    throw AssertionError(e)
-                } catch (e: GeneralSecurityException) {
-                    throw AssertionError(e)
-                } finally {
-                    // flush and close the stream
-                    if (outputStream != null) {
-                        try {
-                            outputStream.flush()
-                            outputStream.close()
-                        } catch (e: IOException) {
-                            e.printStackTrace()
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * deletes last back image and copies current back image from cache to files directory, if back image has been changed. Doesn't copy the file if it's already in files directory
-     */
-    private fun moveBackImageFromCacheToFiles() {
-        if (currentBackImage !== lastBackImage && currentBackImage != null && !isInFilesDir(currentBackImage!!)) {
-            // delete last
-            deleteLastBackImage()
-
-            // copy current
-            if (currentBackImage != null) {
-                var outputStream: OutputStream? = null
-                try {
-                    val imagesDirectory =
-                        File(filesDir.toString() + "/" + getString(R.string.cards_images_folder_name))
-                    if (!imagesDirectory.exists()) imagesDirectory.mkdirs()
-                    val newBackImage = File(imagesDirectory, currentBackImage!!.name)
-                    val mainKey = MasterKey.Builder(this)
-                        .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
-                        .build()
-                    val encryptedFile = EncryptedFile.Builder(
-                        this,
-                        newBackImage,
-                        mainKey,
-                        EncryptedFile.FileEncryptionScheme.AES256_GCM_HKDF_4KB
-                    ).build()
-                    outputStream = encryptedFile.openFileOutput()
-                    Utility.copyFile(FileInputStream(currentBackImage), outputStream)
-                    if (!currentBackImage!!.delete()) {
-                        //if (BuildConfig.DEBUG)
-                        //    Log.e("EditCardActivity", "Could not delete back image file after copying it from cache to files");
-                    }
-                    currentBackImage = newBackImage
-                } catch (e: IOException) {
-                    /*
-                    if (BuildConfig.DEBUG)
-                        Log.e("EditCardActivity", "couldn't copy current back image file from cache to files directory");
-                     */
-                    throw AssertionError(e)
-                } catch (e: GeneralSecurityException) {
-                    throw AssertionError(e)
-                } finally {
-                    // flush and close the stream
-                    if (outputStream != null) {
-                        try {
-                            outputStream.flush()
-                            outputStream.close()
-                        } catch (e: IOException) {
-                            e.printStackTrace()
-                        }
-                    }
-                }
-            }
-        }
-    }
-
     private fun removeImage(isFront: Boolean) {
         if (isFront)
             removeFrontImage()
@@ -897,7 +827,8 @@ class EditCardActivity
     private fun removeFrontImage() {
         if (currentFrontImage != null) {
             cardView.removeFrontImage()
-            CardPreferenceManager.deleteFrontImage(this, ID)
+            val context = applicationContext
+            CardRepository.launchWrite { CardRepository.deleteFrontImage(context, ID) }
             currentFrontImage = null
             updateSpaceForKeyboard()
         }
@@ -906,31 +837,13 @@ class EditCardActivity
     private fun removeBackImage() {
         if (currentBackImage != null) {
             cardView.removeBackImage()
-            CardPreferenceManager.deleteBackImage(this, ID)
+            val context = applicationContext
+            CardRepository.launchWrite { CardRepository.deleteBackImage(context, ID) }
             currentBackImage = null
             updateSpaceForKeyboard()
         }
     }
 
-    private fun deleteLastFrontImage() {
-        if (lastFrontImage?.delete() == false) {
-            /*
-            if (BuildConfig.DEBUG)
-                Log.e("EditCardActivity", "last front image file couldn't be deleted");
-             */
-        }
-        lastFrontImage = null
-    }
-
-    private fun deleteLastBackImage() {
-        if (lastBackImage?.delete() == false) {
-            /*
-            if (BuildConfig.DEBUG)
-                Log.e("EditCardActivity", "last back image file couldn't be deleted");
-             */
-        }
-        lastBackImage = null
-    }
     // endregion
     
 
@@ -966,25 +879,52 @@ class EditCardActivity
         startActivity(intent)
     }
 
-    private fun writeToPreferences() {
-        moveFrontImageFromCacheToFiles()
-        moveBackImageFromCacheToFiles()
+    /**
+     * Saves the card with [CardRepository.saveComplete]. The old images are deleted only after the card has been written
+     * @return `true` if the card has been written
+     */
+    private suspend fun writeToPreferences(): Boolean {
+        val code = cardCode ?: ""
+        val replacedImages = listOfNotNull(
+            lastFrontImage?.takeIf { it !== currentFrontImage },
+            lastBackImage?.takeIf { it !== currentBackImage },
+        )
 
-        CardPreferenceManager.writeComplete(
-            this,
+        val result = CardRepository.saveComplete(
+            applicationContext,
             ID,
             cardName,
             cardColor,
             cardCreationDate,
             alterationDate = Calendar.getInstance().time,
             labels,
-            code = cardCode ?: "",
+            code,
             cardCodeType,
             cardCodeTypeText,
             currentFrontImage,
             currentBackImage,
-            cardProperties
+            cardProperties,
+            codeMatrix = getStoredCodeMatrix(),
+            replacedImages
         )
+        // the moved images are used from now on, on cancel they are deleted if the card has not been written
+        currentFrontImage = result.frontImage
+        currentBackImage = result.backImage
+        if (result.written) {
+            lastFrontImage = currentFrontImage
+            lastBackImage = currentBackImage
+            if (code != "" && cardCodeType != -1 && getStoredCodeMatrix() == null) // rendered after saving, so that saving is not delayed
+                CardRepository.launchPrerenderCode(applicationContext, ID, code, cardCodeType, cardCodeIntToBarcodeFormat(cardCodeType))
+        }
+        return result.written
+    }
+
+    /**
+     * @return Code matrix of [storedCard], if the code has not changed (so it doesn't need to be rendered again), otherwise `null`
+     */
+    private fun getStoredCodeMatrix(): PackedBarcode? {
+        val storedCard = storedCard ?: return null
+        return if (storedCard.code == (cardCode ?: "") && storedCard.codeType == cardCodeType) storedCard.codeMatrix else null
     }
 
     private fun doesPropertyIDExist(propertyID: Int): Boolean {
@@ -995,15 +935,6 @@ class EditCardActivity
         return false
     }
 
-    private fun getCardPropertyIDs(): PreferenceArrayInt {
-        // collect all property IDs from cardProperties list
-        val array = PreferenceArrayInt()
-        for (property in cardProperties)
-            array.add(property.propertyID)
-
-        return array
-    }
-
     private fun getNewCardCodeTypeAdapter(): ArrayAdapter<String> {
         val codeValues = arrayOf(
             getString(R.string.card_code_type_value_qr),
@@ -1060,8 +991,8 @@ class EditCardActivity
         }
     }
 
-    private fun generateNewCardID(): Int {
-        val cardIDs: List<Int> = CardPreferenceManager.readAllIDs(this) // this is fine because there can't be an unsaved card with an unsaved ID at this moment
+    private suspend fun generateNewCardID(): Int {
+        val cardIDs: List<Int> = CardRepository.readAllIDs(this) // this is fine because there can't be an unsaved card with an unsaved ID at this moment
         return IDGenerator(cardIDs).generateID()
     }
 
@@ -1069,17 +1000,24 @@ class EditCardActivity
         if (!isMahlerCardInit) {
             deleteFrontImage()
 
-            val mahlerImageStream = resources.openRawResource(R.raw.front_mahler_image)
-
-            // ensure cards images folder exists
+            // images in cache are encrypted (see CardImageEncoder)
             val cashCardsImagesFolder = File(cacheDir.toString() + "/" + getString(R.string.cards_images_folder_name))
-            if (!cashCardsImagesFolder.exists()) cashCardsImagesFolder.mkdirs()
-            currentFrontImage = CreateExampleCardService.copyCardImage(
-                this,
-                mahlerImageStream,
+            val mahlerImage = File(
                 cashCardsImagesFolder,
                 "JPEG_" + ID + "_" + getString(R.string.mahler_card_front_image_file_name)
             ) // The filename of Mahler card should not change in future versions of the app (It's checked by Utility.isMahlerFile(...)) // TODO from now on it is not used anymore
+            mahlerImage.delete()
+            currentFrontImage = try {
+                val bitmap = resources.openRawResource(R.raw.front_mahler_image).use { BitmapFactory.decodeStream(it) }
+                CardImageEncoder.writeEncrypted(this, bitmap, mahlerImage)
+                mahlerImage
+            } catch (e: IOException) {
+                null
+            } catch (e: GeneralSecurityException) {
+                null
+            } catch (e: OutOfMemoryError) {
+                null
+            }
             updateFrontImage()
 
             cardName = "Gustav Mahler"
@@ -12,21 +12,27 @@ import android.widget.Space
 import android.widget.Toast
 import androidx.annotation.ColorInt
 import androidx.appcompat.app.AlertDialog
+import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import izzdarki.wallet.R
 import com.izzdarki.wallet.ui.adapters.ShowPropertyAdapter
 import com.izzdarki.wallet.preferences.AppPreferenceManager
+import com.izzdarki.wallet.preferences.CardData
 import com.izzdarki.wallet.preferences.CardPreferenceManager
+import com.izzdarki.wallet.repository.CardRepository
 import com.google.android.material.appbar.MaterialToolbar
 import com.google.android.material.chip.Chip
 import com.google.android.material.chip.ChipGroup
 import com.google.android.material.divider.MaterialDivider
 import com.google.android.material.textview.MaterialTextView
-import com.google.zxing.MultiFormatWriter
 import com.google.zxing.WriterException
-import com.google.zxing.common.BitMatrix
-import java.util.*
+import com.izzdarki.wallet.utils.BarcodeRenderer
+import com.izzdarki.wallet.utils.PackedBarcode
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 class ShowCardActivity : CardActivity() {
 
@@ -45,6 +51,8 @@ class ShowCardActivity : CardActivity() {
     // region variables
     @ColorInt private var codeForegroundColor = 0
     @ColorInt private var codeBackgroundColor = 0
+    private var codeJob: Job? = null
+    private var cardCodeMatrix: PackedBarcode? = null // pre-rendered code (see CardRepository.launchPrerenderCode)
     // endregion
 
 
@@ -66,9 +74,6 @@ class ShowCardActivity : CardActivity() {
         labelsChipGroup = findViewById(R.id.labels_chip_group)
         labelsDivider = findViewById(R.id.labels_divider)
 
-        // init
-        initFromPreferences()
-
         // toolbar
         val toolbar = findViewById<MaterialToolbar>(R.id.toolbar)
         setSupportActionBar(toolbar)
@@ -80,46 +85,28 @@ class ShowCardActivity : CardActivity() {
 
         // card properties recyclerview
         cardPropertiesRecyclerView.layoutManager = LinearLayoutManager(this)
-        cardPropertiesRecyclerView.adapter = createShowPropertyAdapter()
-        show()
 
-        // password labels
-        if (labels.isEmpty()) {
-            labelsDivider.visibility = View.GONE
-            labelsChipGroup.visibility = View.GONE
-        } else {
-            labelsDivider.visibility = View.VISIBLE
-            labelsChipGroup.visibility = View.VISIBLE
-            addLabelsToChipGroup()
+        // init (in the background)
+        initFromPreferences {
+            showCard()
         }
-
-        // card view
-        createCardView()
     }
 
     override fun onNewIntent(intent: Intent) {
         super.onNewIntent(intent)
         scrollView.scrollY = 0 // refreshes scroll position
-        cardView.removeFrontImage() // hides old image, new image will be loaded later
-        cardView.removeBackImage() // hides old image, new image will be loaded later
-        initFromPreferences()
-
-        // hide/show labels chip group
-        if (labels.isEmpty()) {
-            labelsDivider.visibility = View.GONE
-            labelsChipGroup.visibility = View.GONE
-        } else {
-            labelsDivider.visibility = View.VISIBLE
-            labelsChipGroup.visibility = View.VISIBLE
-            labelsChipGroup.removeAllViews()
-            addLabelsToChipGroup()
+        if (isCardViewCreated) {
+            cardView.removeFrontImage() // hides old image, new image will be loaded later
+            cardView.removeBackImage() // hides old image, new image will be loaded later
+        }
+        initFromPreferences {
+            showCard()
         }
+    }
 
-        // update
-        cardPropertiesRecyclerView.adapter = createShowPropertyAdapter() // because cardProperties has been reassigned, a new adapter, that holds the new cardProperties is needed
-        show()
-        updateFrontImage()
-        updateBackImage()
+    override fun initFromCard(card: CardData) {
+        super.initFromCard(card)
+        cardCodeMatrix = card.codeMatrix
     }
     // endregion
 
@@ -145,7 +132,10 @@ class ShowCardActivity : CardActivity() {
             builder.setCancelable(true)
             builder.setPositiveButton(R.string.delete) { dialog, _ ->
                 finish() // ALWAYS FINISH BEFORE STARTING OTHER ACTIVITY
-                CardPreferenceManager.removeComplete(this, ID)
+                val context = applicationContext
+                CardRepository.launchWrite {
+                    CardRepository.removeComplete(context, ID) // completes after finish
+                }
                 dialog.dismiss()
             }
             builder.setNegativeButton(
@@ -163,6 +153,33 @@ class ShowCardActivity : CardActivity() {
     }
     // endregion
 
+    /**
+     * Updates all views after [initFromPreferences]
+     */
+    private fun showCard() {
+        // hide/show labels chip group
+        if (labels.isEmpty()) {
+            labelsDivider.visibility = View.GONE
+            labelsChipGroup.visibility = View.GONE
+        } else {
+            labelsDivider.visibility = View.VISIBLE
+            labelsChipGroup.visibility = View.VISIBLE
+            labelsChipGroup.removeAllViews()
+            addLabelsToChipGroup()
+        }
+
+        cardPropertiesRecyclerView.adapter = createShowPropertyAdapter() // because cardProperties has been reassigned, a new adapter, that holds the new cardProperties is needed
+        show()
+
+        // card view
+        if (!isCardViewCreated)
+            createCardView() // loads the images as soon as the card view is ready
+        else {
+            updateFrontImage()
+            updateBackImage()
+        }
+    }
+
     private fun show() {
         // hide scrollbar (TODO feature was removed, because it didn't do anything)
         //hideScrollbar()
@@ -197,21 +214,33 @@ class ShowCardActivity : CardActivity() {
             }
 
             cardCodeImageView.visibility = View.VISIBLE
-            val codeBitmap: Bitmap
-            try {
-                codeBitmap = if (codeIs1D(cardCodeType)) createCode1D() else createCodeDefault()
-            } catch (e: IllegalArgumentException) {
-                catchExceptionFunc(e)
-                return
-            } catch (e: WriterException) {
-                catchExceptionFunc(e)
-                return
-            } catch (e: ArrayIndexOutOfBoundsException) {
-                catchExceptionFunc(e)
-                return
+            codeJob?.cancel()
+            val code = cardCode
+            val format = cardCodeIntToBarcodeFormat(cardCodeType)
+            // cached or pre-rendered after saving, no encoding needed
+            val cachedMask = BarcodeRenderer.getCachedMask(code, format, cardCodeMatrix)
+            if (cachedMask != null)
+                setCodeImage(cachedMask)
+            else {
+                cardCodeImageView.setImageDrawable(null) // don't show the code of the last card
+                codeJob = lifecycleScope.launch {
+                    val mask = try {
+                        withContext(Dispatchers.Default) { BarcodeRenderer.encodeMask(code, format) }
+                    } catch (e: IllegalArgumentException) {
+                        catchExceptionFunc(e)
+                        return@launch
+                    } catch (e: WriterException) {
+                        catchExceptionFunc(e)
+                        return@launch
+                    } catch (e: ArrayIndexOutOfBoundsException) {
+                        catchExceptionFunc(e)
+                        return@launch
+                    }
+                    setCodeImage(mask)
+                }
             }
-            cardCodeImageView.setImageBitmap(codeBitmap)
         } else {
+            codeJob?.cancel()
             cardCodePlainTextView.visibility = View.GONE
             cardCodeImageView.visibility = View.GONE
         }
@@ -253,47 +282,14 @@ class ShowCardActivity : CardActivity() {
         }
     }
 
-    @Throws(IllegalArgumentException::class, WriterException::class)
-    private fun createCodeDefault(): Bitmap {
+    /**
+     * Shows [mask] (see [BarcodeRenderer]) in the size for [cardCodeType]
+     */
+    private fun setCodeImage(mask: Bitmap) {
         val widthAndHeight = getBarcodeSize(cardCodeType)
-        val bitMatrix: BitMatrix = MultiFormatWriter().encode(
-            cardCode,
-            cardCodeIntToBarcodeFormat(cardCodeType),
-            widthAndHeight.width,
-            widthAndHeight.height
+        cardCodeImageView.setImageDrawable(
+            BarcodeRenderer.createDrawable(mask, widthAndHeight.width, widthAndHeight.height, codeForegroundColor, codeBackgroundColor)
         )
-        val bitMatrixWidth = bitMatrix.width
-        val bitMatrixHeight = bitMatrix.height
-        val pixels = IntArray(bitMatrixWidth * bitMatrixHeight)
-        for (y in 0 until bitMatrixHeight) {
-            val offset = y * bitMatrixWidth
-            for (x in 0 until bitMatrixWidth) pixels[offset + x] =
-                if (bitMatrix[x, y]) codeForegroundColor else codeBackgroundColor
-        }
-        val bitmap = Bitmap.createBitmap(bitMatrixWidth, bitMatrixHeight, Bitmap.Config.ARGB_8888)
-        bitmap.setPixels(pixels, 0, bitMatrixWidth, 0, 0, bitMatrixWidth, bitMatrixHeight)
-        return bitmap
-    }
-
-    @Throws(IllegalArgumentException::class, WriterException::class)
-    private fun createCode1D(): Bitmap {
-        val widthAndHeight = getBarcodeSize(cardCodeType)
-        val bitMatrix: BitMatrix = MultiFormatWriter().encode(
-            cardCode,
-            cardCodeIntToBarcodeFormat(cardCodeType),
-            widthAndHeight.width,
-            widthAndHeight.height,
-            null
-        )
-        val bitMatrixWidth = bitMatrix.width
-        val bitMatrixHeight = bitMatrix.height
-        val bitmap = Bitmap.createBitmap(bitMatrixWidth, bitMatrixHeight, Bitmap.Config.ARGB_8888)
-        for (i in 0 until bitMatrixWidth) {
-            val column = IntArray(bitMatrixHeight)
-            Arrays.fill(column, if (bitMatrix[i, 0]) codeForegroundColor else codeBackgroundColor)
-            bitmap.setPixels(column, 0, 1, i, 0, 1, bitMatrixHeight)
-        }
-        return bitmap
     }
 
     private class WidthAndHeight {
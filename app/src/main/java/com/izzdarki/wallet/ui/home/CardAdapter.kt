@@ -15,9 +15,8 @@ import com.izzdarki.wallet.ui.cards.CardActivity
 import com.izzdarki.wallet.ui.cards.ShowCardActivity
 import com.izzdarki.wallet.utils.*
 
-class CardAdapter(
-    private var cards: List<CardOrPasswordPreviewData>
-) : RecyclerView.Adapter<CardAdapter.ViewHolder>()
+class CardAdapter
+    : CardOrPasswordAdapter<CardAdapter.ViewHolder>()
 {
 
     companion object {
@@ -34,7 +33,7 @@ class CardAdapter(
         init {
             cardView.setOnClickListener {
                 // Show card on click
-                showCard(cards[adapterPosition].ID)
+                showCard(getItem(adapterPosition).ID)
             }
         }
 
@@ -48,7 +47,7 @@ class CardAdapter(
         override val itemDetails: ItemDetailsLookup.ItemDetails<Long>
             get() = object : ItemDetailsLookup.ItemDetails<Long>() {
                 override fun getPosition(): Int = adapterPosition
-                override fun getSelectionKey(): Long = cards[adapterPosition].ID.toLong()
+                override fun getSelectionKey(): Long = getItem(adapterPosition).ID.toLong()
             }
 
     }
@@ -62,40 +61,21 @@ class CardAdapter(
 
     override fun onBindViewHolder(holder: ViewHolder, pos: Int) {
         val context = holder.cardView.context
+        val card = getItem(pos)
 
-        holder.textView.text = cards[pos].name
+        holder.textView.text = card.name
         holder.cardView.doOnPreDraw {
             holder.cardView.minimumHeight = (holder.cardView.width / cardWidthToHeightRatio).toInt()
             holder.cardView.radius = (holder.cardView.width / ScrollAnimationImageView.widthToCornerRadiusRatio).toFloat()
         }
 
-        // outline if color is similar to background color
-        holder.cardView.setCardBackgroundColor(cards[pos].color)
-        if (Utility.areColorsSimilar(
-                Utility.getDefaultBackgroundColor(context),
-                cards[pos].color
-            )
-        ) {
-            // draw outline
-            holder.cardView.strokeWidth = context.resources.getDimension(R.dimen.outline_for_similar_colors_stroke_width).toInt()
-            holder.cardView.strokeColor = context.resources.getColor(R.color.card_view_outline_color)
-        } else {
-            // remove outline
-            holder.cardView.strokeWidth = 0
-        }
-
-        // text color
-        if (Utility.isColorDark(cards[pos].color))
-            holder.textView.setTextColor(context.resources.getColor(R.color.on_dark_text_color))
-        else
-            holder.textView.setTextColor(context.resources.getColor(R.color.on_light_text_color))
-
-        if (selectionTracker.isSelected(cards[pos].ID.toLong()))
-            AppUtility.makeCardViewSelected(holder.cardView)  // if not selected, outline has already been drawn (or not, if it has no outline)
-    }
+        // colors and outline (outline if color is similar to background color)
+        val attributes = CardViewRenderAttributes.get(context, card.color)
+        attributes.applyTo(holder.cardView)
+        holder.textView.setTextColor(attributes.textColor)
 
-    override fun getItemCount(): Int {
-        return cards.size
+        if (selectionTracker.isSelected(card.ID.toLong()))
+            AppUtility.makeCardViewSelected(holder.cardView, attributes)
     }
 
 }
\ No newline at end of file
@@ -20,22 +20,27 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.widget.SearchView
 import androidx.core.view.doOnPreDraw
 import androidx.fragment.app.Fragment
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
 import androidx.preference.PreferenceManager
 import androidx.recyclerview.selection.SelectionPredicates
 import androidx.recyclerview.selection.SelectionTracker
 import androidx.recyclerview.selection.StorageStrategy
 import com.izzdarki.wallet.ui.cards.EditCardActivity
-import com.izzdarki.wallet.preferences.CardPreferenceManager
 import androidx.recyclerview.widget.GridLayoutManager
 import com.izzdarki.wallet.ui.cards.CardActivity
 import com.izzdarki.wallet.preferences.AppPreferenceManager
 import com.izzdarki.wallet.preferences.AppPreferenceManager.SortingType
+import com.izzdarki.wallet.repository.CardRepository
 import com.izzdarki.wallet.services.CreateExampleCardService
 import com.izzdarki.wallet.utils.CardOrPasswordPreviewData
 import com.izzdarki.wallet.utils.CardOrPasswordStableIDKeyProvider
 import com.izzdarki.wallet.utils.MultiSelectItemDetailsLookup
 import com.izzdarki.wallet.utils.Utility.attachDragAndDropToRecyclerView
 import com.izzdarki.wallet.utils.Utility.setPaddingBottom
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
 
 class HomeCardsFragment
     : Fragment(R.layout.fragment_home_cards) {
@@ -51,10 +56,11 @@ class HomeCardsFragment
     private lateinit var plusButton: FloatingActionButton
 
     // variables
-    private var cards: MutableList<CardOrPasswordPreviewData> = mutableListOf()
+    private lateinit var adapter: CardAdapter
     private lateinit var selectionTracker: SelectionTracker<Long>
-    private var init = false
     private var searchQuery: String = ""
+    private var sortedCards: List<CardOrPasswordPreviewData>? = null // all cards sorted, but not filtered (null if it has to be sorted again)
+    private var updateCardsJob: Job? = null
     private lateinit var clearSelectionOnBackPressedCallback: OnBackPressedCallback
 
 
@@ -71,8 +77,6 @@ class HomeCardsFragment
         cardGridRecyclerView = view.findViewById(R.id.fragment_home_cards_card_grid_recycler_view)
         plusButton = view.findViewById(R.id.fragment_home_cards_plus_button)
 
-        updateCards()
-
         // back button
         clearSelectionOnBackPressedCallback = object : OnBackPressedCallback(enabled = false) {
             override fun handleOnBackPressed() {
@@ -90,7 +94,7 @@ class HomeCardsFragment
 
         // Card grid recycler view
         cardGridRecyclerView.layoutManager = getCardGridLayoutManager()
-        val adapter = CardAdapter(cards)
+        adapter = CardAdapter()
         cardGridRecyclerView.adapter = adapter
         cardGridRecyclerView.doOnPreDraw { // Add bottom padding
             it.setPaddingBottom(plusButton.height + 2 * plusButton.paddingBottom)
@@ -100,14 +104,16 @@ class HomeCardsFragment
         // Drag and drop
         attachDragAndDropToRecyclerView(
             cardGridRecyclerView,
-            cards
+            adapter::moveItem
         ) {
             AppPreferenceManager.setCardsSortingType(requireContext(), SortingType.CustomSorting) // change sorting type to custom
             AppPreferenceManager.setCardsSortReverse(requireContext(), false) // the current sorting is not reverse (even if it was reverse before moving an item)
-            CardPreferenceManager.writeCustomSortingNoGrouping(
-                requireContext(),
-                PreferenceArrayInt(cards.map { it.ID }.iterator())
-            ) // save the custom sorting to preferences
+            val context = requireContext().applicationContext
+            val customSorting = PreferenceArrayInt(adapter.currentList.map { it.ID }.iterator())
+            CardRepository.launchWrite {
+                CardRepository.writeCustomSortingNoGrouping(context, customSorting)
+            } // save the custom sorting to preferences
+            sortedCards = if (searchQuery == "") adapter.currentList.toList() else null // only the filtered cards have been sorted, sort again when filtering changes
 
             selectionTracker.clearSelection()
         }
@@ -116,7 +122,7 @@ class HomeCardsFragment
         selectionTracker = SelectionTracker.Builder(
             SELECTION_ID,
             cardGridRecyclerView,
-            CardOrPasswordStableIDKeyProvider(cards),
+            CardOrPasswordStableIDKeyProvider(adapter.currentList),
             MultiSelectItemDetailsLookup(cardGridRecyclerView),
             StorageStrategy.createLongStorage()
         ).withSelectionPredicate(
@@ -132,6 +138,15 @@ class HomeCardsFragment
             }
         })
 
+        // Cards (loaded in the background, updated whenever the stored cards change)
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                CardRepository.items.collect {
+                    updateCardsAndNotifyAdapter()
+                }
+            }
+        }
+
         initFirstRun()
     }
 
@@ -143,12 +158,7 @@ class HomeCardsFragment
     
     override fun onResume() {
         super.onResume()
-        if (init) {
-            // This code does not run if this is the first time that onResume is being called
-            updateCardsAndNotifyAdapter()
-        }
-        else
-            init = true
+        refreshCards()
         clearSelectionOnBackPressedCallback.isEnabled = (selectionTracker.selection.size() > 0)
     }
 
@@ -167,29 +177,50 @@ class HomeCardsFragment
         // Doesn't care about grouping by label at the moment
 
         AppPreferenceManager.setCardsSortingType(requireContext(), sortingType) // updates sorting type in preferences
-        sortCardsArray(sortingType)
-        cardGridRecyclerView.adapter?.notifyDataSetChanged()
+        updateCardsAndNotifyAdapter()
     }
 
-    fun updateCardsAndNotifyAdapter() {
-        if (updateCards())
-            cardGridRecyclerView.adapter?.notifyDataSetChanged()
+    /**
+     * Reads the stored cards in the background. [CardRepository.items] is collected, so the cards list gets updated if anything has changed
+     */
+    private fun refreshCards() {
+        val context = requireContext().applicationContext
+        lifecycleScope.launch {
+            CardRepository.refresh(context)
+        }
     }
 
-    private fun updateCards(): Boolean {
-        val oldCards = cards.toList()
-        cards.clear()
-
-        cards.addAll(CardPreferenceManager.readAll(requireContext()))
-        sortCardsArray(AppPreferenceManager.getCardsSortingType(requireContext())) // sort the list according to saved sorting type
-        if (searchQuery != "") {
-            cards.retainAll {
-                it.name.contains(searchQuery, ignoreCase = true)
-                        || it.labels.any { label -> label.contains(searchQuery, ignoreCase = true) }
-            }
+    /**
+     * Sorts and filters (according to [searchQuery]) [CardRepository.items] in the background and notifies the adapter if the cards list has changed.
+     * A running update is cancelled, because it is outdated
+     */
+    private fun updateCardsAndNotifyAdapter() {
+        val allCards = CardRepository.items.value ?: return // not loaded yet (will be called again when loaded)
+        val context = requireContext().applicationContext
+        val sortingType = AppPreferenceManager.getCardsSortingType(context)
+        val reverse = AppPreferenceManager.isCardsSortReverse(context)
+        val query = searchQuery
+
+        updateCardsJob?.cancel()
+        updateCardsJob = lifecycleScope.launch {
+            val newCardsSorted = CardRepository.sort(context, allCards, sortingType, reverse)
+            sortedCards = newCardsSorted
+            adapter.submitList(CardRepository.filter(newCardsSorted, query))
         }
+    }
+
+    /**
+     * Filters the already sorted cards according to [searchQuery] in the background (without accessing storage) and notifies the adapter if the cards list has changed.
+     * Sorts again if needed
+     */
+    private fun filterCardsAndNotifyAdapter() {
+        val currentSortedCards = sortedCards ?: return updateCardsAndNotifyAdapter()
+        val query = searchQuery
 
-        return cards != oldCards
+        updateCardsJob?.cancel()
+        updateCardsJob = lifecycleScope.launch {
+            adapter.submitList(CardRepository.filter(currentSortedCards, query))
+        }
     }
 
     private fun editCard(ID: Int) {
@@ -219,8 +250,7 @@ class HomeCardsFragment
             .setMessage(R.string.delete_x_cards_dialog_message)
             .setCancelable(true)
             .setPositiveButton(R.string.delete) { dialog, _ ->
-                for (ID in IDs)
-                    deleteCardDirectly(ID)
+                deleteCardsDirectly(IDs)
                 dialog.dismiss()
             }
             .setNegativeButton(android.R.string.cancel) { dialog: DialogInterface, _: Int ->
@@ -245,8 +275,10 @@ class HomeCardsFragment
         searchView.queryHint = getString(R.string.home_search_hint)
         searchView.setOnQueryTextListener(object : SearchView.OnQueryTextListener {
             override fun onQueryTextSubmit(query: String?): Boolean {
+                if (searchQuery == (query ?: ""))
+                    return true
                 searchQuery = query ?: ""
-                updateCardsAndNotifyAdapter() // updates card (also filters according to searchQuery)
+                filterCardsAndNotifyAdapter() // only filters, sorting hasn't changed
                 return true
             }
 
@@ -320,29 +352,24 @@ class HomeCardsFragment
     }
 
     private fun deleteCardDirectly(ID: Int) {
-        CardPreferenceManager.removeComplete(requireContext(), ID)
+        val context = requireContext().applicationContext
+        CardRepository.launchWrite {
+            CardRepository.removeComplete(context, ID)
+        }
 
-        val indexRemoved = cards.indexOfFirst { it.ID == ID }
-        cards.removeAt(indexRemoved)
-        cardGridRecyclerView.adapter?.notifyItemRemoved(indexRemoved)
+        sortedCards = sortedCards?.filter { it.ID != ID }
+        adapter.removeItems { it.ID == ID }
     }
 
-    /**
-     * Helper for [sortCards] and used in [updateCards]
-     */
-    private fun sortCardsArray(sortingType: SortingType) {
-        when (sortingType) {
-            SortingType.ByName -> cards.sortBy { it.name }
-            SortingType.CustomSorting -> {
-                val savedCustomSortingIDs = CardPreferenceManager.readCustomSortingNoGrouping(requireContext())
-                cards.sortBy { savedCustomSortingIDs.indexOf(it.ID) }
-            }
-            SortingType.ByCreationDate -> cards.sortBy { CardPreferenceManager.readCreationDate(requireContext(), it.ID) }
-            SortingType.ByAlterationDate -> cards.sortBy { CardPreferenceManager.readAlterationDate(requireContext(), it.ID) }
+    private fun deleteCardsDirectly(IDs: List<Int>) {
+        val context = requireContext().applicationContext
+        CardRepository.launchWrite {
+            CardRepository.removeMany(context, IDs)
         }
 
-        if (AppPreferenceManager.isCardsSortReverse(requireContext()))
-            cards.reverse()
+        val removedIDs = IDs.toSet()
+        sortedCards = sortedCards?.filter { it.ID !in removedIDs }
+        adapter.removeItems { it.ID in removedIDs }
     }
 
     private fun calcCardWidth(spanCount: Int): Double {
@@ -369,7 +396,7 @@ class HomeCardsFragment
         val intent = Intent(requireContext(), CreateExampleCardService::class.java)
         val resultReceiver = object : ResultReceiver(Handler(Looper.getMainLooper())) {
             override fun onReceiveResult(resultCode: Int, resultData: Bundle?) {
-                updateCardsAndNotifyAdapter()
+                refreshCards()
             }
         }
         CreateExampleCardService.enqueueWork(requireContext(), intent, resultReceiver)
@@ -9,18 +9,16 @@ import android.view.View
 import android.widget.Toast
 import androidx.constraintlayout.widget.ConstraintLayout
 import androidx.fragment.app.Fragment
-import androidx.lifecycle.lifecycleScope
 import androidx.preference.PreferenceManager
 import androidx.viewpager2.adapter.FragmentStateAdapter
 import androidx.viewpager2.widget.ViewPager2
 import androidx.viewpager2.widget.ViewPager2.OnPageChangeCallback
 import izzdarki.wallet.R
 import com.izzdarki.wallet.preferences.AppPreferenceManager
-import com.izzdarki.wallet.preferences.CardPreferenceManager
-import com.izzdarki.wallet.preferences.PasswordPreferenceManager
+import com.izzdarki.wallet.repository.CardRepository
+import com.izzdarki.wallet.repository.PasswordRepository
 import com.izzdarki.wallet.services.CreateExampleCardService
 import com.google.android.material.bottomnavigation.BottomNavigationView
-import kotlinx.coroutines.launch
 
 class HomeFragment : Fragment(R.layout.fragment_home) {
 
@@ -112,15 +110,11 @@ class HomeFragment : Fragment(R.layout.fragment_home) {
         else
             bottomNavigationView.visibility = View.VISIBLE
 
-        // preload encrypted preferences for better performance
+        // preload encrypted preferences in the background for better performance
         if (AppPreferenceManager.isAppFunctionCards(requireContext()))
-            lifecycleScope.launch {
-                CardPreferenceManager.getPreferences(requireContext())
-            }
+            CardRepository.preload(requireContext())
         if (AppPreferenceManager.isAppFunctionPasswords(requireContext()))
-            lifecycleScope.launch {
-                PasswordPreferenceManager.getPreferences(requireContext())
-            }
+            PasswordRepository.preload(requireContext())
     }
 
     override fun onResume() {
@@ -10,6 +10,9 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.widget.SearchView
 import androidx.core.view.doOnPreDraw
 import androidx.fragment.app.Fragment
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
 import androidx.recyclerview.selection.SelectionPredicates
 import androidx.recyclerview.selection.SelectionTracker
 import androidx.recyclerview.selection.StorageStrategy
@@ -19,11 +22,13 @@ import izzdarki.wallet.R
 import com.izzdarki.wallet.ui.passwords.EditPasswordActivity
 import com.izzdarki.wallet.preferences.AppPreferenceManager
 import com.izzdarki.wallet.preferences.AppPreferenceManager.SortingType
-import com.izzdarki.wallet.preferences.PasswordPreferenceManager
+import com.izzdarki.wallet.repository.PasswordRepository
 import com.izzdarki.wallet.utils.*
 import com.izzdarki.wallet.utils.Utility.attachDragAndDropToRecyclerView
 import com.izzdarki.wallet.utils.Utility.setPaddingBottom
 import com.google.android.material.floatingactionbutton.FloatingActionButton
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
 
 class HomePasswordsFragment()
     : Fragment(R.layout.fragment_home_passwords) {
@@ -39,10 +44,11 @@ class HomePasswordsFragment()
     private lateinit var plusButton: FloatingActionButton
 
     // variables
-    private val passwords: MutableList<CardOrPasswordPreviewData> = mutableListOf()
+    private lateinit var adapter: PasswordAdapter
     private lateinit var selectionTracker: SelectionTracker<Long>
-    private var init = false
     private var searchQuery: String = ""
+    private var sortedPasswords: List<CardOrPasswordPreviewData>? = null // all passwords sorted, but not filtered (null if it has to be sorted again)
+    private var updatePasswordsJob: Job? = null
     private lateinit var clearSelectionOnBackPressedCallback: OnBackPressedCallback
 
     // lifecycle
@@ -58,8 +64,6 @@ class HomePasswordsFragment()
         plusButton = view.findViewById(R.id.fragment_home_passwords_plus_button)
         recyclerView = view.findViewById(R.id.fragment_home_passwords_recycler_view)
 
-        updatePasswords()
-
         // back button
         clearSelectionOnBackPressedCallback = object : OnBackPressedCallback(enabled = false) {
             override fun handleOnBackPressed() {
@@ -77,7 +81,7 @@ class HomePasswordsFragment()
 
         // Passwords recycler view
         recyclerView.layoutManager = getPasswordGridLayoutManager()
-        val adapter = PasswordAdapter(passwords)
+        adapter = PasswordAdapter()
         recyclerView.adapter = adapter
         recyclerView.doOnPreDraw { // Add bottom padding
             it.setPaddingBottom(plusButton.height + 2 * plusButton.paddingBottom)
@@ -87,14 +91,16 @@ class HomePasswordsFragment()
         // Drag and drop
         attachDragAndDropToRecyclerView(
             recyclerView,
-            passwords
+            adapter::moveItem
         ) {
             AppPreferenceManager.setPasswordsSortingType(requireContext(), SortingType.CustomSorting) // change sorting type to custom
             AppPreferenceManager.setPasswordsSortReverse(requireContext(), false) // the current sorting is not reverse (even if it was reverse before moving an item)
-            PasswordPreferenceManager.writeCustomSortingNoGrouping(
-                requireContext(),
-                Utility.PreferenceArrayInt(passwords.map { it.ID }.iterator())
-            ) // save the custom sorting to preferences
+            val context = requireContext().applicationContext
+            val customSorting = Utility.PreferenceArrayInt(adapter.currentList.map { it.ID }.iterator())
+            PasswordRepository.launchWrite {
+                PasswordRepository.writeCustomSortingNoGrouping(context, customSorting)
+            } // save the custom sorting to preferences
+            sortedPasswords = if (searchQuery == "") adapter.currentList.toList() else null // only the filtered passwords have been sorted, sort again when filtering changes
             selectionTracker.clearSelection()
         }
 
@@ -102,7 +108,7 @@ class HomePasswordsFragment()
         selectionTracker = SelectionTracker.Builder(
             SELECTION_ID,
             recyclerView,
-            CardOrPasswordStableIDKeyProvider(passwords),
+            CardOrPasswordStableIDKeyProvider(adapter.currentList),
             MultiSelectItemDetailsLookup(recyclerView),
             StorageStrategy.createLongStorage()
         ).withSelectionPredicate(
@@ -118,6 +124,15 @@ class HomePasswordsFragment()
                 activity?.invalidateOptionsMenu() // reload action bar menu
             }
         })
+
+        // Passwords (loaded in the background, updated whenever the stored passwords change)
+        viewLifecycleOwner.lifecycleScope.launch {
+            viewLifecycleOwner.repeatOnLifecycle(Lifecycle.State.STARTED) {
+                PasswordRepository.items.collect {
+                    updatePasswordsAndNotifyAdapter()
+                }
+            }
+        }
     }
 
     override fun onPause() {
@@ -128,12 +143,7 @@ class HomePasswordsFragment()
 
     override fun onResume() {
         super.onResume()
-        if (init) {
-            // This code does not run if this is the first time that onResume is being called
-            updatePasswordsAndNotifyAdapter()
-        }
-        else
-            init = true // if this is the first run of onResume, don't update passwords
+        refreshPasswords()
         clearSelectionOnBackPressedCallback.isEnabled = (selectionTracker.selection.size() > 0)
     }
 
@@ -152,8 +162,7 @@ class HomePasswordsFragment()
         // Doesn't care about grouping by label at the moment
 
         AppPreferenceManager.setPasswordsSortingType(requireContext(), sortingType) // updates sorting type in preferences
-        sortPasswordsArray(sortingType)
-        recyclerView.adapter?.notifyDataSetChanged()
+        updatePasswordsAndNotifyAdapter()
     }
 
     private fun editPassword(passwordID: Int) {
@@ -183,8 +192,7 @@ class HomePasswordsFragment()
             .setMessage(R.string.delete_x_passwords_dialog_message)
             .setCancelable(true)
             .setPositiveButton(R.string.delete) { dialog, _ ->
-                for (passwordID in passwordIDs)
-                    deletePasswordDirectly(passwordID)
+                deletePasswordsDirectly(passwordIDs)
                 dialog.dismiss()
             }
             .setNegativeButton(android.R.string.cancel) { dialog: DialogInterface, _: Int ->
@@ -209,8 +217,10 @@ class HomePasswordsFragment()
         searchView.queryHint = getString(R.string.home_search_hint)
         searchView.setOnQueryTextListener(object : SearchView.OnQueryTextListener {
             override fun onQueryTextSubmit(query: String?): Boolean {
+                if (searchQuery == (query ?: ""))
+                    return true
                 searchQuery = query ?: ""
-                updatePasswordsAndNotifyAdapter() // updates passwords (also filters according to searchQuery)
+                filterPasswordsAndNotifyAdapter() // only filters, sorting hasn't changed
                 return true
             }
 
@@ -276,24 +286,47 @@ class HomePasswordsFragment()
 
 
     // helper
-    private fun updatePasswordsAndNotifyAdapter() {
-        if (updatePasswords())
-            recyclerView.adapter?.notifyDataSetChanged()
+    /**
+     * Reads the stored passwords in the background. [PasswordRepository.items] is collected, so the passwords list gets updated if anything has changed
+     */
+    private fun refreshPasswords() {
+        val context = requireContext().applicationContext
+        lifecycleScope.launch {
+            PasswordRepository.refresh(context)
+        }
     }
-    private fun updatePasswords(): Boolean {
-        val oldList = passwords.toList()
-        passwords.clear()
-        passwords.addAll(PasswordPreferenceManager.readAll(requireContext()))
-        sortPasswordsArray(AppPreferenceManager.getPasswordsSortingType(requireContext())) // sort the list according to saved sorting type
-
-        if (searchQuery != "") {
-            passwords.retainAll {
-                it.name.contains(searchQuery, ignoreCase = true)
-                        || it.labels.any { label -> label.contains(searchQuery, ignoreCase = true) }
-            }
+
+    /**
+     * Sorts and filters (according to [searchQuery]) [PasswordRepository.items] in the background and notifies the adapter if the passwords list has changed.
+     * A running update is cancelled, because it is outdated
+     */
+    private fun updatePasswordsAndNotifyAdapter() {
+        val allPasswords = PasswordRepository.items.value ?: return // not loaded yet (will be called again when loaded)
+        val context = requireContext().applicationContext
+        val sortingType = AppPreferenceManager.getPasswordsSortingType(context)
+        val reverse = AppPreferenceManager.isPasswordsSortReverse(context)
+        val query = searchQuery
+
+        updatePasswordsJob?.cancel()
+        updatePasswordsJob = lifecycleScope.launch {
+            val newPasswordsSorted = PasswordRepository.sort(context, allPasswords, sortingType, reverse)
+            sortedPasswords = newPasswordsSorted
+            adapter.submitList(PasswordRepository.filter(newPasswordsSorted, query))
         }
+    }
 
-        return oldList != passwords
+    /**
+     * Filters the already sorted passwords according to [searchQuery] in the background (without accessing storage) and notifies the adapter if the passwords list has changed.
+     * Sorts again if needed
+     */
+    private fun filterPasswordsAndNotifyAdapter() {
+        val currentSortedPasswords = sortedPasswords ?: return updatePasswordsAndNotifyAdapter()
+        val query = searchQuery
+
+        updatePasswordsJob?.cancel()
+        updatePasswordsJob = lifecycleScope.launch {
+            adapter.submitList(PasswordRepository.filter(currentSortedPasswords, query))
+        }
     }
 
     private fun getPasswordGridLayoutManager(): StaggeredGridLayoutManager {
@@ -304,35 +337,24 @@ class HomePasswordsFragment()
     }
 
     private fun deletePasswordDirectly(passwordID: Int) {
-        PasswordPreferenceManager.removeComplete(requireContext(), passwordID)
+        val context = requireContext().applicationContext
+        PasswordRepository.launchWrite {
+            PasswordRepository.removeComplete(context, passwordID)
+        }
 
-        val indexRemoved = passwords.indexOfFirst { it.ID == passwordID }
-        passwords.removeAt(indexRemoved)
-        recyclerView.adapter?.notifyItemRemoved(indexRemoved)
+        sortedPasswords = sortedPasswords?.filter { it.ID != passwordID }
+        adapter.removeItems { it.ID == passwordID }
     }
 
-    /**
-     * Helper for [sortPasswords] and used in [onResume]
-     */
-    private fun sortPasswordsArray(sortingType: SortingType) {
-        when (sortingType) {
-            SortingType.ByName -> passwords.sortBy { it.name }
-            SortingType.CustomSorting -> {
-                val savedCustomSortingIDs = PasswordPreferenceManager.readCustomSortingNoGrouping(requireContext())
-                passwords.sortBy { savedCustomSortingIDs.indexOf(it.ID) }
-            }
-            SortingType.ByCreationDate -> passwords.sortBy {
-                val x = PasswordPreferenceManager.readCreationDate(requireContext(), it.ID)
-                x
-            }
-            SortingType.ByAlterationDate -> passwords.sortBy {
-                val x = PasswordPreferenceManager.readAlterationDate(requireContext(), it.ID)
-                x
-            }
+    private fun deletePasswordsDirectly(passwordIDs: List<Int>) {
+        val context = requireContext().applicationContext
+        PasswordRepository.launchWrite {
+            PasswordRepository.removeMany(context, passwordIDs)
         }
 
-        if (AppPreferenceManager.isPasswordsSortReverse(requireContext()))
-            passwords.reverse()
+        val removedIDs = passwordIDs.toSet()
+        sortedPasswords = sortedPasswords?.filter { it.ID !in removedIDs }
+        adapter.removeItems { it.ID in removedIDs }
     }
 
 }
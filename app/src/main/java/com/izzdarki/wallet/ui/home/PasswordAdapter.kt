@@ -14,11 +14,10 @@ import com.izzdarki.wallet.utils.*
 import com.google.android.material.card.MaterialCardView
 import com.google.android.material.textview.MaterialTextView
 
-class PasswordAdapter(passwords: List<CardOrPasswordPreviewData>)
-    : RecyclerView.Adapter<PasswordAdapter.ViewHolder>()
+class PasswordAdapter
+    : CardOrPasswordAdapter<PasswordAdapter.ViewHolder>()
 {
 
-    val passwords: List<CardOrPasswordPreviewData> = passwords
     lateinit var selectionTracker: SelectionTracker<Long>
 
     inner class ViewHolder(itemView: View)
@@ -31,7 +30,7 @@ class PasswordAdapter(passwords: List<CardOrPasswordPreviewData>)
         init {
             cardView.setOnClickListener {
                 // show password on click
-                showPassword(passwords[adapterPosition].ID)
+                showPassword(getItem(adapterPosition).ID)
             }
         }
 
@@ -45,7 +44,7 @@ class PasswordAdapter(passwords: List<CardOrPasswordPreviewData>)
         override val itemDetails: ItemDetailsLookup.ItemDetails<Long>
             get() = object : ItemDetailsLookup.ItemDetails<Long>() {
                 override fun getPosition(): Int = adapterPosition
-                override fun getSelectionKey(): Long = passwords[adapterPosition].ID.toLong()
+                override fun getSelectionKey(): Long = getItem(adapterPosition).ID.toLong()
             }
     }
 
@@ -59,35 +58,19 @@ class PasswordAdapter(passwords: List<CardOrPasswordPreviewData>)
 
     override fun onBindViewHolder(holder: ViewHolder, pos: Int) {
         val context = holder.cardView.context
+        val password = getItem(pos)
 
-        holder.textView.text = passwords[pos].name
-        holder.cardView.setCardBackgroundColor(passwords[pos].color)
+        holder.textView.text = password.name
         holder.cardView.doOnPreDraw {
             holder.cardView.radius = (holder.cardView.width / 2 * CardAdapter.cardWidthToHeightRatio / ScrollAnimationImageView.widthToCornerRadiusRatio).toFloat()
         }
 
-        // outline if color is similar to background color
-        if (Utility.areColorsSimilar(
-                Utility.getDefaultBackgroundColor(context),
-                passwords[pos].color)
-        ) {
-            // draw outline
-            holder.cardView.strokeWidth = context.resources.getDimension(R.dimen.outline_for_similar_colors_stroke_width).toInt()
-            holder.cardView.strokeColor = context.resources.getColor(R.color.card_view_outline_color)
-        } else {
-            // remove outline
-            holder.cardView.strokeWidth = 0
-        }
-
-        // text color
-        if (Utility.isColorDark(passwords[pos].color))
-            holder.textView.setTextColor(context.resources.getColor(R.color.on_dark_text_color))
-        else
-            holder.textView.setTextColor(context.resources.getColor(R.color.on_light_text_color))
+        // colors and outline (outline if color is similar to background color)
+        val attributes = CardViewRenderAttributes.get(context, password.color)
+        attributes.applyTo(holder.cardView)
+        holder.textView.setTextColor(attributes.textColor)
 
-        if (selectionTracker.isSelected(passwords[pos].ID.toLong()))
-            AppUtility.makeCardViewSelected(holder.cardView) // if not selected, outline has already been drawn (or not, if it has no outline)
+        if (selectionTracker.isSelected(password.ID.toLong()))
+            AppUtility.makeCardViewSelected(holder.cardView, attributes)
     }
-
-    override fun getItemCount(): Int = passwords.size
 }
\ No newline at end of file
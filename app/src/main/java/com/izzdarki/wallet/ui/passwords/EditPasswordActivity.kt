@@ -16,6 +16,7 @@ import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.widget.LinearLayoutCompat
 import androidx.core.content.res.ResourcesCompat
 import androidx.fragment.app.DialogFragment
+import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.izzdarki.colorpickerview.dialog.ColorPickerDialogFragment
@@ -23,7 +24,8 @@ import izzdarki.wallet.R
 import com.izzdarki.wallet.ui.MainActivity
 import com.izzdarki.wallet.ui.adapters.EditPropertyAdapter
 import com.izzdarki.wallet.preferences.AppPreferenceManager
-import com.izzdarki.wallet.preferences.PasswordPreferenceManager
+import com.izzdarki.wallet.preferences.PasswordData
+import com.izzdarki.wallet.repository.PasswordRepository
 import com.izzdarki.wallet.utils.ItemProperty
 import com.izzdarki.wallet.utils.Utility
 import com.izzdarki.wallet.utils.Utility.IDGenerator
@@ -35,6 +37,8 @@ import com.google.android.material.appbar.MaterialToolbar
 import com.google.android.material.button.MaterialButton
 import com.google.android.material.textfield.TextInputEditText
 import com.google.android.material.textfield.TextInputLayout
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
 import java.util.*
 
 class EditPasswordActivity
@@ -77,6 +81,9 @@ class EditPasswordActivity
     // region variables
     private var hasBeenModified = false
     private var isCreateNewPasswordIntent = false
+    private var storedPassword: PasswordData? = null // password as stored when the activity was started (null when creating a new password)
+    private var initialized = false // true as soon as the password has been loaded and the views have been set up
+    private var saveJob: Job? = null
     // endregion
 
 
@@ -93,27 +100,40 @@ class EditPasswordActivity
         passwordColorButton = findViewById(R.id.edit_password_color_chip)
         propertiesRecyclerView = findViewById(R.id.edit_password_recycler_view)
         addPasswordPropertyButton = findViewById(R.id.edit_password_add_password_property_button)
-        editLabelsComponent = EditLabelsComponent(
-            findViewById(R.id.edit_password_labels_chip_group),
-            findViewById(R.id.edit_password_labels_add_chip),
-            allLabels = PasswordPreferenceManager.collectAllLabelsSorted(this)
-        )
 
         // toolbar
         val toolbar: MaterialToolbar = findViewById(R.id.toolbar)
         setSupportActionBar(toolbar)
         supportActionBar?.setDisplayHomeAsUpEnabled(true)
 
-        // init
+        // init (in the background)
         isCreateNewPasswordIntent = intent.getBooleanExtra(EXTRA_CREATE_NEW_PASSWORD, false)
-        if (isCreateNewPasswordIntent) {
-            initNewPassword()
+        if (isCreateNewPasswordIntent)
             supportActionBar?.setTitle(R.string.new_password)
-        }
-        else {
-            initFromPreferences()
+        else
             supportActionBar?.setTitle(R.string.edit_password)
+
+        lifecycleScope.launch {
+            val allLabels = PasswordRepository.collectAllLabelsSorted(this@EditPasswordActivity)
+            if (isCreateNewPasswordIntent)
+                initNewPassword()
+            else
+                initFromPreferences()
+            initViews(allLabels)
         }
+    }
+
+    /**
+     * Sets up all views, after the password has been loaded
+     */
+    private fun initViews(allLabels: SortedSet<String>) {
+        editLabelsComponent = EditLabelsComponent(
+            findViewById(R.id.edit_password_labels_chip_group),
+            findViewById(R.id.edit_password_labels_add_chip),
+            allLabels = allLabels
+        )
+        if (passwordProperties.isEmpty())
+            passwordInputEditText.imeOptions =  EditorInfo.IME_ACTION_DONE
 
         // name input
         nameInputEditText.setText(passwordName)
@@ -169,11 +189,13 @@ class EditPasswordActivity
             onPropertyRemoval()
         }
         propertiesRecyclerView.adapter = adapter
+
+        initialized = true
     }
 
     override fun dispatchTouchEvent(ev: MotionEvent?): Boolean {
         // Every touch event goes through this function
-        return if (editLabelsComponent.dispatchTouchEvent(ev))
+        return if (::editLabelsComponent.isInitialized && editLabelsComponent.dispatchTouchEvent(ev))
             true
         else
             super.dispatchTouchEvent(ev)
@@ -181,22 +203,21 @@ class EditPasswordActivity
 
 
     // region main functions
-    private fun initFromPreferences() {
+    private suspend fun initFromPreferences() {
         ID = intent.getIntExtra(EXTRA_PASSWORD_ID, -1)
         check(ID != -1) { "PasswordActivity: missing intent extra: ID" }
-        passwordName = PasswordPreferenceManager.readName(this, ID)
-        passwordValue = PasswordPreferenceManager.readPasswordValue(this, ID)
-        labels = PasswordPreferenceManager.readLabels(this, ID)
-        passwordColor = PasswordPreferenceManager.readColor(this, ID)
-        creationDate = PasswordPreferenceManager.readCreationDate(this, ID)
-        passwordAlterationDate = PasswordPreferenceManager.readAlterationDate(this, ID)
-        passwordProperties = PasswordPreferenceManager.readProperties(this, ID)
-
-        if (passwordProperties.isEmpty())
-            passwordInputEditText.imeOptions =  EditorInfo.IME_ACTION_DONE
+        val password = PasswordRepository.readComplete(this, ID)
+        storedPassword = password
+        passwordName = password.name
+        passwordValue = password.passwordValue
+        labels = password.labels
+        passwordColor = password.color
+        creationDate = password.creationDate
+        passwordAlterationDate = password.alterationDate
+        passwordProperties = password.properties.map { it.copy() }.toMutableList() // storedPassword must not be modified
     }
 
-    private fun initNewPassword() {
+    private suspend fun initNewPassword() {
         ID = generateNewPasswordID()
         passwordName = getString(R.string.new_password)
         passwordValue = "" // init as empty
@@ -241,16 +262,19 @@ class EditPasswordActivity
     }
 
     private fun saveAndShowPassword() {
-        val propertyIDs: List<Int> = PasswordPreferenceManager.readPropertyIds(this, ID)
+        if (!initialized || saveJob != null)
+            return // not loaded yet or already saving
 
         // Check if the password was modified (hasBeenModified will be set true)
-        if (!readAndCheckAllInput(propertyIDs)) {
+        if (!readAndCheckAllInput()) {
             // When there are errors, saving will be aborted and Toast will be shown to user
             Toast.makeText(this, R.string.there_are_still_errors, Toast.LENGTH_SHORT).show()
             return
         }
-        writeToPreferences()
-        finishAndShowPassword()
+        saveJob = lifecycleScope.launch {
+            writeToPreferences()
+            finishAndShowPassword()
+        }
     }
 
     /**
@@ -260,9 +284,14 @@ class EditPasswordActivity
      * @return true if the activity got finished, false otherwise
      */
     private fun requestCancel(): Boolean {
-        readAndCheckAllInput(
-            PasswordPreferenceManager.readPropertyIds(this, ID)
-        ) // Read input to figure out if password has been modified (member variable hasBeenModified)
+        if (!initialized) {
+            finish() // nothing loaded, so nothing can have been modified
+            return true
+        }
+        if (saveJob != null)
+            return false // finishes when saved
+
+        readAndCheckAllInput() // Read input to figure out if password has been modified (member variable hasBeenModified)
 
         if (AppPreferenceManager.isBackConfirmNewCardOrPassword(this) && isCreateNewPasswordIntent
             || AppPreferenceManager.isBackConfirmEditCardOrPassword(this) && !isCreateNewPasswordIntent && hasBeenModified) {
@@ -299,7 +328,10 @@ class EditPasswordActivity
     }
 
     private fun deleteAndReturnToHome() {
-        PasswordPreferenceManager.removeComplete(this, ID)
+        val context = applicationContext
+        PasswordRepository.launchWrite {
+            PasswordRepository.removeComplete(context, ID) // completes after finish
+        }
         finishAndReturnToHome()
     }
     // endregion
@@ -317,6 +349,8 @@ class EditPasswordActivity
             return true
         }
         else if (item.itemId == R.id.edit_action_bar_delete) {
+            if (!initialized || saveJob != null)
+                return true
             AlertDialog.Builder(this)
                 .setTitle(R.string.delete_password)
                 .setMessage(R.string.delete_password_dialog_message)
@@ -393,15 +427,15 @@ class EditPasswordActivity
 
     // region read and check input fields
     /**
-     * Reads all the user input and checks if the password has been modified ([.hasBeenModified] will be set true)
-     * @param propertyIDs List of all property Ids
+     * Reads all the user input and checks if the password has been modified ([.hasBeenModified] will be set true).
+     * Compares with [storedPassword], so no storage access is needed
      * @return true if there are no errors, false otherwise
      */
-    private fun readAndCheckAllInput(propertyIDs: List<Int>): Boolean {
+    private fun readAndCheckAllInput(): Boolean {
         readAndCheckPasswordValue()
         readAndCheckLabels()
         readAndCheckAllProperties()
-        checkIfPropertyWasRemoved(propertyIDs)
+        checkIfPropertyWasRemoved()
         return readAndCheckName()
     }
 
@@ -414,19 +448,19 @@ class EditPasswordActivity
         passwordName = nameInputEditText.text.toString().trim()
         if (nameInputLayout.error != null)
             return false
-        if (passwordName != PasswordPreferenceManager.readName(this, ID))
+        if (passwordName != (storedPassword?.name ?: ""))
             hasBeenModified = true
         return true
     }
 
     private fun readAndCheckPasswordValue() {
         passwordValue = passwordInputEditText.text.toString().trim()
-        if (passwordValue != PasswordPreferenceManager.readPasswordValue(this, ID))
+        if (passwordValue != (storedPassword?.passwordValue ?: ""))
             hasBeenModified = true
     }
 
     private fun readAndCheckLabels() {
-        val oldLabels = PasswordPreferenceManager.readLabels(this, ID)
+        val oldLabels = storedPassword?.labels ?: PreferenceArrayString()
         labels = PreferenceArrayString(editLabelsComponent.currentLabels.sorted().iterator())
         if (!oldLabels.containsAll(labels) || !labels.containsAll(oldLabels))
             hasBeenModified = true
@@ -442,11 +476,10 @@ class EditPasswordActivity
             holder?.readValue()
 
             val property = passwordProperties[position]
-            if (property.name != PasswordPreferenceManager.readPropertyName(this, ID, property.propertyID))
-                hasBeenModified = true
-            if (property.value != PasswordPreferenceManager.readPropertyValue(this, ID, property.propertyID))
+            val storedProperty = storedPassword?.properties?.firstOrNull { it.propertyID == property.propertyID }
+            if (storedProperty == null) // newly added property
                 hasBeenModified = true
-            if (property.secret != PasswordPreferenceManager.readPropertySecret(this, ID, property.propertyID))
+            else if (property.name != storedProperty.name || property.value != storedProperty.value || property.secret != storedProperty.secret)
                 hasBeenModified = true
         }
     }
@@ -454,11 +487,10 @@ class EditPasswordActivity
     /**
      * Checks if a property got removed.
      * Then sets [.hasBeenModified] to true
-     * @param propertyIDs The list of all property IDs of this password currently in preferences
      */
-    private fun checkIfPropertyWasRemoved(propertyIDs: List<Int>) {
-        for (propertyID in propertyIDs) {
-            if (!doesPropertyIDExist(propertyID)) { // if propertyID doesn't exist anymore after editing
+    private fun checkIfPropertyWasRemoved() {
+        for (storedProperty in storedPassword?.properties ?: listOf()) {
+            if (!doesPropertyIDExist(storedProperty.propertyID)) { // if propertyID doesn't exist anymore after editing
                 hasBeenModified = true
                 return
             }
@@ -490,9 +522,9 @@ class EditPasswordActivity
         startActivity(intent)
     }
 
-    private fun writeToPreferences() {
-        PasswordPreferenceManager.writeComplete(
-            this,
+    private suspend fun writeToPreferences() {
+        PasswordRepository.writeComplete(
+            applicationContext,
             ID,
             passwordName,
             passwordValue,
@@ -527,8 +559,8 @@ class EditPasswordActivity
         return false
     }
 
-    private fun generateNewPasswordID(): Int {
-        val passwordIDs = PasswordPreferenceManager.readAllIDs(this) // this is fine because there can't be an unsaved password with an unsaved ID at this moment
+    private suspend fun generateNewPasswordID(): Int {
+        val passwordIDs = PasswordRepository.readAllIDs(this) // this is fine because there can't be an unsaved password with an unsaved ID at this moment
         return IDGenerator(passwordIDs).generateID()
     }
     // endregion
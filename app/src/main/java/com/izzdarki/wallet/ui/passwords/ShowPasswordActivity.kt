@@ -9,16 +9,18 @@ import android.view.MenuItem
 import android.view.View
 import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
+import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import izzdarki.wallet.R
 import com.izzdarki.wallet.ui.adapters.ShowPropertyAdapter
-import com.izzdarki.wallet.preferences.PasswordPreferenceManager
+import com.izzdarki.wallet.repository.PasswordRepository
 import com.izzdarki.wallet.utils.ItemProperty
 import com.google.android.material.appbar.MaterialToolbar
 import com.google.android.material.chip.Chip
 import com.google.android.material.chip.ChipGroup
 import com.google.android.material.divider.MaterialDivider
+import kotlinx.coroutines.launch
 
 class ShowPasswordActivity : AppCompatActivity() {
 
@@ -54,53 +56,28 @@ class ShowPasswordActivity : AppCompatActivity() {
         passwordLabelsChipGroup = findViewById(R.id.show_password_labels_chip_group)
         passwordLabelsDivider = findViewById(R.id.labels_divider)
 
-        // init
-        initFromPreferences()
-
         // toolbar
         val toolbar = findViewById<MaterialToolbar>(R.id.toolbar)
         setSupportActionBar(toolbar)
         supportActionBar!!.setDisplayHomeAsUpEnabled(true)
-        setActionBarName()
 
         // password properties recycler view
         passwordPropertiesView.layoutManager = LinearLayoutManager(this)
-        passwordPropertiesView.adapter = createShowPropertyAdapter()
 
-        // password labels
-        if (passwordLabels.isEmpty()) {
-            passwordLabelsDivider.visibility = View.GONE
-            passwordLabelsChipGroup.visibility = View.GONE
-        } else {
-            passwordLabelsDivider.visibility = View.VISIBLE
-            passwordLabelsChipGroup.visibility = View.VISIBLE
-            addLabelsToChipGroup()
+        // init (in the background)
+        initFromPreferences {
+            showPassword()
         }
     }
 
     override fun onNewIntent(intent: Intent) {
         super.onNewIntent(intent)
 
-        // re-init and notify adapter
-        initFromPreferences()
-        passwordPropertiesView.adapter = createShowPropertyAdapter() // because passwordProperties has been reassigned, a new adapter, that holds the new passwordProperties is needed
-
-        // hide/show labels chip group
-        if (passwordLabels.isEmpty()) {
-            passwordLabelsDivider.visibility = View.GONE
-            passwordLabelsChipGroup.visibility = View.GONE
-        } else {
-            passwordLabelsDivider.visibility = View.VISIBLE
-            passwordLabelsChipGroup.visibility = View.VISIBLE
-            passwordLabelsChipGroup.removeAllViews()
-            addLabelsToChipGroup()
+        // re-init
+        initFromPreferences {
+            showPassword()
+            passwordPropertiesView.scrollToPosition(0) // reset scroll
         }
-
-        // toolbar
-        setActionBarName()
-
-        // reset scroll
-        passwordPropertiesView.scrollToPosition(0)
     }
 
     override fun onPause() {
@@ -117,17 +94,44 @@ class ShowPasswordActivity : AppCompatActivity() {
         startActivity(intent)
     }
 
-    private fun initFromPreferences() {
-        passwordProperties.clear()
-
+    /**
+     * Reads the password in the background and calls [onInitialized] afterwards (on the main thread)
+     */
+    private fun initFromPreferences(onInitialized: () -> Unit) {
         ID = intent.getIntExtra(EXTRA_PASSWORD_ID, -1)
         check(ID != -1) { "ShowPasswordActivity: missing intent extra: ID" }
 
-        passwordName = PasswordPreferenceManager.readName(this, ID)
-        passwordValue = PasswordPreferenceManager.readPasswordValue(this, ID)
-        passwordProperties = PasswordPreferenceManager.readProperties(this, ID)
-        passwordLabels = PasswordPreferenceManager.readLabels(this, ID)
+        lifecycleScope.launch {
+            val password = PasswordRepository.readComplete(this@ShowPasswordActivity, ID)
+            passwordName = password.name
+            passwordValue = password.passwordValue
+            passwordProperties = password.properties
+            passwordLabels = password.labels
+            addPasswordValueToProperties()
+            onInitialized()
+        }
+    }
+
+    /**
+     * Updates all views after [initFromPreferences]
+     */
+    private fun showPassword() {
+        setActionBarName()
+        passwordPropertiesView.adapter = createShowPropertyAdapter() // because passwordProperties has been reassigned, a new adapter, that holds the new passwordProperties is needed
+
+        // hide/show labels chip group
+        if (passwordLabels.isEmpty()) {
+            passwordLabelsDivider.visibility = View.GONE
+            passwordLabelsChipGroup.visibility = View.GONE
+        } else {
+            passwordLabelsDivider.visibility = View.VISIBLE
+            passwordLabelsChipGroup.visibility = View.VISIBLE
+            passwordLabelsChipGroup.removeAllViews()
+            addLabelsToChipGroup()
+        }
+    }
 
+    private fun addPasswordValueToProperties() {
         if (passwordValue != "") {
             // Add password value to password properties (will also be part of recycler view)
             passwordProperties.add(
@@ -163,7 +167,10 @@ class ShowPasswordActivity : AppCompatActivity() {
                     .setMessage(R.string.delete_password_dialog_message)
                     .setCancelable(true)
                     .setPositiveButton(R.string.delete) { dialog, _ ->
-                        PasswordPreferenceManager.removeComplete(this, ID)
+                        val context = applicationContext
+                        PasswordRepository.launchWrite {
+                            PasswordRepository.removeComplete(context, ID) // completes after finish
+                        }
                         finish()
                         dialog.dismiss()
                     }
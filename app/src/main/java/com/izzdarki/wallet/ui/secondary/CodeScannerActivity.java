@@ -3,26 +3,45 @@ package com.izzdarki.wallet.ui.secondary;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.os.Build;
 import android.os.Bundle;
+import android.util.Size;
 
 import androidx.activity.result.ActivityResultCallback;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
 
 import izzdarki.wallet.R;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.zxing.Result;
-import me.dm7.barcodescanner.zxing.ZXingScannerView;
+import com.izzdarki.wallet.utils.CodeScanAnalyzer;
 
-public class CodeScannerActivity extends AppCompatActivity implements ZXingScannerView.ResultHandler {
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scans a code with the back camera (see {@link CodeScanAnalyzer}) and returns its format and text
+ */
+public class CodeScannerActivity extends AppCompatActivity {
     static public final int RESULT_PERMISSION_DENIED = RESULT_FIRST_USER;
     static public final String EXTRA_RESULT_CODE_TYPE = "com.izzdarki.code_scanner.code_type"; // Serializable extra
     static public final String EXTRA_RESULT_CODE = "com.izzdarki.code_scanner.code"; // String extra
 
-    private ZXingScannerView scannerView;
+    static private final Size ANALYSIS_RESOLUTION = new Size(1280, 720); // enough for dense and worn codes, landscape
+
+    private PreviewView previewView;
+    private ExecutorService analyzerExecutor; // frames are analyzed one after another, older frames are dropped
+    private CodeScanAnalyzer codeScanAnalyzer;
 
     // permission
     private ActivityResultLauncher<String> requestCameraPermissionLauncher =
@@ -30,7 +49,7 @@ public class CodeScannerActivity extends AppCompatActivity implements ZXingScann
                 @Override
                 public void onActivityResult(Boolean isGranted) {
                     if (isGranted) {
-                        scannerView.startCamera();
+                        startCamera();
                     } else {
                         setResult(RESULT_PERMISSION_DENIED);
                         finish();
@@ -42,25 +61,28 @@ public class CodeScannerActivity extends AppCompatActivity implements ZXingScann
     @Override
     public void onCreate(Bundle state) {
         super.onCreate(state);
-        scannerView = new ZXingScannerView(this);
-        setContentView(scannerView);
+        setContentView(R.layout.activity_code_scanner);
+        previewView = findViewById(R.id.code_scanner_preview_view);
+        analyzerExecutor = Executors.newSingleThreadExecutor();
+        codeScanAnalyzer = new CodeScanAnalyzer(result -> runOnUiThread(() -> handleResult(result)));
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        scannerView.setResultHandler(this);
-        startCameraWithPermission();
+        startCameraWithPermission(); // the camera is stopped automatically (bound to the lifecycle)
     }
 
     @Override
-    public void onPause() {
-        super.onPause();
-        scannerView.stopCamera();
+    protected void onDestroy() {
+        super.onDestroy();
+        analyzerExecutor.shutdown();
+        codeScanAnalyzer.close();
     }
 
-    @Override
     public void handleResult(Result rawResult) {
+        if (isFinishing())
+            return;
         Intent intent = new Intent();
         intent.putExtra(EXTRA_RESULT_CODE_TYPE, rawResult.getBarcodeFormat());
         intent.putExtra(EXTRA_RESULT_CODE, rawResult.getText());
@@ -68,10 +90,54 @@ public class CodeScannerActivity extends AppCompatActivity implements ZXingScann
         finish();
     }
 
+    /**
+     * Binds preview and analysis of the back camera to the lifecycle of this activity
+     */
+    protected void startCamera() {
+        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this);
+        cameraProviderFuture.addListener(() -> {
+            if (isFinishing())
+                return;
+            ProcessCameraProvider cameraProvider;
+            try {
+                cameraProvider = cameraProviderFuture.get();
+            } catch (ExecutionException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            Preview preview = new Preview.Builder().build();
+            preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+            ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .setTargetResolution(getAnalysisResolution())
+                    .build();
+            imageAnalysis.setAnalyzer(analyzerExecutor, codeScanAnalyzer);
+
+            try {
+                cameraProvider.unbindAll();
+                cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_BACK_CAMERA, preview, imageAnalysis);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // no back camera or the activity is destroyed already
+                setResult(RESULT_CANCELED);
+                finish();
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    /**
+     * @return {@link #ANALYSIS_RESOLUTION} in the current orientation (as expected by CameraX)
+     */
+    private Size getAnalysisResolution() {
+        if (getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT)
+            return new Size(ANALYSIS_RESOLUTION.getHeight(), ANALYSIS_RESOLUTION.getWidth());
+        return ANALYSIS_RESOLUTION;
+    }
+
     protected void startCameraWithPermission() {
         //https://developer.android.com/training/permissions/requesting
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED)
-            scannerView.startCamera();
+            startCamera();
         else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && shouldShowRequestPermissionRationale(Manifest.permission.CAMERA)) {
             AlertDialog.Builder builder = new AlertDialog.Builder(this);
             builder.setTitle(R.string.camera_permission_dialogue_title)
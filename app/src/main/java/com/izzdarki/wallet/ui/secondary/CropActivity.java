@@ -1,6 +1,8 @@
 package com.izzdarki.wallet.ui.secondary;
 
+import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.net.Uri;
@@ -14,15 +16,31 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.izzdarki.wallet.preferences.AppPreferenceManager;
 import izzdarki.wallet.R;
 import com.izzdarki.wallet.ui.home.CardAdapter;
+import com.izzdarki.wallet.utils.CardImageCropper;
+import com.izzdarki.wallet.utils.CardImageEncoder;
 import com.google.android.material.appbar.MaterialToolbar;
 
 import com.theartofdev.edmodo.cropper.CropImageView; // Apache License 2.0 http://www.apache.org/licenses/LICENSE-2.0.txt
 
-
-
-public class CropActivity extends AppCompatActivity implements CropImageView.OnCropImageCompleteListener {
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Crops the image at EXTRA_IMAGE_URI, scales it down to fit in EXTRA_MAX_SHORT_SIDE x EXTRA_MAX_LONG_SIDE (in any orientation, optional)
+ * and writes it encrypted to EXTRA_OUTPUT_FILE_PATH (see CardImageEncoder) in EXTRA_OUTPUT_FORMAT with EXTRA_OUTPUT_QUALITY (optional).
+ * Only the cropped region is decoded within a fixed memory budget (see CardImageCropper). The image at EXTRA_IMAGE_URI is not changed
+ */
+public class CropActivity extends AppCompatActivity {
     static public final String EXTRA_IMAGE_URI = "com.izzdarki.wallet.crop_activity.extra_image_uri"; // Parcelable
-    static public final String EXTRA_IMAGE_FILE_PATH = "com.izzdarki.wallet.crop_activity.extra_image_file_path"; // String
+    static public final String EXTRA_OUTPUT_FILE_PATH = "com.izzdarki.wallet.crop_activity.extra_output_file_path"; // String
+    static public final String EXTRA_MAX_SHORT_SIDE = "com.izzdarki.wallet.crop_activity.extra_max_short_side"; // int
+    static public final String EXTRA_MAX_LONG_SIDE = "com.izzdarki.wallet.crop_activity.extra_max_long_side"; // int
+    static public final String EXTRA_OUTPUT_FORMAT = "com.izzdarki.wallet.crop_activity.extra_output_format"; // String (name of CardImageEncoder.Format)
+    static public final String EXTRA_OUTPUT_QUALITY = "com.izzdarki.wallet.crop_activity.extra_output_quality"; // int
     static public final String EXTRA_RESULT_ERROR_EXCEPTION = "com.izzdarki.wallet.crop_activity.extra_result_error_exception"; // Serializable
     static public final int RESULT_ERROR = RESULT_FIRST_USER + 0;
 
@@ -31,8 +49,15 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
 
     // variables
     protected Uri imageUri;
+    protected File outputFile;
+    protected int maxShortSide;
+    protected int maxLongSide;
+    protected CardImageEncoder.Format outputFormat;
+    protected int outputQuality;
     protected boolean ratioLocked;
     protected int longSide;
+    protected boolean cropping = false;
+    protected final ExecutorService cropExecutor = Executors.newSingleThreadExecutor(); // a started crop still completes after onDestroy
 
     // lifecycle
     @Override
@@ -42,7 +67,14 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
 
         // init
         imageUri = getIntent().getParcelableExtra(EXTRA_IMAGE_URI);
-        String imageFilePath = getIntent().getStringExtra(EXTRA_IMAGE_FILE_PATH);
+        String outputFilePath = getIntent().getStringExtra(EXTRA_OUTPUT_FILE_PATH);
+        if (imageUri == null || outputFilePath == null) throw new AssertionError();
+        outputFile = new File(outputFilePath);
+        maxShortSide = getIntent().getIntExtra(EXTRA_MAX_SHORT_SIDE, -1);
+        maxLongSide = getIntent().getIntExtra(EXTRA_MAX_LONG_SIDE, -1);
+        String outputFormatName = getIntent().getStringExtra(EXTRA_OUTPUT_FORMAT);
+        outputFormat = outputFormatName != null ? CardImageEncoder.Format.valueOf(outputFormatName) : CardImageEncoder.DEFAULT_FORMAT;
+        outputQuality = getIntent().getIntExtra(EXTRA_OUTPUT_QUALITY, CardImageEncoder.DEFAULT_QUALITY);
 
         // hooks
         cropImageView = findViewById(R.id.crop_crop_image_view);
@@ -54,7 +86,6 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
 
         // crop image view
         cropImageView.setImageUriAsync(imageUri);
-        cropImageView.setOnCropImageCompleteListener(this);
         cropImageView.setGuidelines(CropImageView.Guidelines.ON_TOUCH);
         cropImageView.setAutoZoomEnabled(false);
         cropImageView.setShowProgressBar(false);
@@ -62,7 +93,11 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
 
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(imageFilePath, options);
+        try (InputStream inputStream = getContentResolver().openInputStream(imageUri)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
+            // cropImageView reports the error
+        }
         int width = options.outWidth;
         int height = options.outHeight;
         longSide = Math.max(width, height);
@@ -70,6 +105,12 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
         setCropRectFullSize();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        cropExecutor.shutdown();
+    }
+
     // handling action bar menu
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -81,7 +122,10 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
     public boolean onOptionsItemSelected(MenuItem item) {
         int itemId = item.getItemId();
         if (itemId == R.id.crop_image_menu_crop) {
-            cropImageView.saveCroppedImageAsync(imageUri);
+            if (!cropping) {
+                cropping = true;
+                cropImage();
+            }
             return true;
         }
         else if (itemId == R.id.crop_image_menu_rotate_right) {
@@ -115,18 +159,6 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
         requestCancel();
     }
 
-    @Override
-    public void onCropImageComplete(CropImageView view, CropImageView.CropResult result) {
-        if (result.isSuccessful())
-            setResult(RESULT_OK);
-        else {
-            Intent intent = new Intent();
-            intent.putExtra(EXTRA_RESULT_ERROR_EXCEPTION, result.getError());
-            setResult(RESULT_ERROR);
-        }
-        finish();
-    }
-
     // helpers
 
     /**
@@ -153,6 +185,48 @@ public class CropActivity extends AppCompatActivity implements CropImageView.OnC
         }
     }
 
+    /**
+     * Crops, scales, compresses and encrypts the image in one pass on cropExecutor.
+     * Every failure finishes the activity with RESULT_ERROR (see finishWithError)
+     */
+    protected void cropImage() {
+        Rect cropRect = cropImageView.getCropRect();
+        if (cropRect == null) { // image not loaded yet
+            cropping = false;
+            return;
+        }
+        int rotation = cropImageView.getRotatedDegrees();
+        boolean flipHorizontally = cropImageView.isFlippedHorizontally();
+        boolean flipVertically = cropImageView.isFlippedVertically();
+        Context context = getApplicationContext();
+
+        cropExecutor.execute(() -> {
+            try {
+                Bitmap bitmap = CardImageCropper.crop(context, imageUri, cropRect, rotation, flipHorizontally, flipVertically, maxShortSide, maxLongSide);
+                try {
+                    CardImageEncoder.writeEncrypted(context, bitmap, outputFile, outputFormat, outputQuality);
+                } finally {
+                    bitmap.recycle();
+                }
+                runOnUiThread(() -> {
+                    setResult(RESULT_OK);
+                    finish();
+                });
+            } catch (IOException | GeneralSecurityException | RuntimeException e) { // RuntimeException: for example a broken image or an unavailable uri
+                runOnUiThread(() -> finishWithError(e));
+            } catch (OutOfMemoryError e) {
+                runOnUiThread(() -> finishWithError(new IOException(getString(R.string.file_too_big), e)));
+            }
+        });
+    }
+
+    protected void finishWithError(Exception error) {
+        Intent intent = new Intent();
+        intent.putExtra(EXTRA_RESULT_ERROR_EXCEPTION, error);
+        setResult(RESULT_ERROR, intent);
+        finish();
+    }
+
     protected void cancelDirectly() {
         setResult(RESULT_CANCELED);
         finish();
@@ -1,21 +1,10 @@
 package com.izzdarki.wallet.ui.secondary;
 
 import androidx.annotation.Nullable;
-import androidx.core.content.FileProvider;
 
 import android.content.ActivityNotFoundException;
 import android.content.Intent;
-import android.net.Uri;
 import android.os.Bundle;
-import android.webkit.MimeTypeMap;
-
-import com.izzdarki.wallet.utils.Utility;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 /**
  * <h><b>Intent extras (parameters)</b></h>
@@ -31,9 +20,6 @@ public class GetContentImageActivity extends GetImageActivity {
     public static final String EXTRA_TYPE = "com.izzdarki.get_content.extra_type";
 
     protected String type;
-    protected String selectedFileTypeExtension;
-    protected Uri selectedFileUri;
-    protected InputStream selectedFileStream = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -50,12 +36,7 @@ public class GetContentImageActivity extends GetImageActivity {
         if (requestCode == REQUEST_GET_CONTENT) {
             switch (resultCode) {
                 case RESULT_OK:
-                    selectedFileUri = data.getData();
-                    String selectedFileType = getContentResolver().getType(selectedFileUri);
-                    selectedFileTypeExtension = "." + MimeTypeMap.getSingleton().getExtensionFromMimeType(selectedFileType);
-
-                    saveContent();
-                    scaleImageFile();
+                    sourceUri = data.getData(); // cropped directly, without copying it first
                     cropImageAndFinish();
                     break;
 
@@ -80,47 +61,4 @@ public class GetContentImageActivity extends GetImageActivity {
         }
     }
 
-    protected void saveContent() {
-        //Utility.Timer timer = new Utility.Timer("GetImageContent: save content");
-        File folder = new File(folderPath);
-        if (!folder.exists())
-            folder.mkdirs();
-
-        imageFile = new File(folderPath, fileName + selectedFileTypeExtension);
-        imageUri = FileProvider.getUriForFile(this, fileProviderAuthority, imageFile);
-
-        copyFile();
-        //timer.end();
-    }
-
-    protected void copyFile() {
-        //Utility.Timer timer = new Utility.Timer("GetImageContent: copy file");
-
-        OutputStream savedFileStream;
-        try {
-            savedFileStream = getContentResolver().openOutputStream(imageUri);
-            //Utility.Timer timerOutStr = new Utility.Timer("GetImageContent: copy file: open output stream");
-            selectedFileStream = getContentResolver().openInputStream(selectedFileUri);
-            //timerOutStr.end();
-        } catch (FileNotFoundException e) {
-            /*
-            if (BuildConfig.DEBUG)
-                Log.e("GetImageContent", "couldn't find files to open streams, " + e);
-             */
-            throw new AssertionError(e);
-        }
-
-        try {
-            Utility.copyFile(selectedFileStream, savedFileStream);
-        } catch (IOException e) {
-            /*
-            if (BuildConfig.DEBUG)
-                Log.e("GetImageContent", "file couldn't be copied, " + e);
-             */
-            throw new AssertionError(e);
-        }
-        //timer.end();
-    }
-
 }
-
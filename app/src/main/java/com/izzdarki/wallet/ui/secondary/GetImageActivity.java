@@ -1,17 +1,16 @@
 package com.izzdarki.wallet.ui.secondary;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
 
 import izzdarki.wallet.R;
-import com.izzdarki.wallet.utils.Utility;
+import com.izzdarki.wallet.utils.CardImageEncoder;
 
 import java.io.File;
 
@@ -19,13 +18,18 @@ import java.io.File;
  * <h><b>Intent extras (parameters)</b></h>
  * <p>GetImageActivity.EXTRA_FILE_PROVIDER_AUTHORITY (String): file provider authority, that is used for generating Uri to the file that gets created in app-specific storage (see comment at the bottom of this file) -> no default</p>
  * <p>GetImageActivity.EXTRA_FOLDER_PATH (String): path of the folder, that the file should be saved in (base directory + sub directory (see comment at the bottom of this file ([sub directory]))) -> no default</p>
- * <p>GetImageActivity.EXTRA_FILE_NAME (String): name of the file, that selected file gets copied to without extension (extension gets copied from selected file) -> no default</p>
+ * <p>GetImageActivity.EXTRA_FILE_NAME (String): name of the file, that the cropped image gets written to (encrypted) without extension (extension depends on the format) -> no default</p>
  * <p>GetImageActivity.EXTRA_IMAGE_MAX_NEEDED_SHORT_SIDE (int): maximum useful length of the short side of the image. The image gets scaled down to that size -> optional</p>
  * <p>GetImageActivity.EXTRA_IMAGE_MAX_NEEDED_LONG_SIDE (int): maximum useful length of the long side of the image. The image gets scaled down to that size -> optional</p>
+ * <p>GetImageActivity.EXTRA_IMAGE_FORMAT (String): name of a CardImageEncoder.Format, that the image gets written in -> CardImageEncoder.DEFAULT_FORMAT</p>
+ * <p>GetImageActivity.EXTRA_IMAGE_QUALITY (int): compression quality (0 - 100) -> CardImageEncoder.DEFAULT_QUALITY</p>
  * <p></p>
  * <h><b>Intent extras (results)</b></h>
- * <p>GetImageActivity.EXTRA_RESULT_FILE (Serializable): file with copy of selected file</p>
+ * <p>GetImageActivity.EXTRA_RESULT_FILE (Serializable): file with the cropped and scaled image (encrypted, see CardImageEncoder)</p>
  * <p>GetImageActivity.EXTRA_RESULT_URI (Parcelable): uri of result file</p>
+ * <p></p>
+ * <p>The selected image is cropped and scaled directly from its source and written only once (encrypted),
+ * subclasses only need to set sourceUri (and temporaryFile, if they had to create one) and call cropImageAndFinish()</p>
  */
 public class GetImageActivity extends AppCompatActivity {
 
@@ -34,6 +38,8 @@ public class GetImageActivity extends AppCompatActivity {
     public static final String EXTRA_FILE_NAME = "com.izzdarki.get_image_activity.extra_file_name";
     public static final String EXTRA_IMAGE_MAX_NEEDED_SHORT_SIDE = "com.izzdarki.get_image_activity.extra_image_max_short_side";
     public static final String EXTRA_IMAGE_MAX_NEEDED_LONG_SIDE = "com.izzdarki.get_image_activity.extra_image_max_long_side";
+    public static final String EXTRA_IMAGE_FORMAT = "com.izzdarki.get_image_activity.extra_image_format";
+    public static final String EXTRA_IMAGE_QUALITY = "com.izzdarki.get_image_activity.extra_image_quality";
 
     public static final String EXTRA_RESULT_URI = "com.izzdarki.get_image_activity.extra_result_uri";
     public static final String EXTRA_RESULT_FILE = "com.izzdarki.get_image_activity.extra_result_file";
@@ -44,6 +50,8 @@ public class GetImageActivity extends AppCompatActivity {
     protected String fileProviderAuthority;
     protected String folderPath;
     protected String fileName;
+    protected Uri sourceUri = null; // image to crop
+    protected File temporaryFile = null; // plaintext file, that gets deleted as soon as the image is cropped
     protected File imageFile = null;
     protected Uri imageUri = null;
 
@@ -64,52 +72,49 @@ public class GetImageActivity extends AppCompatActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         if (requestCode == REQUEST_CROP_IMAGE) {
-            if (resultCode == RESULT_CANCELED)
-                setResult(RESULT_CANCELED);
-            else {
-                if (resultCode == CropActivity.RESULT_ERROR) {
-                    Exception error = (Exception) data.getSerializableExtra(CropActivity.EXTRA_RESULT_ERROR_EXCEPTION);
-                    Toast.makeText(this, getString(R.string.error_occurred) + ": " + error.getMessage(), Toast.LENGTH_SHORT).show();
-                }
+            deleteTemporaryFile();
+            if (resultCode == RESULT_OK) {
                 Intent result = new Intent();
                 result.putExtra(EXTRA_RESULT_FILE, imageFile);
                 result.putExtra(EXTRA_RESULT_URI, imageUri);
                 setResult(RESULT_OK, result);
             }
+            else {
+                if (resultCode == CropActivity.RESULT_ERROR && data != null) {
+                    Exception error = (Exception) data.getSerializableExtra(CropActivity.EXTRA_RESULT_ERROR_EXCEPTION);
+                    Toast.makeText(this, getString(R.string.error_occurred) + ": " + (error != null ? error.getMessage() : ""), Toast.LENGTH_SHORT).show();
+                }
+                setResult(RESULT_CANCELED);
+            }
             finish();
         }
         super.onActivityResult(requestCode, resultCode, data);
     }
 
     protected void cropImageAndFinish() {
+        File folder = new File(folderPath);
+        if (!folder.exists())
+            folder.mkdirs();
+
+        String formatName = getIntent().getStringExtra(EXTRA_IMAGE_FORMAT);
+        CardImageEncoder.Format format = formatName != null ? CardImageEncoder.Format.valueOf(formatName) : CardImageEncoder.DEFAULT_FORMAT;
+        imageFile = new File(folderPath, fileName + format.getFileExtension());
+        imageUri = FileProvider.getUriForFile(this, fileProviderAuthority, imageFile);
+
         Intent intent = new Intent(this, CropActivity.class);
-        intent.putExtra(CropActivity.EXTRA_IMAGE_URI, imageUri);
-        intent.putExtra(CropActivity.EXTRA_IMAGE_FILE_PATH, imageFile.getAbsolutePath());
+        intent.putExtra(CropActivity.EXTRA_IMAGE_URI, sourceUri);
+        intent.putExtra(CropActivity.EXTRA_OUTPUT_FILE_PATH, imageFile.getAbsolutePath());
+        intent.putExtra(CropActivity.EXTRA_MAX_SHORT_SIDE, getIntent().getIntExtra(EXTRA_IMAGE_MAX_NEEDED_SHORT_SIDE, -1));
+        intent.putExtra(CropActivity.EXTRA_MAX_LONG_SIDE, getIntent().getIntExtra(EXTRA_IMAGE_MAX_NEEDED_LONG_SIDE, -1));
+        intent.putExtra(CropActivity.EXTRA_OUTPUT_FORMAT, format.name());
+        intent.putExtra(CropActivity.EXTRA_OUTPUT_QUALITY, getIntent().getIntExtra(EXTRA_IMAGE_QUALITY, CardImageEncoder.DEFAULT_QUALITY));
         startActivityForResult(intent, REQUEST_CROP_IMAGE);
     }
 
-    protected void scaleImageFile() {
-        int maxShortSide = getIntent().getIntExtra(EXTRA_IMAGE_MAX_NEEDED_SHORT_SIDE, -1);
-        int maxLongSide = getIntent().getIntExtra(EXTRA_IMAGE_MAX_NEEDED_LONG_SIDE, -1);
-
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
-        int shortSide = Math.min(options.outWidth, options.outHeight);
-        int longSide = Math.max(options.outWidth, options.outHeight);
-
-        double scale = Utility.getScaleForMaxSize(maxShortSide, maxLongSide, shortSide, longSide);
-
-        if (scale != 1.0d) {
-            Bitmap bitmap;
-            try {
-                //Utility.Timer timer = new Utility.Timer("GetImageActivity: decode file");
-                bitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath());
-                //timer.end();
-            } catch (OutOfMemoryError e) {
-                return;
-            }
-            Utility.scaleBitmapToFile(scale, bitmap, imageFile);
+    protected void deleteTemporaryFile() {
+        if (temporaryFile != null) {
+            temporaryFile.delete();
+            temporaryFile = null;
         }
     }
 }
@@ -21,7 +21,7 @@ import java.io.File;
 
 /**
  * <h><b>Intent extras (parameters)</b></h>
- * <p>ImageCaptureActivity.EXTRA_FILE_EXTENSION (String): file extension of image file -> ".jpg"</p>
+ * <p>ImageCaptureActivity.EXTRA_FILE_EXTENSION (String): file extension of the photo taken by the camera app -> ".jpg"</p>
  */
 public class ImageCaptureActivity extends GetImageActivity {
 
@@ -61,11 +61,11 @@ public class ImageCaptureActivity extends GetImageActivity {
         if (requestCode == REQUEST_IMAGE_CAPTURE) {
             switch (resultCode) {
                 case RESULT_OK:
-                    scaleImageFile();
                     cropImageAndFinish();
                     break;
 
                 case RESULT_CANCELED:
+                    deleteTemporaryFile();
                     setResult(RESULT_CANCELED);
                     finish();
                     break;
@@ -106,10 +106,11 @@ public class ImageCaptureActivity extends GetImageActivity {
         if (!folder.exists())
             folder.mkdirs();
 
-        imageFile = new File(folderPath, fileName + fileExtension);
-        imageUri = FileProvider.getUriForFile(this, fileProviderAuthority, imageFile);
+        // the camera app can only write plaintext, the file is deleted as soon as the photo is cropped
+        temporaryFile = new File(folderPath, fileName + "_capture" + fileExtension);
+        sourceUri = FileProvider.getUriForFile(this, fileProviderAuthority, temporaryFile);
 
-        intent.putExtra(MediaStore.EXTRA_OUTPUT, imageUri);
+        intent.putExtra(MediaStore.EXTRA_OUTPUT, sourceUri);
         startActivityForResult(intent, REQUEST_IMAGE_CAPTURE);
     }
 
@@ -1,7 +1,5 @@
 package com.izzdarki.wallet.utils
 
-import androidx.core.content.ContextCompat
-import izzdarki.wallet.R
 import com.izzdarki.wallet.utils.Utility.toPair
 import com.google.android.material.card.MaterialCardView
 
@@ -11,30 +9,13 @@ import com.google.android.material.card.MaterialCardView
 object AppUtility {
 
     // region Common
-    fun makeCardViewSelected(cardView: MaterialCardView) {
-        val context = cardView.context
-        val strokeColor = ContextCompat.getColor(context, R.color.card_view_outline_color_black_or_white)
-        val cardSelectedColor =
-            if (Utility.isUsingNightModeResources(context))
-                Utility.getDarkerColor(cardView.cardBackgroundColor.defaultColor)
-            else
-                Utility.getLighterColor(cardView.cardBackgroundColor.defaultColor)
-
-
-        cardView.setCardBackgroundColor(cardSelectedColor)
-        cardView.strokeWidth = 12
-
-        // check if stroke color and card color are similar
-        if (!Utility.areColorsSimilar(strokeColor, cardSelectedColor))
-            cardView.strokeColor = strokeColor
-        else {
-            // if they are similar, use normal outline color instead
-            // this should never happen, because in dark mode, the card color gets darker, so that white cards should be
-            // dark enough to be different than the white outline color
-            // and in light mode the other way round
-            // still keep this here for some weird scenarios or future changes
-            cardView.strokeColor = ContextCompat.getColor(context, R.color.card_view_outline_color)
-        }
+    /**
+     * Applies the selected state to [cardView], using precomputed (cached) [attributes] of the card color (see [CardViewRenderAttributes.get])
+     */
+    fun makeCardViewSelected(cardView: MaterialCardView, attributes: CardViewRenderAttributes) {
+        cardView.setCardBackgroundColor(attributes.selectedBackgroundColor)
+        cardView.strokeWidth = attributes.selectedStrokeWidth
+        cardView.strokeColor = attributes.selectedStrokeColor
     }
     // endregion
 
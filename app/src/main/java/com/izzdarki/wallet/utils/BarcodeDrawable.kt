@@ -0,0 +1,57 @@
+package com.izzdarki.wallet.utils
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.ColorFilter
+import android.graphics.Paint
+import android.graphics.PixelFormat
+import android.graphics.drawable.Drawable
+import androidx.annotation.ColorInt
+
+/**
+ * Draws a barcode mask (see [BarcodeRenderer]) scaled to its bounds with nearest-neighbour,
+ * set modules in [foregroundColor] on [backgroundColor]. Nothing is allocated while drawing
+ */
+class BarcodeDrawable(
+    private val mask: Bitmap,
+    private val width: Int,
+    private val height: Int,
+    @ColorInt foregroundColor: Int,
+    @ColorInt backgroundColor: Int
+) : Drawable() {
+
+    private val foregroundPaint = Paint().apply {
+        color = foregroundColor
+        isFilterBitmap = false // sharp module edges
+    }
+    private val backgroundPaint = Paint().apply {
+        color = backgroundColor
+    }
+
+    override fun draw(canvas: Canvas) {
+        canvas.drawRect(bounds, backgroundPaint)
+        canvas.drawBitmap(mask, null, bounds, foregroundPaint)
+    }
+
+    override fun getIntrinsicWidth() = width
+
+    override fun getIntrinsicHeight() = height
+
+    override fun setAlpha(alpha: Int) {
+        foregroundPaint.alpha = alpha
+        backgroundPaint.alpha = alpha
+        invalidateSelf()
+    }
+
+    override fun setColorFilter(colorFilter: ColorFilter?) {
+        foregroundPaint.colorFilter = colorFilter
+        backgroundPaint.colorFilter = colorFilter
+        invalidateSelf()
+    }
+
+    @Deprecated("Deprecated in Java")
+    override fun getOpacity(): Int {
+        return if (Color.alpha(backgroundPaint.color) == 255) PixelFormat.OPAQUE else PixelFormat.TRANSLUCENT
+    }
+}
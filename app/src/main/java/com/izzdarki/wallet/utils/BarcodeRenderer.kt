@@ -0,0 +1,230 @@
+package com.izzdarki.wallet.utils
+
+import android.graphics.Bitmap
+import android.util.LruCache
+import androidx.annotation.ColorInt
+import com.google.zxing.BarcodeFormat
+import com.google.zxing.MultiFormatWriter
+import com.google.zxing.WriterException
+import com.google.zxing.common.BitMatrix
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Renders barcodes independent of the size they are shown in.
+ * Codes are encoded at module resolution (one pixel per module, one row for 1D codes) into an [Bitmap.Config.ALPHA_8] mask,
+ * which is drawn scaled up with nearest-neighbour by a [BarcodeDrawable]. The colors are only applied when drawing,
+ * so the same mask serves all colors and sizes.
+ *
+ * There are two process wide caches, both keyed by code and format:
+ * - Masks (one byte per module), ready to be drawn
+ * - Encoded codes as [PackedBarcode] (one bit per module), so that a mask that has been evicted can be created again without encoding
+ *
+ * Only [encodeMask] and [prerender] encode, see [getStats]
+ */
+object BarcodeRenderer {
+
+    private const val MASK_CACHE_SIZE_BYTES = 1024 * 1024
+    private const val MATRIX_CACHE_SIZE_BYTES = 256 * 1024
+
+    private data class Key(val code: String, val format: BarcodeFormat)
+
+    private val maskCache = object : LruCache<Key, Bitmap>(MASK_CACHE_SIZE_BYTES) {
+        override fun sizeOf(key: Key, value: Bitmap): Int = value.allocationByteCount
+    }
+    private val matrixCache = object : LruCache<Key, PackedBarcode>(MATRIX_CACHE_SIZE_BYTES) {
+        override fun sizeOf(key: Key, value: PackedBarcode): Int = value.bits.size
+    }
+    private val encodeCount = AtomicInteger()
+
+    /**
+     * Hit and miss counts of the caches and the number of encoded codes since the process has been started
+     */
+    data class Stats(
+        val maskHitCount: Int,
+        val maskMissCount: Int,
+        val matrixHitCount: Int,
+        val matrixMissCount: Int,
+        val encodeCount: Int,
+    )
+
+    @JvmStatic
+    fun getStats() = Stats(
+        maskCache.hitCount(),
+        maskCache.missCount(),
+        matrixCache.hitCount(),
+        matrixCache.missCount(),
+        encodeCount.get(),
+    )
+
+    /**
+     * Returns the mask of [code] in [format] without encoding it. The mask is taken from the cache or created (and cached)
+     * from the cached encoded code or [codeMatrix], which is fast enough for the main thread
+     * @param codeMatrix Pre-rendered [code] in [format] (see [prerender]) or `null`
+     * @return Mask or `null` if [code] has not been encoded yet (see [encodeMask])
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getCachedMask(code: String, format: BarcodeFormat, codeMatrix: PackedBarcode? = null): Bitmap? {
+        val key = Key(code, format)
+        maskCache.get(key)?.let { return it }
+        val packedBarcode = matrixCache.get(key)
+            ?: codeMatrix?.also { matrixCache.put(key, it) }
+            ?: return null
+        return createMask(packedBarcode).also { maskCache.put(key, it) }
+    }
+
+    /**
+     * Returns the mask of [code] in [format] (cached). Can be slow for dense codes, if it's not cached yet
+     * @throws WriterException If [code] can't be encoded in [format]
+     * @throws IllegalArgumentException If [code] is invalid for [format]
+     */
+    @JvmStatic
+    @Throws(WriterException::class, IllegalArgumentException::class)
+    fun getMask(code: String, format: BarcodeFormat): Bitmap {
+        return getCachedMask(code, format) ?: encodeMask(code, format)
+    }
+
+    /**
+     * Encodes [code] in [format] (without looking into the caches) and caches the result. Can be slow for dense codes
+     * @throws WriterException If [code] can't be encoded in [format]
+     * @throws IllegalArgumentException If [code] is invalid for [format]
+     */
+    @JvmStatic
+    @Throws(WriterException::class, IllegalArgumentException::class)
+    fun encodeMask(code: String, format: BarcodeFormat): Bitmap {
+        val bitMatrix = encode(code, format)
+        val key = Key(code, format)
+        matrixCache.put(key, pack(bitMatrix))
+        return createMask(bitMatrix).also { maskCache.put(key, it) }
+    }
+
+    /**
+     * Encodes [code] in [format] (meant to be called in the background after a card is saved), so that it can be stored with the card
+     * and shown later without encoding again (see [getCachedMask]). The result is cached as well
+     * @return Packed barcode or `null` if [code] can't be encoded in [format]
+     */
+    @JvmStatic
+    fun prerender(code: String, format: BarcodeFormat): PackedBarcode? {
+        val bitMatrix = try {
+            encode(code, format)
+        } catch (e: WriterException) {
+            return null
+        } catch (e: IllegalArgumentException) {
+            return null
+        } catch (e: ArrayIndexOutOfBoundsException) {
+            return null
+        }
+        val key = Key(code, format)
+        maskCache.put(key, createMask(bitMatrix))
+        return pack(bitMatrix).also { matrixCache.put(key, it) }
+    }
+
+    /**
+     * Encodes [code] in [format] at module resolution (including the quiet zone)
+     * @throws WriterException If [code] can't be encoded in [format]
+     * @throws IllegalArgumentException If [code] is invalid for [format]
+     */
+    @JvmStatic
+    @Throws(WriterException::class, IllegalArgumentException::class)
+    fun encode(code: String, format: BarcodeFormat): BitMatrix {
+        val bitMatrix = MultiFormatWriter().encode(code, format, 0, 0) // 0: as small as possible
+        encodeCount.incrementAndGet()
+        return bitMatrix
+    }
+
+    /**
+     * @return [Bitmap.Config.ALPHA_8] bitmap with opaque pixels for set modules of [bitMatrix]
+     */
+    @JvmStatic
+    fun createMask(bitMatrix: BitMatrix): Bitmap {
+        val mask = Bitmap.createBitmap(bitMatrix.width, bitMatrix.height, Bitmap.Config.ALPHA_8)
+        mask.copyPixelsFromBuffer(ByteBuffer.wrap(createMaskPixels(bitMatrix, mask.rowBytes)))
+        return mask
+    }
+
+    /**
+     * @return [Bitmap.Config.ALPHA_8] bitmap with opaque pixels for set modules of [packedBarcode] (no encoding needed)
+     */
+    @JvmStatic
+    fun createMask(packedBarcode: PackedBarcode): Bitmap {
+        val mask = Bitmap.createBitmap(packedBarcode.width, packedBarcode.height, Bitmap.Config.ALPHA_8)
+        mask.copyPixelsFromBuffer(ByteBuffer.wrap(createMaskPixels(packedBarcode, mask.rowBytes)))
+        return mask
+    }
+
+    /**
+     * @return Pixels of the mask of [bitMatrix] (see [createMask]) with [rowBytes] bytes per row
+     */
+    internal fun createMaskPixels(bitMatrix: BitMatrix, rowBytes: Int): ByteArray {
+        val pixels = ByteArray(rowBytes * bitMatrix.height)
+        for (y in 0 until bitMatrix.height) {
+            val offset = y * rowBytes
+            for (x in 0 until bitMatrix.width) {
+                if (bitMatrix[x, y])
+                    pixels[offset + x] = 0xff.toByte()
+            }
+        }
+        return pixels
+    }
+
+    /**
+     * @return Pixels of the mask of [packedBarcode] (see [createMask]) with [rowBytes] bytes per row
+     */
+    internal fun createMaskPixels(packedBarcode: PackedBarcode, rowBytes: Int): ByteArray {
+        val pixels = ByteArray(rowBytes * packedBarcode.height)
+        for (y in 0 until packedBarcode.height) {
+            val offset = y * rowBytes
+            for (x in 0 until packedBarcode.width) {
+                if (packedBarcode[x, y])
+                    pixels[offset + x] = 0xff.toByte()
+            }
+        }
+        return pixels
+    }
+
+    /**
+     * @return [bitMatrix] with one bit per module (see [PackedBarcode])
+     */
+    @JvmStatic
+    fun pack(bitMatrix: BitMatrix): PackedBarcode {
+        val bits = ByteArray(PackedBarcode.byteCount(bitMatrix.width, bitMatrix.height))
+        var index = 0
+        for (y in 0 until bitMatrix.height) {
+            for (x in 0 until bitMatrix.width) {
+                if (bitMatrix[x, y])
+                    bits[index ushr 3] = (bits[index ushr 3].toInt() or (0x80 ushr (index and 7))).toByte()
+                index++
+            }
+        }
+        return PackedBarcode(bitMatrix.width, bitMatrix.height, bits)
+    }
+
+    /**
+     * Creates a drawable showing [mask] as big as possible within [maxWidth] x [maxHeight],
+     * scaled by a whole number, so that all modules have the same size. 1D codes (masks with one row) fill [maxHeight]
+     */
+    @JvmStatic
+    fun createDrawable(
+        mask: Bitmap,
+        maxWidth: Int,
+        maxHeight: Int,
+        @ColorInt foregroundColor: Int,
+        @ColorInt backgroundColor: Int
+    ): BarcodeDrawable {
+        val width: Int
+        val height: Int
+        if (mask.height == 1) { // 1D
+            width = max(1, maxWidth / mask.width) * mask.width
+            height = maxHeight
+        }
+        else {
+            val scale = max(1, min(maxWidth / mask.width, maxHeight / mask.height))
+            width = scale * mask.width
+            height = scale * mask.height
+        }
+        return BarcodeDrawable(mask, width, height, foregroundColor, backgroundColor)
+    }
+}
@@ -0,0 +1,169 @@
+package com.izzdarki.wallet.utils
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.util.LruCache
+import java.io.File
+import java.io.IOException
+import java.security.GeneralSecurityException
+import java.security.MessageDigest
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+
+/**
+ * Two-level cache of decoded card images, keyed by image file path, modification time, file size and requested size.
+ * The memory level keeps decoded bitmaps (up to [MEMORY_CACHE_FRACTION] of the heap),
+ * the disk level keeps encrypted (see [CryptoSession]), already downscaled thumbnails in [THUMBNAIL_DIRECTORY] of the cache directory,
+ * so that opening a card again doesn't decrypt and decode the full image.
+ *
+ * Bitmaps returned by [get] are shared, so they must not be changed or recycled.
+ * For the same reason evicted bitmaps are left to the garbage collector instead of being handed to [CardImageDecoder.reuseBitmap],
+ * a view might still show them
+ */
+object CardImageCache {
+
+    const val THUMBNAIL_DIRECTORY = "card_image_thumbnails"
+    private const val MEMORY_CACHE_FRACTION = 8
+    private const val THUMBNAIL_JPEG_QUALITY = 90
+    private const val THUMBNAIL_MAX_PIXEL_FRACTION = 0.5
+    private const val TEMPORARY_SUFFIX = ".tmp"
+
+    private val memoryCache = object : LruCache<String, Bitmap>((Runtime.getRuntime().maxMemory() / MEMORY_CACHE_FRACTION).toInt()) {
+        override fun sizeOf(key: String, value: Bitmap): Int = value.allocationByteCount
+    }
+
+    /**
+     * Returns [imageFile] decoded for [maxShortSide] x [maxLongSide] (see [CardImageDecoder.decode]).
+     * Tries the memory cache, then the thumbnail on disk and decodes [imageFile] only if both miss.
+     * The thumbnail is then written in the background (see [CardImageLoader.executeInBackground])
+     * @throws OutOfMemoryError See [CardImageDecoder.decode]
+     */
+    @JvmStatic
+    fun get(context: Context, imageFile: File, maxShortSide: Int, maxLongSide: Int): Bitmap? {
+        val key = getKey(imageFile, maxShortSide, maxLongSide)
+        memoryCache.get(key)?.let { return it }
+
+        val thumbnailFile = getThumbnailFile(context, imageFile, maxShortSide, maxLongSide)
+        var bitmap = if (thumbnailFile.exists()) readThumbnail(context, thumbnailFile) else null
+        if (bitmap == null) {
+            bitmap = CardImageDecoder.decode(context, imageFile, maxShortSide, maxLongSide) ?: return null
+            val decodedBitmap: Bitmap = bitmap
+            CardImageLoader.executeInBackground {
+                if (getKey(imageFile, maxShortSide, maxLongSide) == key) // image not changed or deleted in the meantime
+                    writeThumbnail(context, imageFile, thumbnailFile, decodedBitmap, maxShortSide, maxLongSide)
+            }
+        }
+        memoryCache.put(key, bitmap)
+        return bitmap
+    }
+
+    /**
+     * Removes all cached versions of [imageFile]. Call this when [imageFile] is deleted
+     */
+    @JvmStatic
+    fun remove(context: Context, imageFile: File) {
+        val keyPrefix = imageFile.absolutePath + "|"
+        for (key in memoryCache.snapshot().keys) {
+            if (key.startsWith(keyPrefix))
+                memoryCache.remove(key)
+        }
+        val thumbnailPrefix = hash(imageFile.absolutePath)
+        getThumbnailDirectory(context).listFiles()?.forEach { file ->
+            if (file.name.startsWith(thumbnailPrefix))
+                file.delete()
+        }
+    }
+
+    /**
+     * @return Key identifying the version of [imageFile] decoded for [maxShortSide] x [maxLongSide]
+     */
+    @JvmStatic
+    fun getKey(imageFile: File, maxShortSide: Int, maxLongSide: Int): String {
+        return "${imageFile.absolutePath}|${imageFile.lastModified()}|${imageFile.length()}|${maxShortSide}x$maxLongSide"
+    }
+
+    private fun getThumbnailDirectory(context: Context) = File(context.cacheDir, THUMBNAIL_DIRECTORY)
+
+    /**
+     * The name consists of the hash of the image path, the hash of the image version (modification time and file size) and the size,
+     * so that outdated thumbnails of an image can be found, while thumbnails of other sizes are kept
+     */
+    private fun getThumbnailFile(context: Context, imageFile: File, maxShortSide: Int, maxLongSide: Int): File {
+        val name = hash(imageFile.absolutePath) + "_" + getThumbnailVersion(imageFile) + "_" + "${maxShortSide}x$maxLongSide"
+        return File(getThumbnailDirectory(context), name)
+    }
+
+    private fun getThumbnailVersion(imageFile: File) = hash("${imageFile.lastModified()}|${imageFile.length()}")
+
+    private fun readThumbnail(context: Context, thumbnailFile: File): Bitmap? {
+        return try {
+            CardImageDecoder.decode(context, thumbnailFile, -1, -1, encrypted = true) // already downscaled
+        } catch (e: RuntimeException) {
+            thumbnailFile.delete() // broken (for example the key has changed)
+            null
+        }
+    }
+
+    /**
+     * Writes [bitmap] scaled to [maxShortSide] x [maxLongSide] to [thumbnailFile],
+     * if that is meaningfully smaller than [imageFile] (see [THUMBNAIL_MAX_PIXEL_FRACTION]), otherwise decoding [imageFile] is just as fast.
+     * [bitmap] itself is not changed or recycled
+     */
+    private fun writeThumbnail(
+        context: Context,
+        imageFile: File,
+        thumbnailFile: File,
+        bitmap: Bitmap,
+        maxShortSide: Int,
+        maxLongSide: Int
+    ) {
+        val (width, height) = try {
+            val options = CardImageDecoder.decodeBounds(context, imageFile)
+            options.outWidth to options.outHeight
+        } catch (e: RuntimeException) {
+            return
+        }
+        val scale = Utility.getScaleForMaxSize(maxShortSide, maxLongSide, min(width, height), max(width, height))
+        val thumbnailWidth = min(bitmap.width, max(1, (width * scale).roundToInt()))
+        val thumbnailHeight = min(bitmap.height, max(1, (height * scale).roundToInt()))
+        if (scale <= 0.0 || thumbnailWidth.toLong() * thumbnailHeight > width.toLong() * height * THUMBNAIL_MAX_PIXEL_FRACTION)
+            return
+
+        // delete outdated thumbnails of this image, but keep the ones of other sizes
+        val thumbnailPrefix = hash(imageFile.absolutePath) + "_"
+        val currentPrefix = thumbnailPrefix + getThumbnailVersion(imageFile) + "_"
+        val directory = getThumbnailDirectory(context)
+        directory.listFiles()?.forEach { file ->
+            if (file.name.startsWith(thumbnailPrefix) && !file.name.startsWith(currentPrefix))
+                file.delete()
+        }
+        directory.mkdirs()
+
+        // write to a temporary file first, so that a concurrent get never reads a partial thumbnail
+        val temporaryFile = File(directory, thumbnailFile.name + TEMPORARY_SUFFIX)
+        val thumbnail = CardImageCropper.scaleDown(bitmap, thumbnailWidth, thumbnailHeight)
+        try {
+            CryptoSession.openFileOutput(context, temporaryFile).use { outputStream ->
+                if (thumbnail.hasAlpha())
+                    thumbnail.compress(Bitmap.CompressFormat.PNG, 100, outputStream)
+                else
+                    thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_JPEG_QUALITY, outputStream)
+            }
+            if (!temporaryFile.renameTo(thumbnailFile))
+                temporaryFile.delete()
+        } catch (e: IOException) {
+            temporaryFile.delete() // the cache is optional
+        } catch (e: GeneralSecurityException) {
+            temporaryFile.delete()
+        } finally {
+            if (thumbnail !== bitmap)
+                thumbnail.recycle()
+        }
+    }
+
+    private fun hash(string: String): String {
+        val digest = MessageDigest.getInstance("SHA-256").digest(string.toByteArray())
+        return digest.joinToString("") { "%02x".format(it) }.substring(0, 32)
+    }
+}
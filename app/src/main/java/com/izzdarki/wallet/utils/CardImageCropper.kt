@@ -0,0 +1,188 @@
+package com.izzdarki.wallet.utils
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.BitmapRegionDecoder
+import android.graphics.Matrix
+import android.graphics.Rect
+import android.net.Uri
+import java.io.IOException
+import java.io.InputStream
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+
+/**
+ * Crops and scales images of any size within a fixed memory budget.
+ * Only the cropped region is decoded (with [BitmapRegionDecoder]) and it is subsampled while decoding,
+ * so that the decoded pixels take at most the memory budget (default [DEFAULT_MEMORY_BUDGET_BYTES]).
+ * The rest is scaled down with filtering in steps of at most half the size, so that no pixels are skipped
+ */
+object CardImageCropper {
+
+    const val DEFAULT_MEMORY_BUDGET_BYTES = 32L * 1024 * 1024
+    private const val BYTES_PER_PIXEL = 4 // ARGB_8888
+
+    /**
+     * Crops [cropRect] out of the image at [imageUri], rotates and flips it and scales it down,
+     * so that it can be shown in [maxShortSide] x [maxLongSide] (in any orientation, -1 to ignore a side)
+     * @param cropRect Region in pixels of the stored image (before [rotation] and flipping)
+     * @param rotation Clockwise rotation in degrees (multiple of 90)
+     * @param memoryBudgetBytes Maximum size of the decoded region. If needed, the result gets smaller than requested
+     * @throws IOException If the image could not be read
+     * @throws OutOfMemoryError
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Throws(IOException::class)
+    fun crop(
+        context: Context,
+        imageUri: Uri,
+        cropRect: Rect,
+        rotation: Int,
+        flipHorizontally: Boolean,
+        flipVertically: Boolean,
+        maxShortSide: Int,
+        maxLongSide: Int,
+        memoryBudgetBytes: Long = DEFAULT_MEMORY_BUDGET_BYTES
+    ): Bitmap {
+        // Bounds
+        val options = BitmapFactory.Options()
+        options.inJustDecodeBounds = true
+        openInputStream(context, imageUri).use { BitmapFactory.decodeStream(it, null, options) }
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw IOException("not an image: $imageUri")
+        val region = Rect(cropRect)
+        if (!region.intersect(0, 0, options.outWidth, options.outHeight))
+            throw IOException("crop rect $cropRect is outside of the image")
+
+        // Sample size: as big as possible while not getting smaller than needed, but within budget
+        var sampleSize = CardImageDecoder.calculateSampleSize(region.width(), region.height(), maxShortSide, maxLongSide)
+        while (getByteCount(region.width(), region.height(), sampleSize) > memoryBudgetBytes)
+            sampleSize *= 2
+
+        val decodedRegion = decodeRegion(context, imageUri, region, sampleSize, options.outWidth, options.outHeight, memoryBudgetBytes)
+
+        // Target size (the budget might have made the region smaller than the target)
+        val scale = min(1.0, Utility.getScaleForMaxSize(
+            maxShortSide,
+            maxLongSide,
+            min(region.width(), region.height()),
+            max(region.width(), region.height())
+        ) * sampleSize)
+        val targetWidth = max(1, (decodedRegion.width * scale).roundToInt())
+        val targetHeight = max(1, (decodedRegion.height * scale).roundToInt())
+
+        val result = scaleDown(decodedRegion, targetWidth, targetHeight, rotation, flipHorizontally, flipVertically)
+        if (result !== decodedRegion)
+            decodedRegion.recycle()
+        return result
+    }
+
+    /**
+     * Scales [bitmap] down to [width] x [height] (before rotation) with filtering, in steps of at most half the size.
+     * [bitmap] itself is not changed or recycled, intermediate bitmaps are
+     * @param rotation Clockwise rotation in degrees, applied after scaling
+     * @return Scaled bitmap (might be [bitmap] itself, if there is nothing to do)
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun scaleDown(
+        bitmap: Bitmap,
+        width: Int,
+        height: Int,
+        rotation: Int = 0,
+        flipHorizontally: Boolean = false,
+        flipVertically: Boolean = false
+    ): Bitmap {
+        var current = bitmap
+        while (current.width / 2 >= width && current.height / 2 >= height && current.width / 2 > 0 && current.height / 2 > 0) {
+            val half = Bitmap.createScaledBitmap(current, current.width / 2, current.height / 2, true)
+            if (current !== bitmap)
+                current.recycle()
+            current = half
+        }
+
+        val matrix = Matrix()
+        matrix.setScale(width.toFloat() / current.width, height.toFloat() / current.height)
+        matrix.postRotate(rotation.toFloat())
+        matrix.postScale(if (flipHorizontally) -1f else 1f, if (flipVertically) -1f else 1f)
+        val result = Bitmap.createBitmap(current, 0, 0, current.width, current.height, matrix, true)
+        if (current !== bitmap && current !== result)
+            current.recycle()
+        return result
+    }
+
+    private fun decodeRegion(
+        context: Context,
+        imageUri: Uri,
+        region: Rect,
+        sampleSize: Int,
+        imageWidth: Int,
+        imageHeight: Int,
+        memoryBudgetBytes: Long
+    ): Bitmap {
+        val options = BitmapFactory.Options()
+        options.inSampleSize = sampleSize
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888
+
+        val bitmap = try {
+            openInputStream(context, imageUri).use { inputStream ->
+                @Suppress("DEPRECATION") // the replacement needs API 31
+                val decoder = BitmapRegionDecoder.newInstance(inputStream, false)
+                try {
+                    decoder.decodeRegion(region, options)
+                } finally {
+                    decoder.recycle()
+                }
+            }
+        } catch (e: IOException) {
+            null // format not supported by BitmapRegionDecoder (for example GIF)
+        }
+        return bitmap ?: decodeRegionFromFullImage(context, imageUri, region, sampleSize, imageWidth, imageHeight, memoryBudgetBytes)
+    }
+
+    /**
+     * Fallback for formats that can't be decoded by region. The whole image is decoded (within the budget) and then cropped
+     */
+    private fun decodeRegionFromFullImage(
+        context: Context,
+        imageUri: Uri,
+        region: Rect,
+        minSampleSize: Int,
+        imageWidth: Int,
+        imageHeight: Int,
+        memoryBudgetBytes: Long
+    ): Bitmap {
+        val options = BitmapFactory.Options()
+        options.inSampleSize = minSampleSize
+        while (getByteCount(imageWidth, imageHeight, options.inSampleSize) > memoryBudgetBytes)
+            options.inSampleSize *= 2
+        val fullImage = openInputStream(context, imageUri).use { BitmapFactory.decodeStream(it, null, options) }
+            ?: throw IOException("image could not be decoded: $imageUri")
+
+        val sampleSize = options.inSampleSize
+        val sampledRegion = Rect(
+            region.left / sampleSize,
+            region.top / sampleSize,
+            region.right / sampleSize,
+            region.bottom / sampleSize
+        )
+        if (!sampledRegion.intersect(0, 0, fullImage.width, fullImage.height) || sampledRegion.isEmpty)
+            throw IOException("crop rect $region is too small")
+        val bitmap = Bitmap.createBitmap(fullImage, sampledRegion.left, sampledRegion.top, sampledRegion.width(), sampledRegion.height())
+        if (bitmap !== fullImage)
+            fullImage.recycle()
+        return bitmap
+    }
+
+    private fun getByteCount(width: Int, height: Int, sampleSize: Int): Long {
+        return ((width + sampleSize - 1) / sampleSize).toLong() * ((height + sampleSize - 1) / sampleSize) * BYTES_PER_PIXEL
+    }
+
+    private fun openInputStream(context: Context, imageUri: Uri): InputStream {
+        return context.contentResolver.openInputStream(imageUri)
+            ?: throw IOException("could not open $imageUri")
+    }
+}
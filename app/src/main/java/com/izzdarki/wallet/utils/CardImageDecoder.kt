@@ -0,0 +1,171 @@
+package com.izzdarki.wallet.utils
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import izzdarki.wallet.R
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.security.GeneralSecurityException
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Decodes card images only as big as they are shown.
+ * The size of the image is read first (without decoding the pixels), then the image is decoded with a sample size,
+ * so that it is not smaller than needed. Opaque (JPEG) images are decoded with [Bitmap.Config.RGB_565].
+ * Bitmaps that are not needed anymore can be handed back with [reuseBitmap] to be decoded into
+ */
+object CardImageDecoder {
+
+    private const val MAX_REUSABLE_BITMAPS = 2
+    private const val MAX_OUT_OF_MEMORY_RETRIES = 3
+
+    private val reusableBitmaps = ArrayList<Bitmap>(MAX_REUSABLE_BITMAPS)
+
+    /**
+     * Decodes [imageFile] (decrypting it if needed), so that it can be shown in [maxShortSide] x [maxLongSide] (in any orientation)
+     * without being scaled up. If there is not enough memory, the image is decoded smaller
+     * @param encrypted Whether [imageFile] is encrypted (see [CryptoSession])
+     * @throws OutOfMemoryError If there is not enough memory even for a much smaller image
+     * @throws RuntimeException If the image could not be read or decrypted
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun decode(
+        context: Context,
+        imageFile: File,
+        maxShortSide: Int,
+        maxLongSide: Int,
+        encrypted: Boolean = isEncrypted(context, imageFile)
+    ): Bitmap? {
+        // Bounds
+        val options = decodeBounds(context, imageFile, encrypted)
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null // not an image
+
+        // Pixels
+        var sampleSize = calculateSampleSize(options.outWidth, options.outHeight, maxShortSide, maxLongSide)
+        val config =
+            if (options.outMimeType == "image/jpeg") Bitmap.Config.RGB_565 // no alpha channel anyway
+            else Bitmap.Config.ARGB_8888
+        var retries = 0
+        while (true) {
+            try {
+                return decodeSampled(context, imageFile, encrypted, options.outWidth, options.outHeight, sampleSize, config)
+            } catch (e: OutOfMemoryError) {
+                if (retries++ == MAX_OUT_OF_MEMORY_RETRIES)
+                    throw e
+                sampleSize *= 2
+            }
+        }
+    }
+
+    /**
+     * Reads only the size and type of [imageFile] (`outWidth`, `outHeight` and `outMimeType`, see [BitmapFactory.Options]),
+     * which only needs the first bytes of the file
+     * @throws RuntimeException If the image could not be read or decrypted
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun decodeBounds(
+        context: Context,
+        imageFile: File,
+        encrypted: Boolean = isEncrypted(context, imageFile)
+    ): BitmapFactory.Options {
+        val options = BitmapFactory.Options()
+        options.inJustDecodeBounds = true
+        openInputStream(context, imageFile, encrypted).use { BitmapFactory.decodeStream(it, null, options) }
+        return options
+    }
+
+    /**
+     * Hands [bitmap] back to be decoded into by a later [decode] call. Only do this, if [bitmap] is not used anymore
+     * (never with bitmaps of [CardImageCache], they are shared)
+     */
+    @JvmStatic
+    fun reuseBitmap(bitmap: Bitmap) {
+        if (!bitmap.isMutable || bitmap.isRecycled)
+            return
+        synchronized(reusableBitmaps) {
+            if (reusableBitmaps.size == MAX_REUSABLE_BITMAPS)
+                reusableBitmaps.removeAt(0)
+            reusableBitmaps.add(bitmap)
+        }
+    }
+
+    /**
+     * Image files in the files directory and in the cache directory (new images, see [CardImageEncoder]) are encrypted,
+     * except for the images of the example card
+     */
+    @JvmStatic
+    fun isEncrypted(context: Context, imageFile: File): Boolean {
+        val path = imageFile.absolutePath
+        return (path.contains(context.filesDir.absolutePath) || path.contains(context.cacheDir.absolutePath))
+                && imageFile.name != context.getString(R.string.example_card_front_image_file_name)
+                && imageFile.name != context.getString(R.string.example_card_back_image_file_name)
+    }
+
+    /**
+     * @return Largest power of two, so that the sampled image is still at least as big as it is shown
+     * (1 if a size is not positive, for example a view that has not been laid out yet)
+     */
+    @JvmStatic
+    fun calculateSampleSize(width: Int, height: Int, maxShortSide: Int, maxLongSide: Int): Int {
+        val scale = Utility.getScaleForMaxSize(maxShortSide, maxLongSide, min(width, height), max(width, height))
+        if (scale <= 0.0)
+            return 1
+        var sampleSize = 1
+        while (sampleSize * 2 * scale <= 1.0)
+            sampleSize *= 2
+        return sampleSize
+    }
+
+    private fun decodeSampled(
+        context: Context,
+        imageFile: File,
+        encrypted: Boolean,
+        width: Int,
+        height: Int,
+        sampleSize: Int,
+        config: Bitmap.Config
+    ): Bitmap? {
+        val options = BitmapFactory.Options()
+        options.inSampleSize = sampleSize
+        options.inPreferredConfig = config
+        options.inMutable = true // needed to be reusable
+        val bytesPerPixel = if (config == Bitmap.Config.RGB_565) 2 else 4
+        val byteCount = ((width + sampleSize - 1) / sampleSize).toLong() * ((height + sampleSize - 1) / sampleSize) * bytesPerPixel
+        options.inBitmap = takeReusableBitmap(byteCount)
+
+        if (options.inBitmap != null) {
+            try {
+                return openInputStream(context, imageFile, encrypted).use { BitmapFactory.decodeStream(it, null, options) }
+            } catch (e: IllegalArgumentException) {
+                options.inBitmap = null // bitmap could not be reused, decode without
+            }
+        }
+        return openInputStream(context, imageFile, encrypted).use { BitmapFactory.decodeStream(it, null, options) }
+    }
+
+    private fun takeReusableBitmap(byteCount: Long): Bitmap? {
+        synchronized(reusableBitmaps) {
+            val index = reusableBitmaps.indexOfFirst { !it.isRecycled && it.allocationByteCount >= byteCount }
+            return if (index != -1) reusableBitmaps.removeAt(index) else null
+        }
+    }
+
+    private fun openInputStream(context: Context, imageFile: File, encrypted: Boolean): InputStream {
+        if (!encrypted)
+            return FileInputStream(imageFile)
+        try {
+            return CryptoSession.openFileInput(context, imageFile)
+        } catch (e: IOException) {
+            throw RuntimeException(e)
+        } catch (e: GeneralSecurityException) {
+            throw RuntimeException(e)
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.izzdarki.wallet.utils
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.os.Build
+import java.io.File
+import java.io.IOException
+import java.security.GeneralSecurityException
+
+/**
+ * Writes new card images. The image is compressed directly into the encrypting stream (see [CryptoSession]),
+ * so it is written exactly once and never exists as plaintext file.
+ * Because the file name is part of the encryption, written images can be moved (not renamed) to another directory
+ */
+object CardImageEncoder {
+
+    enum class Format(val fileExtension: String, val mimeType: String) {
+        JPEG(".jpg", "image/jpeg"),
+        WEBP(".webp", "image/webp");
+
+        val compressFormat: Bitmap.CompressFormat
+            get() = when (this) {
+                JPEG -> Bitmap.CompressFormat.JPEG
+                WEBP ->
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) Bitmap.CompressFormat.WEBP_LOSSY
+                    else @Suppress("DEPRECATION") Bitmap.CompressFormat.WEBP
+            }
+    }
+
+    @JvmField val DEFAULT_FORMAT = Format.JPEG
+    const val DEFAULT_QUALITY = 90
+
+    /**
+     * Compresses [bitmap] into [imageFile] (encrypted). [imageFile] must not exist yet
+     * @param quality 0 - 100 (ignored by lossless formats)
+     * @throws IOException If [imageFile] could not be written (nothing is left behind)
+     * @throws GeneralSecurityException
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Throws(IOException::class, GeneralSecurityException::class)
+    fun writeEncrypted(
+        context: Context,
+        bitmap: Bitmap,
+        imageFile: File,
+        format: Format = DEFAULT_FORMAT,
+        quality: Int = DEFAULT_QUALITY
+    ) {
+        if (imageFile.exists())
+            throw IOException("image file already exists: " + imageFile.name)
+        imageFile.parentFile?.mkdirs()
+        try {
+            CryptoSession.openFileOutput(context, imageFile).use { outputStream ->
+                if (!bitmap.compress(format.compressFormat, quality, outputStream))
+                    throw IOException("could not compress image: " + imageFile.name)
+            }
+        } catch (e: IOException) {
+            imageFile.delete()
+            throw e
+        } catch (e: GeneralSecurityException) {
+            imageFile.delete()
+            throw e
+        }
+    }
+}
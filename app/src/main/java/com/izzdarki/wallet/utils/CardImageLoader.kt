@@ -0,0 +1,102 @@
+package com.izzdarki.wallet.utils
+
+import android.content.Context
+import android.graphics.Bitmap
+import kotlinx.coroutines.CompletableDeferred
+import java.io.File
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Loads card images (through [CardImageCache]) on a bounded pool of [THREAD_COUNT] threads.
+ * - Requests with a lower priority value are started first (front before back), otherwise in the order of the calls
+ * - Concurrent requests for the same image and size share a single decode
+ * - A request is dropped when all callers waiting for it are cancelled before it has started
+ */
+object CardImageLoader {
+
+    const val THREAD_COUNT = 2
+    const val PRIORITY_FRONT = 0
+    const val PRIORITY_BACK = 1
+    const val PRIORITY_BACKGROUND = Int.MAX_VALUE
+
+    private val executor = ThreadPoolExecutor(
+        THREAD_COUNT, THREAD_COUNT,
+        0L, TimeUnit.MILLISECONDS,
+        PriorityBlockingQueue()
+    )
+    private val sequence = AtomicLong()
+    private val requests = HashMap<String, Request>() // running or queued requests by key
+
+    private class Request(
+        val key: String,
+        val priority: Int,
+        val work: () -> Bitmap?
+    ) : Runnable, Comparable<Request> {
+        private val order = sequence.getAndIncrement()
+        val result = CompletableDeferred<Bitmap?>()
+        var waiters = 0 // guarded by requests
+
+        override fun run() {
+            try {
+                result.complete(work())
+            } catch (e: Throwable) { // includes OutOfMemoryError
+                result.completeExceptionally(e)
+            } finally {
+                synchronized(requests) {
+                    if (requests[key] === this)
+                        requests.remove(key)
+                }
+            }
+        }
+
+        override fun compareTo(other: Request): Int {
+            return if (priority != other.priority) priority.compareTo(other.priority)
+            else order.compareTo(other.order)
+        }
+    }
+
+    /**
+     * Runs [work] on the loader threads after all queued loads, for work nobody waits for (for example writing a thumbnail).
+     * Exceptions thrown by [work] are ignored
+     */
+    fun executeInBackground(work: () -> Unit) {
+        executor.execute(Request("", PRIORITY_BACKGROUND) { work(); null })
+    }
+
+    /**
+     * Loads [imageFile] decoded for [maxShortSide] x [maxLongSide] (see [CardImageCache.get]).
+     * Cancelling the calling coroutine also cancels the request, if nobody else waits for it
+     * @param priority [PRIORITY_FRONT], [PRIORITY_BACK] or any other value (lower values are loaded first)
+     * @throws OutOfMemoryError See [CardImageDecoder.decode]
+     * @throws RuntimeException If the image could not be read or decrypted
+     */
+    suspend fun load(context: Context, imageFile: File, maxShortSide: Int, maxLongSide: Int, priority: Int): Bitmap? {
+        val applicationContext = context.applicationContext
+        val key = CardImageCache.getKey(imageFile, maxShortSide, maxLongSide)
+        val request = synchronized(requests) {
+            val request = requests[key] ?: Request(key, priority) {
+                CardImageCache.get(applicationContext, imageFile, maxShortSide, maxLongSide)
+            }.also {
+                requests[key] = it
+                executor.execute(it)
+            }
+            request.waiters++
+            request
+        }
+
+        try {
+            return request.result.await()
+        } finally {
+            synchronized(requests) {
+                request.waiters--
+                if (request.waiters == 0 && executor.remove(request)) { // not started yet and nobody is waiting anymore
+                    requests.remove(key)
+                    request.result.cancel()
+                }
+            }
+        }
+    }
+}
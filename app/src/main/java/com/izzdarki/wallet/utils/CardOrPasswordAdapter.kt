@@ -0,0 +1,85 @@
+package com.izzdarki.wallet.utils
+
+import androidx.annotation.MainThread
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.RecyclerView
+import com.izzdarki.wallet.utils.Utility.removeItemsAndNotifyAdapter
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+
+/**
+ * Adapter for a list of [CardOrPasswordPreviewData], that is updated with [submitList].
+ * Differences are calculated in the background with [DiffUtil], so that only changed items are rebound (and animated).
+ *
+ * Works like [androidx.recyclerview.widget.ListAdapter], but items can also be moved or removed synchronously
+ * with [moveItem] and [removeItems], which is needed for drag and drop
+ */
+abstract class CardOrPasswordAdapter<VH : RecyclerView.ViewHolder>
+    : RecyclerView.Adapter<VH>()
+{
+
+    private val items: MutableList<CardOrPasswordPreviewData> = mutableListOf()
+    private var generation = 0 // incremented on every change of items
+
+    /**
+     * Items currently shown. This list is updated in place, so it is safe to keep a reference to it
+     */
+    val currentList: List<CardOrPasswordPreviewData> = items
+
+    fun getItem(position: Int): CardOrPasswordPreviewData = items[position]
+
+    override fun getItemCount(): Int = items.size
+
+    /**
+     * Shows [newItems] and notifies about the differences to the current items.
+     * If the items are changed in the meantime (by [moveItem] or [removeItems]), the differences are calculated again
+     */
+    @MainThread
+    suspend fun submitList(newItems: List<CardOrPasswordPreviewData>) {
+        val submittedItems = newItems.toList() // newItems might be changed by the caller
+        while (true) {
+            if (submittedItems == items)
+                return
+            val oldItems = items.toList()
+            val oldGeneration = generation
+            val diffResult = withContext(Dispatchers.Default) {
+                DiffUtil.calculateDiff(DiffCallback(oldItems, submittedItems))
+            }
+            if (generation == oldGeneration) {
+                items.clear()
+                items.addAll(submittedItems)
+                generation++
+                diffResult.dispatchUpdatesTo(this)
+                return
+            }
+        }
+    }
+
+    @MainThread
+    fun moveItem(fromPos: Int, toPos: Int) {
+        items.add(toPos, items.removeAt(fromPos))
+        generation++
+        notifyItemMoved(fromPos, toPos)
+    }
+
+    /**
+     * Removes all items matching [predicate] (see [removeItemsAndNotifyAdapter])
+     */
+    @MainThread
+    fun removeItems(predicate: (CardOrPasswordPreviewData) -> Boolean) {
+        removeItemsAndNotifyAdapter(items, this, predicate)
+        generation++
+    }
+
+    private class DiffCallback(
+        private val oldItems: List<CardOrPasswordPreviewData>,
+        private val newItems: List<CardOrPasswordPreviewData>
+    ) : DiffUtil.Callback() {
+        override fun getOldListSize(): Int = oldItems.size
+        override fun getNewListSize(): Int = newItems.size
+        override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean =
+            oldItems[oldItemPosition].ID == newItems[newItemPosition].ID
+        override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean =
+            oldItems[oldItemPosition] == newItems[newItemPosition]
+    }
+}
@@ -3,11 +3,17 @@ package com.izzdarki.wallet.utils
 import androidx.annotation.ColorInt
 import androidx.recyclerview.selection.ItemKeyProvider
 
+/**
+ * Data shown in the home lists. [creationDate] and [alterationDate] are in milliseconds (see [java.util.Date.getTime]),
+ * so that sorting by date doesn't need to access the preferences
+ */
 data class CardOrPasswordPreviewData(
     val ID: Int,
     val name: String,
     @ColorInt val color: Int,
     val labels: List<String>,
+    val creationDate: Long,
+    val alterationDate: Long,
 )
 
 /**
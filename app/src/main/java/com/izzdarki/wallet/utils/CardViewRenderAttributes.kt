@@ -0,0 +1,77 @@
+package com.izzdarki.wallet.utils
+
+import android.content.Context
+import android.util.LruCache
+import androidx.annotation.ColorInt
+import androidx.core.content.ContextCompat
+import com.google.android.material.card.MaterialCardView
+import izzdarki.wallet.R
+
+/**
+ * Colors and outline of a card view (and its text) showing an item with a certain color, in normal and in selected state.
+ * Computing these needs color space conversions, so they are cached per color and night mode, see [get]
+ */
+class CardViewRenderAttributes private constructor(
+    @ColorInt val backgroundColor: Int,
+    val strokeWidth: Int,
+    @ColorInt val strokeColor: Int,
+    @ColorInt val textColor: Int,
+    @ColorInt val selectedBackgroundColor: Int,
+    val selectedStrokeWidth: Int,
+    @ColorInt val selectedStrokeColor: Int,
+) {
+
+    companion object {
+        private const val CACHE_SIZE = 256
+        const val SELECTED_STROKE_WIDTH = 12
+
+        private val cache = LruCache<Long, CardViewRenderAttributes>(CACHE_SIZE)
+
+        /**
+         * @return Attributes for an item with [color] in the current night mode of [context] (cached)
+         */
+        @JvmStatic
+        fun get(context: Context, @ColorInt color: Int): CardViewRenderAttributes {
+            val nightMode = Utility.isUsingNightModeResources(context)
+            val key = (color.toLong() and 0xffffffffL) or (if (nightMode) 1L shl 32 else 0L)
+            return cache.get(key) ?: create(context, color, nightMode).also { cache.put(key, it) }
+        }
+
+        private fun create(context: Context, @ColorInt color: Int, nightMode: Boolean): CardViewRenderAttributes {
+            // outline if color is similar to background color
+            val outline = Utility.areColorsSimilar(Utility.getDefaultBackgroundColor(context), color)
+
+            // selected: darker in night mode, lighter otherwise
+            val selectedBackgroundColor =
+                if (nightMode) Utility.getDarkerColor(color)
+                else Utility.getLighterColor(color)
+            val selectedStrokeColor = ContextCompat.getColor(context, R.color.card_view_outline_color_black_or_white)
+
+            return CardViewRenderAttributes(
+                backgroundColor = color,
+                strokeWidth = if (outline) context.resources.getDimension(R.dimen.outline_for_similar_colors_stroke_width).toInt() else 0,
+                strokeColor = ContextCompat.getColor(context, R.color.card_view_outline_color),
+                textColor = ContextCompat.getColor(context,
+                    if (Utility.isColorDark(color)) R.color.on_dark_text_color
+                    else R.color.on_light_text_color
+                ),
+                selectedBackgroundColor = selectedBackgroundColor,
+                selectedStrokeWidth = SELECTED_STROKE_WIDTH,
+                selectedStrokeColor =
+                    if (!Utility.areColorsSimilar(selectedStrokeColor, selectedBackgroundColor)) selectedStrokeColor
+                    // should never happen (the selected color is darker in night mode and lighter otherwise), but keep it for weird colors
+                    else ContextCompat.getColor(context, R.color.card_view_outline_color),
+            )
+        }
+    }
+
+    /**
+     * Applies the normal state to [cardView]. Use [AppUtility.makeCardViewSelected] for the selected state
+     */
+    fun applyTo(cardView: MaterialCardView) {
+        cardView.setCardBackgroundColor(backgroundColor)
+        cardView.strokeWidth = strokeWidth
+        if (strokeWidth != 0)
+            cardView.strokeColor = strokeColor
+    }
+}
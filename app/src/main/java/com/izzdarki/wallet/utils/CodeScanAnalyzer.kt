@@ -0,0 +1,126 @@
+package com.izzdarki.wallet.utils
+
+import androidx.camera.core.ImageAnalysis
+import androidx.camera.core.ImageProxy
+import com.google.zxing.BarcodeFormat
+import com.google.zxing.LuminanceSource
+import com.google.zxing.PlanarYUVLuminanceSource
+import com.google.zxing.Result
+import java.io.Closeable
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.min
+
+/**
+ * Scans camera frames of an [ImageAnalysis] (use [ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST], so that slow frames are skipped)
+ * for codes in [FORMATS]. Only the luminance (Y) plane of a centered region of interest is decoded
+ * ([ROI_FRACTION] of the upright frame width and at most as high as wide), rotated upright, so that 1D codes are horizontal.
+ * Each frame is decoded by format specialized readers in parallel (see [ParallelCodeDecoder]).
+ * Codes in [UNCHECKED_FORMATS] are only accepted, if they are read twice in a row, because misreads of worn codes are not detected.
+ * The frame buffers are reused for all frames. [listener] is called once (on the analyzer thread) with the first scanned code.
+ * [close] the analyzer when it's not needed anymore
+ */
+class CodeScanAnalyzer(private val listener: Listener) : ImageAnalysis.Analyzer, Closeable {
+
+    fun interface Listener {
+        fun onCodeScanned(result: Result)
+    }
+
+    companion object {
+        /**
+         * Formats of the card code types (see `CardPreferenceManager.CARD_CODE_TYPE_*`)
+         */
+        @JvmField
+        val FORMATS: List<BarcodeFormat> = listOf(
+            BarcodeFormat.AZTEC,
+            BarcodeFormat.DATA_MATRIX,
+            BarcodeFormat.PDF_417,
+            BarcodeFormat.QR_CODE,
+            BarcodeFormat.CODABAR,
+            BarcodeFormat.CODE_39,
+            BarcodeFormat.CODE_93,
+            BarcodeFormat.CODE_128,
+            BarcodeFormat.EAN_8,
+            BarcodeFormat.EAN_13,
+            BarcodeFormat.ITF,
+            BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E,
+        )
+
+        /**
+         * Formats without (mandatory) check digit
+         */
+        @JvmField
+        val UNCHECKED_FORMATS: Set<BarcodeFormat> = setOf(BarcodeFormat.CODABAR, BarcodeFormat.CODE_39, BarcodeFormat.ITF)
+
+        const val ROI_FRACTION = 0.9
+    }
+
+    private val decoder = ParallelCodeDecoder(FORMATS)
+    private var unconfirmedResult: Result? = null // code in UNCHECKED_FORMATS of the last frame
+    private val scanned = AtomicBoolean(false)
+    private var planeBuffer = ByteArray(0) // Y plane as it is in the frame (including row padding)
+    private var luminanceBuffer = ByteArray(0) // region of interest, rotated upright
+
+    override fun analyze(image: ImageProxy) {
+        image.use {
+            if (scanned.get())
+                return
+            val result = decoder.decode(createLuminanceSource(image))
+            if (result == null || !isConfirmed(result))
+                return
+            if (scanned.compareAndSet(false, true))
+                listener.onCodeScanned(result)
+        }
+    }
+
+    override fun close() {
+        decoder.close()
+    }
+
+    private fun isConfirmed(result: Result): Boolean {
+        if (result.barcodeFormat !in UNCHECKED_FORMATS)
+            return true
+        val lastResult = unconfirmedResult
+        unconfirmedResult = result
+        return lastResult != null && lastResult.barcodeFormat == result.barcodeFormat && lastResult.text == result.text
+    }
+
+    private fun createLuminanceSource(image: ImageProxy): LuminanceSource {
+        val plane = image.planes[0] // Y, pixel stride is always 1
+        val rowStride = plane.rowStride
+        val buffer = plane.buffer
+        buffer.rewind()
+        val planeSize = buffer.remaining()
+        if (planeBuffer.size < planeSize)
+            planeBuffer = ByteArray(planeSize)
+        buffer.get(planeBuffer, 0, planeSize)
+
+        val width = image.width
+        val height = image.height
+        val rotation = image.imageInfo.rotationDegrees
+        val uprightWidth = if (rotation == 90 || rotation == 270) height else width
+        val uprightHeight = if (rotation == 90 || rotation == 270) width else height
+        val roiWidth = (uprightWidth * ROI_FRACTION).toInt()
+        val roiHeight = min(uprightHeight, roiWidth)
+        val roiLeft = (uprightWidth - roiWidth) / 2
+        val roiTop = (uprightHeight - roiHeight) / 2
+
+        if (rotation == 0) // already upright, decode the region directly from the plane
+            return PlanarYUVLuminanceSource(planeBuffer, rowStride, height, roiLeft, roiTop, roiWidth, roiHeight, false)
+
+        if (luminanceBuffer.size < roiWidth * roiHeight)
+            luminanceBuffer = ByteArray(roiWidth * roiHeight)
+        val luminance = luminanceBuffer
+        var index = 0
+        for (y in roiTop until roiTop + roiHeight) {
+            for (x in roiLeft until roiLeft + roiWidth) {
+                luminance[index++] = when (rotation) { // position of the upright pixel (x, y) in the frame
+                    90 -> planeBuffer[(height - 1 - x) * rowStride + y]
+                    180 -> planeBuffer[(height - 1 - y) * rowStride + (width - 1 - x)]
+                    else -> planeBuffer[x * rowStride + (width - 1 - y)] // 270
+                }
+            }
+        }
+        return PlanarYUVLuminanceSource(luminance, roiWidth, roiHeight, 0, 0, roiWidth, roiHeight, false)
+    }
+}
@@ -0,0 +1,125 @@
+package com.izzdarki.wallet.utils
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import androidx.security.crypto.MasterKey
+import com.google.crypto.tink.KeyTemplates
+import com.google.crypto.tink.StreamingAead
+import com.google.crypto.tink.integration.android.AndroidKeysetManager
+import com.google.crypto.tink.streamingaead.StreamingAeadConfig
+import izzdarki.wallet.BuildConfig
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.security.GeneralSecurityException
+
+/**
+ * Creates the master key and the primitive for encrypted files only once per process
+ * (each creation is a round trip to the Android keystore) and shares them between all encryption and decryption.
+ *
+ * Files are encrypted exactly like [androidx.security.crypto.EncryptedFile] with
+ * [androidx.security.crypto.EncryptedFile.FileEncryptionScheme.AES256_GCM_HKDF_4KB] and the default keyset,
+ * so existing files stay readable and files written here can be read with [androidx.security.crypto.EncryptedFile]
+ */
+object CryptoSession {
+
+    private const val TAG = "CryptoSession"
+
+    // same as androidx.security.crypto.EncryptedFile
+    private const val KEYSTORE_PATH_URI = "android-keystore://"
+    private const val FILE_KEYSET_PREFERENCES_NAME = "__androidx_security_crypto_encrypted_file_pref__"
+    private const val FILE_KEYSET_ALIAS = "__androidx_security_crypto_encrypted_file_keyset__"
+    private const val FILE_KEY_TEMPLATE = "AES256_GCM_HKDF_4KB"
+
+    @Volatile private var masterKey: MasterKey? = null
+    @Volatile private var streamingAead: StreamingAead? = null
+
+    /**
+     * Time it took to create the master key (in milliseconds, -1 if not created yet)
+     */
+    @Volatile var masterKeyLatencyMillis = -1L
+        private set
+
+    /**
+     * Time it took to load the keyset for encrypted files (in milliseconds, -1 if not loaded yet)
+     */
+    @Volatile var streamingAeadLatencyMillis = -1L
+        private set
+
+    /**
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    @JvmStatic
+    fun getMasterKey(context: Context): MasterKey {
+        masterKey?.let { return it }
+        synchronized(this) {
+            masterKey?.let { return it }
+            val startTime = SystemClock.elapsedRealtime()
+            val newMasterKey = MasterKey.Builder(context.applicationContext)
+                .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                .build()
+            masterKeyLatencyMillis = SystemClock.elapsedRealtime() - startTime
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "master key created in $masterKeyLatencyMillis ms")
+            masterKey = newMasterKey
+            return newMasterKey
+        }
+    }
+
+    /**
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    @JvmStatic
+    fun getStreamingAead(context: Context): StreamingAead {
+        streamingAead?.let { return it }
+        synchronized(this) {
+            streamingAead?.let { return it }
+            val masterKey = getMasterKey(context)
+            val startTime = SystemClock.elapsedRealtime()
+            StreamingAeadConfig.register()
+            val keysetHandle = AndroidKeysetManager.Builder()
+                .withKeyTemplate(KeyTemplates.get(FILE_KEY_TEMPLATE))
+                .withSharedPref(context.applicationContext, FILE_KEYSET_ALIAS, FILE_KEYSET_PREFERENCES_NAME)
+                .withMasterKeyUri(KEYSTORE_PATH_URI + masterKey.keyAlias)
+                .build()
+                .keysetHandle
+            val newStreamingAead = keysetHandle.getPrimitive(StreamingAead::class.java)
+            streamingAeadLatencyMillis = SystemClock.elapsedRealtime() - startTime
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "file keyset loaded in $streamingAeadLatencyMillis ms")
+            streamingAead = newStreamingAead
+            return newStreamingAead
+        }
+    }
+
+    /**
+     * Opens [file] for decryption (like [androidx.security.crypto.EncryptedFile.openFileInput])
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    @JvmStatic
+    fun openFileInput(context: Context, file: File): InputStream {
+        return getStreamingAead(context).newDecryptingStream(FileInputStream(file), getAssociatedData(file))
+    }
+
+    /**
+     * Opens [file] for encryption (like [androidx.security.crypto.EncryptedFile.openFileOutput])
+     * @throws IOException If [file] already exists
+     * @throws GeneralSecurityException
+     */
+    @JvmStatic
+    fun openFileOutput(context: Context, file: File): OutputStream {
+        if (file.exists())
+            throw IOException("output file already exists, please use a new file: " + file.name)
+        val streamingAead = getStreamingAead(context)
+        return streamingAead.newEncryptingStream(FileOutputStream(file), getAssociatedData(file))
+    }
+
+    private fun getAssociatedData(file: File) = file.name.toByteArray(Charsets.UTF_8)
+}
@@ -27,6 +27,8 @@ class ItemProperty {
         this.secret = secret
     }
 
+    fun copy() = ItemProperty(propertyID, name, value, secret)
+
     private fun generateNewPropertyID(properties: MutableList<ItemProperty>): Int {
         var newID: Int
         val random = Random()
@@ -0,0 +1,23 @@
+package com.izzdarki.wallet.utils
+
+/**
+ * Encoded barcode at module resolution with one bit per module (row by row, most significant bit first),
+ * small enough to be stored with the card (see [BarcodeRenderer.prerender] and [BarcodeRenderer.createMask])
+ */
+class PackedBarcode(val width: Int, val height: Int, val bits: ByteArray) {
+
+    init {
+        require(width > 0 && height > 0) { "Invalid size: $width x $height" }
+        require(bits.size == byteCount(width, height)) { "Expected ${byteCount(width, height)} bytes, got ${bits.size}" }
+    }
+
+    operator fun get(x: Int, y: Int): Boolean {
+        val index = y * width + x
+        return (bits[index ushr 3].toInt() shl (index and 7)) and 0x80 != 0
+    }
+
+    companion object {
+        @JvmStatic
+        fun byteCount(width: Int, height: Int) = (width * height + 7) / 8
+    }
+}
@@ -0,0 +1,183 @@
+package com.izzdarki.wallet.utils
+
+import com.google.zxing.BarcodeFormat
+import com.google.zxing.BinaryBitmap
+import com.google.zxing.DecodeHintType
+import com.google.zxing.LuminanceSource
+import com.google.zxing.Reader
+import com.google.zxing.ReaderException
+import com.google.zxing.Result
+import com.google.zxing.aztec.AztecReader
+import com.google.zxing.common.HybridBinarizer
+import com.google.zxing.datamatrix.DataMatrixReader
+import com.google.zxing.oned.MultiFormatOneDReader
+import com.google.zxing.oned.MultiFormatUPCEANReader
+import com.google.zxing.pdf417.PDF417Reader
+import com.google.zxing.qrcode.QRCodeReader
+import java.io.Closeable
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Decodes an image with one specialized reader per group of [formats] in parallel (UPC/EAN, other 1D codes, QR, Data Matrix, Aztec, PDF 417),
+ * so that the time needed depends on the number of cores instead of the number of formats.
+ * The first result wins, the other readers are cancelled (they stop at the next row or before binarizing, see [CancellableLuminanceSource]).
+ * [decode] is meant to be called from one thread at a time, [close] the decoder when it's not needed anymore
+ */
+class ParallelCodeDecoder @JvmOverloads constructor(
+    formats: Collection<BarcodeFormat>,
+    threadCount: Int = defaultThreadCount(),
+) : Closeable {
+
+    companion object {
+        private val UPC_EAN_FORMATS = setOf(
+            BarcodeFormat.EAN_8,
+            BarcodeFormat.EAN_13,
+            BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E,
+        )
+        private val OTHER_ONE_D_FORMATS = setOf(
+            BarcodeFormat.CODABAR,
+            BarcodeFormat.CODE_39,
+            BarcodeFormat.CODE_93,
+            BarcodeFormat.CODE_128,
+            BarcodeFormat.ITF,
+            BarcodeFormat.RSS_14,
+            BarcodeFormat.RSS_EXPANDED,
+        )
+
+        /**
+         * One core is left for the camera and the UI
+         */
+        @JvmStatic
+        fun defaultThreadCount() = max(1, min(4, Runtime.getRuntime().availableProcessors() - 1))
+    }
+
+    /**
+     * A reader with its hints. A reader is used by one thread at a time, because frames are decoded one after another
+     */
+    private class ReaderTask(private val reader: Reader, private val hints: Map<DecodeHintType, Any>) {
+        fun decode(source: LuminanceSource, cancelled: AtomicBoolean): Result? {
+            if (cancelled.get())
+                return null
+            return try {
+                // own binarizer, because binarizers are not thread safe
+                reader.decode(BinaryBitmap(HybridBinarizer(CancellableLuminanceSource(source, cancelled))), hints)
+            } catch (e: ReaderException) {
+                null
+            } catch (e: CancellationException) {
+                null
+            } finally {
+                reader.reset()
+            }
+        }
+    }
+
+    /**
+     * Throws a [CancellationException] when a row or the matrix is requested after [cancelled] has been set
+     */
+    private class CancellableLuminanceSource(
+        private val source: LuminanceSource,
+        private val cancelled: AtomicBoolean
+    ) : LuminanceSource(source.width, source.height) {
+
+        override fun getRow(y: Int, row: ByteArray?): ByteArray {
+            if (cancelled.get())
+                throw CancellationException()
+            return source.getRow(y, row)
+        }
+
+        override fun getMatrix(): ByteArray {
+            if (cancelled.get())
+                throw CancellationException()
+            return source.matrix
+        }
+    }
+
+    private val tasks: List<ReaderTask>
+    private val executor: ExecutorService
+
+    init {
+        val tasks = ArrayList<ReaderTask>()
+        val upcEanFormats = formats.filter { it in UPC_EAN_FORMATS }
+        if (upcEanFormats.isNotEmpty()) {
+            val hints = mapOf(DecodeHintType.POSSIBLE_FORMATS to upcEanFormats)
+            tasks.add(ReaderTask(MultiFormatUPCEANReader(hints), hints))
+        }
+        val otherOneDFormats = formats.filter { it in OTHER_ONE_D_FORMATS }
+        if (otherOneDFormats.isNotEmpty()) {
+            val hints = mapOf(DecodeHintType.POSSIBLE_FORMATS to otherOneDFormats)
+            tasks.add(ReaderTask(MultiFormatOneDReader(hints), hints))
+        }
+        if (BarcodeFormat.QR_CODE in formats)
+            tasks.add(ReaderTask(QRCodeReader(), emptyMap()))
+        if (BarcodeFormat.DATA_MATRIX in formats)
+            tasks.add(ReaderTask(DataMatrixReader(), emptyMap()))
+        if (BarcodeFormat.AZTEC in formats)
+            tasks.add(ReaderTask(AztecReader(), emptyMap()))
+        if (BarcodeFormat.PDF_417 in formats)
+            tasks.add(ReaderTask(PDF417Reader(), emptyMap()))
+        require(tasks.isNotEmpty()) { "No supported format in $formats" }
+
+        this.tasks = tasks
+        executor = Executors.newFixedThreadPool(min(threadCount, tasks.size))
+    }
+
+    /**
+     * Decodes [source] with all readers in parallel and waits for the first result.
+     * When this function returns, no reader uses [source] anymore (so its buffer can be reused)
+     * @return First decoded code or `null` if no reader found a code (or the decoder has been closed)
+     */
+    fun decode(source: LuminanceSource): Result? {
+        val cancelled = AtomicBoolean(false)
+        val completionService = ExecutorCompletionService<Result?>(executor)
+        val futures = ArrayList<Future<Result?>>(tasks.size)
+        try {
+            for (task in tasks)
+                futures.add(completionService.submit { task.decode(source, cancelled) })
+            repeat(futures.size) {
+                val result = try {
+                    completionService.take().get()
+                } catch (e: ExecutionException) {
+                    null // unexpected exception of a reader (for example on invalid input), the others might still find the code
+                }
+                if (result != null)
+                    return result
+            }
+            return null
+        } catch (e: RejectedExecutionException) {
+            return null // closed
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            return null
+        } finally {
+            cancelled.set(true)
+            for (future in futures) {
+                try {
+                    future.get()
+                } catch (e: ExecutionException) {
+                    // already handled
+                } catch (e: CancellationException) {
+                    // never started
+                } catch (e: InterruptedException) {
+                    Thread.currentThread().interrupt()
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the threads. Following [decode] calls return `null`
+     */
+    override fun close() {
+        executor.shutdown()
+    }
+}
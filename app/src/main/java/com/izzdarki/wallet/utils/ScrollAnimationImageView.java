@@ -10,11 +10,16 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Build;
 import android.text.TextPaint;
 import android.view.ViewGroup;
 import android.widget.Space;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.appcompat.widget.LinearLayoutCompat;
 import androidx.core.widget.NestedScrollView;
 
@@ -32,11 +37,21 @@ public class ScrollAnimationImageView
     protected Space spaceInLinearLayout;
     protected Bitmap frontImage = null;
     protected Bitmap backImage = null;
-    protected Bitmap.Config config;
     protected boolean hidden = false;
     protected String frontText = null;
     protected String backText = null;
 
+    // reused for every frame
+    protected final RectF animationImageRect = new RectF();
+    protected final Paint animationImagePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    protected final RectF bannerRect = new RectF();
+    protected final TextPaint textPaint = new TextPaint();
+
+    // hardware rendering (API 29+), see setHardwareRenderingEnabled
+    protected boolean hardwareRenderingEnabled = true;
+    protected HardwareImage frontHardwareImage = null;
+    protected HardwareImage backHardwareImage = null;
+
     public ScrollAnimationImageView(Context context) {
         super(context);
         setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
@@ -112,6 +127,7 @@ public class ScrollAnimationImageView
 
     public void removeFrontImage() {
         frontImage = null;
+        frontHardwareImage = null;
         if (backImage == null)
             setImageResource(android.R.color.transparent);
         updateSpace();
@@ -120,6 +136,7 @@ public class ScrollAnimationImageView
 
     public void removeBackImage() {
         backImage = null;
+        backHardwareImage = null;
         if (frontImage == null)
             setImageResource(android.R.color.transparent);
         updateSpace();
@@ -130,6 +147,22 @@ public class ScrollAnimationImageView
         setImage(backImage, false);
     }
 
+    /**
+     * When enabled (default) and the view is hardware accelerated on API 29+, the images are uploaded to the GPU once
+     * and drawn (and squashed during the flip) as RenderNodes, so that the render thread does the work instead of the main thread.
+     * Otherwise the images are drawn directly from memory
+     */
+    public void setHardwareRenderingEnabled(boolean enabled) {
+        hardwareRenderingEnabled = enabled;
+        frontHardwareImage = createHardwareImage(frontImage);
+        backHardwareImage = createHardwareImage(backImage);
+        drawAnimation();
+    }
+
+    public boolean isHardwareRenderingEnabled() {
+        return hardwareRenderingEnabled;
+    }
+
     public void updateSpace() {
         if (spaceInLinearLayout != null)
             spaceInLinearLayout.setLayoutParams(new LinearLayoutCompat.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, getSpaceHeight()));
@@ -152,75 +185,89 @@ public class ScrollAnimationImageView
         drawAnimation();
     }
 
+    /**
+     * Redraws the animation for the current scroll position. Nothing is allocated, the images are drawn directly in {@link #onDraw(Canvas)}
+     */
     public void drawAnimation() {
-        if (!hidden && (frontImage != null || backImage != null)) {
-            Bitmap frame = Bitmap.createBitmap(linearLayout.getWidth(), getHeight(), config);
-            Canvas canvas = new Canvas(frame);
-
-            float spaceY = spaceInLinearLayout.getY() - scrollView.getScrollY();
-
-            if (frontImage != null && backImage != null) {
-                float frontY = spaceY - getFrontImageOffset() + getExtraFrontImageOffsetBefore();
-                float animationY = frontY + getAnimationSpace();
-                float backY = animationY;
-                float endY = backY + getBackImageOffset() + backImage.getHeight();
-
-                if (frontY > 0) { // front
-                    float x = (linearLayout.getWidth() - frontImage.getWidth()) / 2f;
-                    float y = getFrontImageOffset() + frontY;
-                    canvas.drawBitmap(frontImage, x, y, null);
-                    drawTextOnCanvas(frontText, x, y, canvas, frontImage.getHeight());
-                }
+        invalidate();
+    }
 
-                else if (animationY > 0) { // animation
-                    float animationProgress = 1f - animationY / getAnimationSpace();
-
-                    Bitmap animationImage;
-                    String text;
-                    try {
-                        if (animationProgress < 0.5) {
-                            animationImage = Bitmap.createScaledBitmap(frontImage, frontImage.getWidth(), (int) (frontImage.getHeight() * (1 - animationProgress * 2)), false);
-                            text = frontText;
-                        }
-                        else {
-                            animationImage = Bitmap.createScaledBitmap(backImage, backImage.getWidth(), (int) (backImage.getHeight() * (animationProgress * 2 - 1)), false);
-                            text = backText;
-                        }
-                    } catch (IllegalArgumentException e) { // half way through the animation (bitmap height == 0)
-                        super.setImageResource(android.R.color.transparent);
-                        return;
-                    }
-
-                    float x = (linearLayout.getWidth() - animationImage.getWidth()) / 2f;
-                    float y = (getHeight() - animationImage.getHeight()) / 2.0f;
-                    canvas.drawBitmap(animationImage, x, y, null);
-                    drawTextOnCanvas(text, x, y, canvas, animationImage.getHeight());
-
-                } else if (endY > 0) { // back
-                    float x = (linearLayout.getWidth() - backImage.getWidth()) / 2f;
-                    float y = getBackImageOffset() + backY;
-                    canvas.drawBitmap(backImage, x, y, null);
-                    drawTextOnCanvas(backText, x, y, canvas, backImage.getHeight());
-                }
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (hidden || (frontImage == null && backImage == null) || linearLayout == null)
+            return;
+
+        int frameWidth = linearLayout.getWidth();
+        float spaceY = spaceInLinearLayout.getY() - scrollView.getScrollY();
+
+        if (frontImage != null && backImage != null) {
+            float frontY = spaceY - getFrontImageOffset() + getExtraFrontImageOffsetBefore();
+            float animationY = frontY + getAnimationSpace();
+            float backY = animationY;
+            float endY = backY + getBackImageOffset() + backImage.getHeight();
+
+            if (frontY > 0) { // front
+                float x = (frameWidth - frontImage.getWidth()) / 2f;
+                float y = getFrontImageOffset() + frontY;
+                drawImage(canvas, true, x, y, frontImage.getHeight(), frameWidth);
+            }
+
+            else if (animationY > 0) { // animation
+                float animationProgress = 1f - animationY / getAnimationSpace();
 
-                else { // view is not on screen
-                    super.setImageResource(android.R.color.transparent);
+                boolean isFront = animationProgress < 0.5;
+                Bitmap animationImage = isFront ? frontImage : backImage;
+                int animationImageHeight = isFront
+                        ? (int) (frontImage.getHeight() * (1 - animationProgress * 2))
+                        : (int) (backImage.getHeight() * (animationProgress * 2 - 1));
+                if (animationImageHeight <= 0) // half way through the animation
                     return;
-                }
-            }
-            else if (frontImage != null) {
-                float x = (linearLayout.getWidth() - frontImage.getWidth()) / 2f;
-                canvas.drawBitmap(frontImage, x, spaceY, null);
-                drawTextOnCanvas(frontText, x, spaceY, canvas, frontImage.getHeight());
+
+                // squash the image vertically while drawing it
+                float x = (frameWidth - animationImage.getWidth()) / 2f;
+                float y = (getHeight() - animationImageHeight) / 2.0f;
+                drawImage(canvas, isFront, x, y, animationImageHeight, frameWidth);
+
+            } else if (endY > 0) { // back
+                float x = (frameWidth - backImage.getWidth()) / 2f;
+                float y = getBackImageOffset() + backY;
+                drawImage(canvas, false, x, y, backImage.getHeight(), frameWidth);
             }
-            else { // backImage != null
-                float x = (linearLayout.getWidth() - backImage.getWidth()) / 2f;
-                canvas.drawBitmap(backImage, x, spaceY, null);
-                drawTextOnCanvas(backText, x, spaceY, canvas, backImage.getHeight());
+            // else view is not on screen
+        }
+        else if (frontImage != null) {
+            float x = (frameWidth - frontImage.getWidth()) / 2f;
+            drawImage(canvas, true, x, spaceY, frontImage.getHeight(), frameWidth);
+        }
+        else { // backImage != null
+            float x = (frameWidth - backImage.getWidth()) / 2f;
+            drawImage(canvas, false, x, spaceY, backImage.getHeight(), frameWidth);
+        }
+    }
+
+    /**
+     * Draws the front or back image (with its text) at x, y, squashed vertically to height
+     */
+    protected void drawImage(Canvas canvas, boolean isFront, float x, float y, int height, int frameWidth) {
+        Bitmap image = isFront ? frontImage : backImage;
+        String text = isFront ? frontText : backText;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && canvas.isHardwareAccelerated()) {
+            HardwareImage hardwareImage = isFront ? frontHardwareImage : backHardwareImage;
+            if (hardwareImage != null) {
+                hardwareImage.draw(this, canvas, text, frameWidth, x, y, height);
+                return;
             }
+        }
 
-            super.setImageBitmap(frame);
+        if (height == image.getHeight())
+            canvas.drawBitmap(image, x, y, null);
+        else {
+            animationImageRect.set(x, y, x + image.getWidth(), y + height);
+            canvas.drawBitmap(image, null, animationImageRect, animationImagePaint);
         }
+        drawText(text, x, y, canvas, frameWidth, height);
     }
 
     /**
@@ -261,23 +308,32 @@ public class ScrollAnimationImageView
         double scale = Math.min(scaleVertical, scaleHorizontal);
         image = Bitmap.createScaledBitmap(image, (int) (image.getWidth() * scale), (int) (image.getHeight() * scale), false);
 
-        if (isFront)
-            frontImage = getRoundedCornerBitmap(image);
-        else
-            backImage = getRoundedCornerBitmap(image);
+        Bitmap roundedImage = getRoundedCornerBitmap(image); // always has an alpha channel, even if image has not (RGB_565)
+        HardwareImage hardwareImage = createHardwareImage(roundedImage);
+        if (isFront) {
+            frontImage = roundedImage;
+            frontHardwareImage = hardwareImage;
+        }
+        else {
+            backImage = roundedImage;
+            backHardwareImage = hardwareImage;
+        }
 
-        config = image.getConfig();
         updateSpace();
         drawAnimation();
+    }
 
-        if (frontImage != null && backImage != null && frontImage.getConfig() != backImage.getConfig())
-            throw new IllegalStateException("ScrollAnimationView: front and back images have to have the same configuration");
+    @Nullable
+    protected HardwareImage createHardwareImage(@Nullable Bitmap image) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && hardwareRenderingEnabled && image != null)
+            return HardwareImage.create(image);
+        return null;
     }
 
-    protected static void drawTextOnCanvas(String text, float x, float y, Canvas canvas, int imageHeight) {
+    protected void drawText(String text, float x, float y, Canvas canvas, int frameWidth, int imageHeight) {
         if (text != null) {
             final int bannerSize = 100;
-            final int roundPx = (int) (canvas.getWidth() / widthToCornerRadiusRatio);
+            final int roundPx = (int) (frameWidth / widthToCornerRadiusRatio);
 
             if (imageHeight > bannerSize + roundPx) {
                 float fadeOutProgress;
@@ -286,16 +342,15 @@ public class ScrollAnimationImageView
                 else
                     fadeOutProgress = ((float) (imageHeight - (bannerSize + roundPx))) / ((bannerSize + roundPx) * 3);
 
-                TextPaint paint = new TextPaint();
-
-                paint.setColor(Color.argb((int) (150 * fadeOutProgress), 0, 0, 0));
-                paint.setStyle(Paint.Style.FILL);
+                textPaint.setColor(Color.argb((int) (150 * fadeOutProgress), 0, 0, 0));
+                textPaint.setStyle(Paint.Style.FILL);
 
-                canvas.drawRect(new RectF(x, y + roundPx, x + canvas.getWidth(), y + bannerSize + roundPx), paint);
+                bannerRect.set(x, y + roundPx, x + frameWidth, y + bannerSize + roundPx);
+                canvas.drawRect(bannerRect, textPaint);
 
-                paint.setColor(Color.argb((int) (255 * fadeOutProgress), 255, 255, 255));
-                paint.setTextSize((float)bannerSize / 2);
-                canvas.drawText(text, 0, text.length(), x + (canvas.getWidth() - paint.measureText(text)) / 2, y + roundPx + paint.getTextSize() * 1.25f, paint);
+                textPaint.setColor(Color.argb((int) (255 * fadeOutProgress), 255, 255, 255));
+                textPaint.setTextSize((float)bannerSize / 2);
+                canvas.drawText(text, 0, text.length(), x + (frameWidth - textPaint.measureText(text)) / 2, y + roundPx + textPaint.getTextSize() * 1.25f, textPaint);
             }
         }
     }
@@ -322,4 +377,52 @@ public class ScrollAnimationImageView
 
         return output;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Image uploaded to the GPU once ({@link Bitmap.Config#HARDWARE}) and recorded with its text into a RenderNode.
+     * Moving and squashing it only changes properties of the RenderNode, which are applied on the render thread
+     */
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    protected static class HardwareImage {
+        protected final Bitmap bitmap;
+        protected final RenderNode renderNode = new RenderNode("ScrollAnimationImageView");
+        protected String recordedText = null;
+        protected int recordedFrameWidth = -1;
+
+        protected HardwareImage(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            renderNode.setPosition(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            renderNode.setClipToBounds(false); // the text banner is as wide as the frame
+            renderNode.setPivotX(0);
+            renderNode.setPivotY(0);
+        }
+
+        /**
+         * @return HardwareImage of image or null, if image could not be uploaded
+         */
+        @Nullable
+        protected static HardwareImage create(Bitmap image) {
+            Bitmap bitmap = image.copy(Bitmap.Config.HARDWARE, false);
+            return bitmap != null ? new HardwareImage(bitmap) : null;
+        }
+
+        protected void draw(ScrollAnimationImageView view, Canvas canvas, String text, int frameWidth, float x, float y, int height) {
+            if (!renderNode.hasDisplayList() || frameWidth != recordedFrameWidth || (text == null ? recordedText != null : !text.equals(recordedText))) {
+                RecordingCanvas recordingCanvas = renderNode.beginRecording();
+                try {
+                    recordingCanvas.drawBitmap(bitmap, 0, 0, null);
+                    view.drawText(text, 0, 0, recordingCanvas, frameWidth, bitmap.getHeight());
+                } finally {
+                    renderNode.endRecording();
+                }
+                recordedText = text;
+                recordedFrameWidth = frameWidth;
+            }
+            renderNode.setTranslationX(x);
+            renderNode.setTranslationY(y);
+            renderNode.setScaleY((float) height / bitmap.getHeight());
+            canvas.drawRenderNode(renderNode);
+        }
+    }
+}
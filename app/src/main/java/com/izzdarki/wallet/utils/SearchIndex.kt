@@ -0,0 +1,116 @@
+package com.izzdarki.wallet.utils
+
+/**
+ * In-memory index for searching [items] by name and labels (ignoring case), never accesses storage.
+ *
+ * Queries with at least [GRAM_LENGTH] characters only check items containing all trigrams of the query.
+ * If a query contains the previous query (for example while typing), only the previous matches are checked.
+ */
+class SearchIndex(val items: List<CardOrPasswordPreviewData>) {
+
+    companion object {
+        const val GRAM_LENGTH = 3
+        private const val FIELD_SEPARATOR = '\u0000' // never part of a query, so matches never span two fields
+    }
+
+    private val haystacks = Array(items.size) { position -> normalize(items[position]) }
+    private val positionsByID = HashMap<Int, Int>(items.size) // not SparseIntArray, so that the index works in unit tests
+    private val gramPositions = HashMap<String, IntArray>() // gram -> ascending positions of all items containing it
+
+    private var lastQuery: String? = null
+    private var lastMatches: IntArray = IntArray(0)
+
+    init {
+        val gramPositionLists = HashMap<String, MutableList<Int>>()
+        haystacks.forEachIndexed { position, haystack ->
+            positionsByID[items[position].ID] = position
+            for (start in 0..haystack.length - GRAM_LENGTH) {
+                val positions = gramPositionLists.getOrPut(haystack.substring(start, start + GRAM_LENGTH)) { mutableListOf() }
+                if (positions.lastOrNull() != position) // every position only once
+                    positions.add(position)
+            }
+        }
+        for ((gram, positions) in gramPositionLists)
+            gramPositions[gram] = positions.toIntArray()
+    }
+
+    /**
+     * @param sortedItems Items in the order to return (usually [items] sorted)
+     * @return Items of [sortedItems] whose name or labels contain [query], in the same order
+     */
+    fun filter(sortedItems: List<CardOrPasswordPreviewData>, query: String): List<CardOrPasswordPreviewData> {
+        if (query.isEmpty())
+            return sortedItems
+
+        val normalizedQuery = query.lowercase()
+        val matches = BooleanArray(items.size)
+        for (position in search(normalizedQuery))
+            matches[position] = true
+
+        return sortedItems.filter { item ->
+            val position = positionsByID[item.ID]
+            if (position != null && items[position] == item)
+                matches[position]
+            else
+                normalize(item).contains(normalizedQuery) // not indexed (changed since the index was built)
+        }
+    }
+
+    /**
+     * @return Ascending positions of all items containing [normalizedQuery]
+     */
+    @Synchronized private fun search(normalizedQuery: String): IntArray {
+        val previousQuery = lastQuery
+        var candidates: IntArray? =
+            if (previousQuery != null && normalizedQuery.contains(previousQuery)) lastMatches
+            else null // all items
+
+        if (normalizedQuery.length >= GRAM_LENGTH) {
+            // Narrow down to the items containing the rarest gram of the query
+            var rarestGramPositions: IntArray? = null
+            for (start in 0..normalizedQuery.length - GRAM_LENGTH) {
+                val positions = gramPositions[normalizedQuery.substring(start, start + GRAM_LENGTH)] ?: IntArray(0)
+                if (rarestGramPositions == null || positions.size < rarestGramPositions.size)
+                    rarestGramPositions = positions
+            }
+            candidates = intersect(candidates, rarestGramPositions!!)
+        }
+
+        val matches = (candidates ?: IntArray(items.size) { it })
+            .filter { position -> haystacks[position].contains(normalizedQuery) }
+            .toIntArray()
+        lastQuery = normalizedQuery
+        lastMatches = matches
+        return matches
+    }
+
+    /**
+     * @return Positions contained in both ascending arrays, where `null` means all positions
+     */
+    private fun intersect(positions1: IntArray?, positions2: IntArray): IntArray {
+        if (positions1 == null)
+            return positions2
+        val result = ArrayList<Int>(minOf(positions1.size, positions2.size))
+        var index1 = 0
+        var index2 = 0
+        while (index1 < positions1.size && index2 < positions2.size) {
+            when {
+                positions1[index1] < positions2[index2] -> index1++
+                positions1[index1] > positions2[index2] -> index2++
+                else -> {
+                    result.add(positions1[index1])
+                    index1++
+                    index2++
+                }
+            }
+        }
+        return result.toIntArray()
+    }
+
+    private fun normalize(item: CardOrPasswordPreviewData): String {
+        val builder = StringBuilder(item.name.lowercase())
+        for (label in item.labels)
+            builder.append(FIELD_SEPARATOR).append(label.lowercase())
+        return builder.toString()
+    }
+}
@@ -24,7 +24,6 @@ import androidx.core.view.allViews
 import androidx.recyclerview.widget.ItemTouchHelper
 import androidx.recyclerview.widget.RecyclerView
 import androidx.security.crypto.EncryptedSharedPreferences
-import androidx.security.crypto.MasterKey
 import izzdarki.wallet.BuildConfig
 import java.io.*
 import java.security.GeneralSecurityException
@@ -60,9 +59,7 @@ object Utility {
     @JvmStatic
     fun openEncryptedPreferences(context: Context, preferencesName: String): SharedPreferences {
         try {
-            val mainKey = MasterKey.Builder(context)
-                .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
-                .build()
+            val mainKey = CryptoSession.getMasterKey(context)
             return EncryptedSharedPreferences.create(
                 context,
                 preferencesName,
@@ -77,10 +74,13 @@ object Utility {
         }
     }
 
+    /**
+     * @param moveItem Moves the item at fromPos to toPos and notifies the adapter
+     */
     @JvmStatic
-    fun<E> attachDragAndDropToRecyclerView(
+    fun attachDragAndDropToRecyclerView(
         recyclerView: RecyclerView,
-        items: List<E>,
+        moveItem: (fromPos: Int, toPos: Int) -> Unit,
         onDragAndDropListener: () -> Unit
     ): ItemTouchHelper {
         val it = ItemTouchHelper(
@@ -93,19 +93,7 @@ object Utility {
                     viewHolder: RecyclerView.ViewHolder,
                     target: RecyclerView.ViewHolder
                 ): Boolean {
-                    val fromPos = viewHolder.adapterPosition
-                    val toPos = target.adapterPosition
-
-                    // move item in the list, by swapping with neighbour until the destination position is reached (Moves all the items between one up or down)
-                    if (fromPos < toPos) {
-                        for (i in fromPos until toPos)
-                            Collections.swap(items, i, i + 1)
-                    }
-                    else {
-                        for (i in fromPos downUntil toPos)
-                            Collections.swap(items, i, i - 1)
-                    }
-                    recyclerView.adapter?.notifyItemMoved(fromPos, toPos) // calling notifyItemMoved is enough
+                    moveItem(viewHolder.adapterPosition, target.adapterPosition) // moves all the items between one up or down
 
                     onDragAndDropListener()
                     return false
@@ -117,6 +105,29 @@ object Utility {
         return it
     }
 
+    /**
+     * Removes all items matching [predicate] from [items] and notifies [adapter] once per range of adjacent removed items
+     */
+    fun<E> removeItemsAndNotifyAdapter(
+        items: MutableList<E>,
+        adapter: RecyclerView.Adapter<*>?,
+        predicate: (E) -> Boolean
+    ) {
+        var index = items.size - 1
+        while (index >= 0) { // from the end, so that notified positions stay valid
+            if (!predicate(items[index])) {
+                index--
+                continue
+            }
+            val rangeEnd = index
+            while (index >= 0 && predicate(items[index]))
+                index--
+            val rangeStart = index + 1
+            items.subList(rangeStart, rangeEnd + 1).clear()
+            adapter?.notifyItemRangeRemoved(rangeStart, rangeEnd - rangeStart + 1)
+        }
+    }
+
     @JvmStatic
     @ColorInt
     fun getDefaultBackgroundColor(context: Context): Int {
@@ -484,7 +495,7 @@ object Utility {
     }
 
     /**
-     * Scales a bitmap and saves it to a file
+     * Scales a bitmap (with filtering, see [CardImageCropper.scaleDown]) and saves it to a file (JPEG, not encrypted)
      * @param scale scale value
      * @param bitmap source bitmap
      * @param toImageFile destination file
@@ -495,11 +506,10 @@ object Utility {
         var scaledBitmap = bitmap
         if (scale != 0.0) {
             //Utility.Timer timer = new Utility.Timer("Utility: create scaled bitmap");
-            scaledBitmap = Bitmap.createScaledBitmap(
+            scaledBitmap = CardImageCropper.scaleDown( // filtered, in steps
                 scaledBitmap,
-                (scaledBitmap.width * scale).toInt(),
-                (scaledBitmap.height * scale).toInt(),
-                false
+                max(1, (scaledBitmap.width * scale).toInt()),
+                max(1, (scaledBitmap.height * scale).toInt())
             )
             //timer.end();
             var out: FileOutputStream? = null
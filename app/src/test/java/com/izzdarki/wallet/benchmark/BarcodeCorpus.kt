@@ -0,0 +1,222 @@
+package com.izzdarki.wallet.benchmark
+
+import com.google.zxing.BarcodeFormat
+import com.google.zxing.LuminanceSource
+import com.google.zxing.MultiFormatWriter
+import com.google.zxing.PlanarYUVLuminanceSource
+import com.google.zxing.common.BitMatrix
+import java.io.File
+import java.util.Random
+import kotlin.math.abs
+import kotlin.math.ceil
+import kotlin.math.cos
+import kotlin.math.floor
+import kotlin.math.roundToInt
+import kotlin.math.sin
+
+/**
+ * 8 bit gray image, 0 is black
+ */
+internal class GrayImage(val width: Int, val height: Int, val pixels: ByteArray = ByteArray(width * height)) {
+
+    operator fun get(x: Int, y: Int): Int = pixels[y * width + x].toInt() and 0xff
+
+    operator fun set(x: Int, y: Int, value: Int) {
+        pixels[y * width + x] = value.coerceIn(0, 255).toByte()
+    }
+
+    /**
+     * Luminance source like the one of the scanner (see `CodeScanAnalyzer`)
+     */
+    fun toLuminanceSource(): LuminanceSource = PlanarYUVLuminanceSource(pixels, width, height, 0, 0, width, height, false)
+
+    /**
+     * Writes the image as binary PGM (can be opened by most image viewers)
+     */
+    fun writePgm(file: File) {
+        file.outputStream().buffered().use {
+            it.write("P5\n$width $height\n255\n".toByteArray(Charsets.US_ASCII))
+            it.write(pixels)
+        }
+    }
+}
+
+internal class CorpusSample(
+    val format: BarcodeFormat,
+    val code: String,
+    val expectedText: String,
+    val noise: Int,
+    val blurRadius: Int,
+    val rotation: Double,
+    val image: GrayImage,
+) {
+    val name: String
+        get() = "${format}_noise${noise}_blur${blurRadius}_rotation${rotation.roundToInt()}"
+
+    val isClean: Boolean
+        get() = noise == 0 && blurRadius == 0 && rotation == 0.0
+}
+
+/**
+ * Reproducible corpus of barcode images of all card code types (`CardPreferenceManager.CARD_CODE_TYPE_*`)
+ * with all combinations of [NOISE_LEVELS], [BLUR_RADII] and [ROTATIONS].
+ * The corpus is generated from [SEED] instead of being stored as image files, so it's the same on every run and machine
+ * (set the system property [PROPERTY_CORPUS_DIRECTORY] to write it as PGM images)
+ */
+internal object BarcodeCorpus {
+
+    const val SEED = 20231018L
+    const val PROPERTY_CORPUS_DIRECTORY = "benchmark.corpusDirectory"
+
+    val NOISE_LEVELS = intArrayOf(0, 16, 32) // standard deviation of the gray values
+    val BLUR_RADII = intArrayOf(0, 1) // box blur, pixels
+    val ROTATIONS = doubleArrayOf(0.0, 4.0, -8.0) // degrees
+
+    private const val MODULE_SIZE_1D = 3 // pixels per module
+    private const val BAR_HEIGHT_1D = 60
+    private const val MODULE_SIZE_2D = 4
+    private const val MARGIN = 24 // white border (not all formats have a quiet zone)
+    private const val BLACK = 24 // printed black is not completely black
+    private const val WHITE = 232
+
+    /**
+     * Code and the text that a reader returns for it of every format (valid check digits)
+     */
+    val CODES: Map<BarcodeFormat, Pair<String, String>> = linkedMapOf(
+        BarcodeFormat.AZTEC to ("WALLET-AZTEC-0123456789" to "WALLET-AZTEC-0123456789"),
+        BarcodeFormat.DATA_MATRIX to ("WALLET-DATAMATRIX-0123456789" to "WALLET-DATAMATRIX-0123456789"),
+        BarcodeFormat.PDF_417 to ("WALLET-PDF417-0123456789" to "WALLET-PDF417-0123456789"),
+        BarcodeFormat.QR_CODE to ("https://github.com/IzzDarki/Wallet" to "https://github.com/IzzDarki/Wallet"),
+        BarcodeFormat.CODABAR to ("A40156B" to "40156"), // start and stop characters are not returned
+        BarcodeFormat.CODE_39 to ("WALLET123" to "WALLET123"),
+        BarcodeFormat.CODE_93 to ("WALLET123" to "WALLET123"),
+        BarcodeFormat.CODE_128 to ("Wallet-123456" to "Wallet-123456"),
+        BarcodeFormat.EAN_8 to ("96385074" to "96385074"),
+        BarcodeFormat.EAN_13 to ("4006381333931" to "4006381333931"),
+        BarcodeFormat.ITF to ("1234567890" to "1234567890"),
+        BarcodeFormat.UPC_A to ("036000291452" to "036000291452"),
+        BarcodeFormat.UPC_E to ("01234565" to "01234565"),
+    )
+
+    val samples: List<CorpusSample> by lazy { generate() }
+
+    private fun generate(): List<CorpusSample> {
+        val random = Random(SEED)
+        val samples = ArrayList<CorpusSample>()
+        for ((format, codeAndText) in CODES) {
+            val (code, expectedText) = codeAndText
+            val clean = render(MultiFormatWriter().encode(code, format, 0, 0))
+            for (rotation in ROTATIONS) {
+                val rotated = if (rotation == 0.0) clean else rotate(clean, rotation)
+                for (blurRadius in BLUR_RADII) {
+                    val blurred = if (blurRadius == 0) rotated else blur(rotated, blurRadius)
+                    for (noise in NOISE_LEVELS) {
+                        val image = if (noise == 0) blurred else addNoise(blurred, noise, random)
+                        samples.add(CorpusSample(format, code, expectedText, noise, blurRadius, rotation, image))
+                    }
+                }
+            }
+        }
+
+        System.getProperty(PROPERTY_CORPUS_DIRECTORY)?.let { path ->
+            val directory = File(path)
+            directory.mkdirs()
+            for (sample in samples)
+                sample.image.writePgm(File(directory, sample.name + ".pgm"))
+        }
+        return samples
+    }
+
+    /**
+     * Renders [bitMatrix] at module resolution (as encoded by `BarcodeRenderer`) scaled up and with [MARGIN]
+     */
+    private fun render(bitMatrix: BitMatrix): GrayImage {
+        val is1D = bitMatrix.height == 1
+        val moduleWidth = if (is1D) MODULE_SIZE_1D else MODULE_SIZE_2D
+        val moduleHeight = if (is1D) BAR_HEIGHT_1D else MODULE_SIZE_2D
+        val image = GrayImage(bitMatrix.width * moduleWidth + 2 * MARGIN, bitMatrix.height * moduleHeight + 2 * MARGIN)
+        for (y in 0 until image.height) {
+            for (x in 0 until image.width) {
+                val moduleX = (x - MARGIN).floorDiv(moduleWidth)
+                val moduleY = (y - MARGIN).floorDiv(moduleHeight)
+                val isSet = moduleX in 0 until bitMatrix.width && moduleY in 0 until bitMatrix.height && bitMatrix[moduleX, moduleY]
+                image[x, y] = if (isSet) BLACK else WHITE
+            }
+        }
+        return image
+    }
+
+    /**
+     * Rotates [image] by [degrees] around its center (bilinear), the result is as big as the rotated bounds
+     */
+    private fun rotate(image: GrayImage, degrees: Double): GrayImage {
+        val radians = Math.toRadians(degrees)
+        val cos = cos(radians)
+        val sin = sin(radians)
+        val width = ceil(abs(image.width * cos) + abs(image.height * sin)).toInt()
+        val height = ceil(abs(image.width * sin) + abs(image.height * cos)).toInt()
+        val rotated = GrayImage(width, height)
+        val centerX = image.width / 2.0
+        val centerY = image.height / 2.0
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                // inverse rotation of the target pixel into the source image
+                val dx = x - width / 2.0
+                val dy = y - height / 2.0
+                val sourceX = dx * cos + dy * sin + centerX
+                val sourceY = -dx * sin + dy * cos + centerY
+                rotated[x, y] = sampleBilinear(image, sourceX, sourceY)
+            }
+        }
+        return rotated
+    }
+
+    private fun sampleBilinear(image: GrayImage, x: Double, y: Double): Int {
+        val x0 = floor(x).toInt()
+        val y0 = floor(y).toInt()
+        val fx = x - x0
+        val fy = y - y0
+        fun pixel(px: Int, py: Int) =
+            if (px in 0 until image.width && py in 0 until image.height) image[px, py] else WHITE
+        val top = pixel(x0, y0) * (1 - fx) + pixel(x0 + 1, y0) * fx
+        val bottom = pixel(x0, y0 + 1) * (1 - fx) + pixel(x0 + 1, y0 + 1) * fx
+        return (top * (1 - fy) + bottom * fy).roundToInt()
+    }
+
+    /**
+     * Box blur with a (2 * [radius] + 1)² kernel (horizontal and vertical pass)
+     */
+    private fun blur(image: GrayImage, radius: Int): GrayImage {
+        val horizontal = GrayImage(image.width, image.height)
+        for (y in 0 until image.height) {
+            for (x in 0 until image.width) {
+                var sum = 0
+                for (k in -radius..radius)
+                    sum += image[(x + k).coerceIn(0, image.width - 1), y]
+                horizontal[x, y] = sum / (2 * radius + 1)
+            }
+        }
+        val blurred = GrayImage(image.width, image.height)
+        for (y in 0 until image.height) {
+            for (x in 0 until image.width) {
+                var sum = 0
+                for (k in -radius..radius)
+                    sum += horizontal[x, (y + k).coerceIn(0, image.height - 1)]
+                blurred[x, y] = sum / (2 * radius + 1)
+            }
+        }
+        return blurred
+    }
+
+    /**
+     * Adds gaussian noise with standard deviation [noise]
+     */
+    private fun addNoise(image: GrayImage, noise: Int, random: Random): GrayImage {
+        val noisy = GrayImage(image.width, image.height)
+        for (y in 0 until image.height) {
+            for (x in 0 until image.width)
+                noisy[x, y] = image[x, y] + (random.nextGaussian() * noise).roundToInt()
+        }
+        return noisy
+    }
+}
@@ -0,0 +1,96 @@
+package com.izzdarki.wallet.benchmark
+
+import com.google.zxing.BinaryBitmap
+import com.google.zxing.DecodeHintType
+import com.google.zxing.LuminanceSource
+import com.google.zxing.MultiFormatReader
+import com.google.zxing.ReaderException
+import com.google.zxing.Result
+import com.google.zxing.common.HybridBinarizer
+import com.izzdarki.wallet.utils.CodeScanAnalyzer
+import com.izzdarki.wallet.utils.ParallelCodeDecoder
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Decodes every image of [BarcodeCorpus] with the sequential reader (as used before [ParallelCodeDecoder])
+ * and with [ParallelCodeDecoder] and prints throughput, latency percentiles and success rate per format and per distortion.
+ * Run with `./gradlew :app:testDebugUnitTest --tests '*BarcodeDecodeBenchmark*' -i` to see the tables
+ */
+class BarcodeDecodeBenchmark {
+
+    private companion object {
+        const val WARM_UP_ROUNDS = 2
+        const val ROUNDS = 5
+    }
+
+    /**
+     * A decoder under test, [decode] returns `null` if nothing was found
+     */
+    private class Decoder(val name: String, val decode: (LuminanceSource) -> Result?)
+
+    @Test
+    fun decodeCorpus() {
+        val samples = BarcodeCorpus.samples
+        assertTrue(samples.isNotEmpty())
+
+        val sequentialReader = MultiFormatReader().apply {
+            setHints(mapOf(DecodeHintType.POSSIBLE_FORMATS to CodeScanAnalyzer.FORMATS))
+        }
+        val sequential = Decoder("sequential") { source ->
+            try {
+                sequentialReader.decodeWithState(BinaryBitmap(HybridBinarizer(source)))
+            } catch (e: ReaderException) {
+                null
+            } finally {
+                sequentialReader.reset()
+            }
+        }
+
+        ParallelCodeDecoder(CodeScanAnalyzer.FORMATS).use { parallelDecoder ->
+            val parallel = Decoder("parallel (${ParallelCodeDecoder.defaultThreadCount()} threads)") { parallelDecoder.decode(it) }
+
+            val cleanSuccessCounts = HashMap<Decoder, Int>()
+            for (decoder in listOf(sequential, parallel)) {
+                repeat(WARM_UP_ROUNDS) {
+                    for (sample in samples)
+                        decoder.decode(sample.image.toLuminanceSource())
+                }
+
+                val statsByFormat = LinkedHashMap<String, BenchmarkStats>()
+                val statsByDistortion = LinkedHashMap<String, BenchmarkStats>()
+                val total = BenchmarkStats("all")
+                var cleanSuccessCount = 0
+                repeat(ROUNDS) { round ->
+                    for (sample in samples) {
+                        val source = sample.image.toLuminanceSource()
+                        val start = System.nanoTime()
+                        val result = decoder.decode(source)
+                        val latency = System.nanoTime() - start
+                        val success = result != null && result.barcodeFormat == sample.format && result.text == sample.expectedText
+
+                        statsByFormat.getOrPut(sample.format.name) { BenchmarkStats(sample.format.name) }.add(latency, success)
+                        for (distortion in distortionsOf(sample))
+                            statsByDistortion.getOrPut(distortion) { BenchmarkStats(distortion) }.add(latency, success)
+                        total.add(latency, success)
+                        if (round == 0 && sample.isClean && success)
+                            cleanSuccessCount++
+                    }
+                }
+                cleanSuccessCounts[decoder] = cleanSuccessCount
+
+                BenchmarkStats.print("Decode ${decoder.name}, by format", statsByFormat.values + total)
+                BenchmarkStats.print("Decode ${decoder.name}, by distortion", statsByDistortion.values)
+            }
+
+            // the parallel decoder must not lose codes, that the sequential reader finds
+            assertTrue(cleanSuccessCounts[parallel]!! >= cleanSuccessCounts[sequential]!!)
+        }
+    }
+
+    private fun distortionsOf(sample: CorpusSample) = listOf(
+        "noise ${sample.noise}",
+        "blur ${sample.blurRadius}",
+        "rotation ${sample.rotation}°",
+    )
+}
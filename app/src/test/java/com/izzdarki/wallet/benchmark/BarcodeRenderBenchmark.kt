@@ -0,0 +1,67 @@
+package com.izzdarki.wallet.benchmark
+
+import com.izzdarki.wallet.utils.BarcodeRenderer
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Benchmarks the steps of showing a card code (see `ShowCardActivity`) for every format of [BarcodeCorpus]:
+ * - encode: encoding the code without a cache (when the card has no pre-rendered code)
+ * - pack: packing the encoded code to be stored with the card (when it's saved)
+ * - unpack: creating the mask pixels from the stored code (when a card with pre-rendered code is shown)
+ *
+ * Creating the bitmap itself and drawing need a device. Run with `./gradlew :app:testDebugUnitTest --tests '*BarcodeRenderBenchmark*' -i`
+ */
+class BarcodeRenderBenchmark {
+
+    private companion object {
+        const val WARM_UP_ROUNDS = 50
+        const val ROUNDS = 200
+    }
+
+    @Test
+    fun renderCodes() {
+        val encodeStats = ArrayList<BenchmarkStats>()
+        val packStats = ArrayList<BenchmarkStats>()
+        val unpackStats = ArrayList<BenchmarkStats>()
+
+        for ((format, codeAndText) in BarcodeCorpus.CODES) {
+            val code = codeAndText.first
+            val encode = BenchmarkStats(format.name)
+            val pack = BenchmarkStats(format.name)
+            val unpack = BenchmarkStats(format.name)
+
+            repeat(WARM_UP_ROUNDS + ROUNDS) { round ->
+                var start = System.nanoTime()
+                val bitMatrix = BarcodeRenderer.encode(code, format)
+                val encodeLatency = System.nanoTime() - start
+
+                start = System.nanoTime()
+                val packed = BarcodeRenderer.pack(bitMatrix)
+                val packLatency = System.nanoTime() - start
+
+                start = System.nanoTime()
+                val pixels = BarcodeRenderer.createMaskPixels(packed, packed.width)
+                val unpackLatency = System.nanoTime() - start
+
+                if (round >= WARM_UP_ROUNDS) {
+                    encode.add(encodeLatency)
+                    pack.add(packLatency)
+                    unpack.add(unpackLatency)
+                }
+
+                // the stored code must show exactly the encoded code
+                if (round == 0)
+                    assertEquals(BarcodeRenderer.createMaskPixels(bitMatrix, bitMatrix.width).toList(), pixels.toList())
+            }
+
+            encodeStats.add(encode)
+            packStats.add(pack)
+            unpackStats.add(unpack)
+        }
+
+        BenchmarkStats.print("Encode (no pre-rendered code)", encodeStats)
+        BenchmarkStats.print("Pack (when saving)", packStats)
+        BenchmarkStats.print("Unpack mask pixels (when showing a pre-rendered code)", unpackStats)
+    }
+}
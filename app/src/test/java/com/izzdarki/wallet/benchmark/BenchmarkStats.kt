@@ -0,0 +1,73 @@
+package com.izzdarki.wallet.benchmark
+
+import java.util.Locale
+import kotlin.math.ceil
+
+/**
+ * Collects latencies (and successes) of one benchmarked operation, for example decoding one format
+ */
+internal class BenchmarkStats(val name: String) {
+
+    private var latenciesNanos = LongArray(64)
+    private var count = 0
+    private var successCount = 0
+
+    fun add(latencyNanos: Long, success: Boolean = true) {
+        if (count == latenciesNanos.size)
+            latenciesNanos = latenciesNanos.copyOf(count * 2)
+        latenciesNanos[count++] = latencyNanos
+        if (success)
+            successCount++
+    }
+
+    val successRate: Double
+        get() = if (count == 0) 0.0 else successCount.toDouble() / count
+
+    /**
+     * Operations per second of a single thread
+     */
+    val throughput: Double
+        get() {
+            var total = 0L
+            for (i in 0 until count)
+                total += latenciesNanos[i]
+            return if (total == 0L) 0.0 else count * 1e9 / total
+        }
+
+    /**
+     * @param percentile 0 - 100
+     * @return Latency in milliseconds, that [percentile] percent of the operations did not exceed
+     */
+    fun latencyMillis(percentile: Double): Double {
+        if (count == 0)
+            return 0.0
+        val sorted = latenciesNanos.copyOf(count).apply { sort() }
+        val index = (ceil(percentile / 100 * count).toInt() - 1).coerceIn(0, count - 1)
+        return sorted[index] / 1e6
+    }
+
+    fun toRow(): String = String.format(
+        Locale.ROOT,
+        "%-28s %6d %8.1f%% %10.1f/s %9.3f %9.3f %9.3f",
+        name, count, successRate * 100, throughput, latencyMillis(50.0), latencyMillis(90.0), latencyMillis(99.0)
+    )
+
+    companion object {
+        fun header(): String = String.format(
+            Locale.ROOT,
+            "%-28s %6s %9s %12s %9s %9s %9s",
+            "", "runs", "success", "throughput", "p50 ms", "p90 ms", "p99 ms"
+        )
+
+        /**
+         * Prints a table of [stats] with the title [title]
+         */
+        fun print(title: String, stats: Collection<BenchmarkStats>) {
+            println()
+            println(title)
+            println(header())
+            for (stat in stats)
+                println(stat.toRow())
+        }
+    }
+}
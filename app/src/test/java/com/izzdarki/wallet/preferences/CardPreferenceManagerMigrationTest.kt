@@ -0,0 +1,150 @@
+package com.izzdarki.wallet.preferences
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+/**
+ * Migration of cards stored with per-field keys (storage version 0) to [CardRecord]s (see `CardPreferenceManager.migrateToRecords`)
+ */
+class CardPreferenceManagerMigrationTest {
+
+    private companion object {
+        const val KEY_STORAGE_VERSION = "storage_version"
+        const val KEY_ALL_IDS = "card_ids"
+        const val SEPARATOR = "&§ß$" // of PreferenceArrayString
+    }
+
+    /**
+     * Card 1 with all fields and two properties, card 2 with only a name
+     */
+    private fun createLegacyPreferences(failingCommits: Int = 0) = InMemorySharedPreferences(failingCommits).apply {
+        values[KEY_ALL_IDS] = "1,2"
+        values["1.name"] = "Library"
+        values["1.code"] = "0123456789"
+        values["1.code_type"] = CardPreferenceManager.CARD_CODE_TYPE_EAN_13
+        values["1.code_type_text"] = true
+        values["1.color"] = 0xff336699.toInt()
+        values["1.labels"] = "city${SEPARATOR}books"
+        values["1.front_image_file_path"] = "/files/card_images/front.jpg"
+        values["1.back_image_file_path"] = "/files/card_images/back.jpg"
+        values["1.creation_date"] = 1_600_000_000_000
+        values["1.alteration_date"] = 1_700_000_000_000
+        values["1.card_properties_ids"] = "7,-3"
+        values["1.7.name"] = "PIN"
+        values["1.7.value"] = "1234"
+        values["1.7.property_secret"] = true
+        values["1.-3.name"] = "Note"
+        values["1.-3.value"] = "second card"
+        values["2.name"] = "Gym"
+        values["custom_sorting_no_grouping"] = "2,1"
+    }
+
+    @Test
+    fun migratesAllFields() {
+        val preferences = createLegacyPreferences()
+
+        CardPreferenceManager.migrateToRecords(preferences)
+
+        val record = CardRecord.fromPreference(preferences.getString("1.record", null))!!
+        assertEquals("Library", record.name)
+        assertEquals("0123456789", record.code)
+        assertEquals(CardPreferenceManager.CARD_CODE_TYPE_EAN_13, record.codeType)
+        assertTrue(record.codeTypeText)
+        assertEquals(0xff336699.toInt(), record.color)
+        assertEquals(listOf("city", "books"), record.labels)
+        assertEquals("/files/card_images/front.jpg", record.frontImagePath)
+        assertEquals("/files/card_images/back.jpg", record.backImagePath)
+        assertEquals(1_600_000_000_000, record.creationDate)
+        assertEquals(1_700_000_000_000, record.alterationDate)
+        assertEquals(listOf(7, -3), record.properties.map { it.propertyID })
+        assertEquals(listOf("PIN", "Note"), record.properties.map { it.name })
+        assertEquals(listOf("1234", "second card"), record.properties.map { it.value })
+        assertEquals(listOf(true, false), record.properties.map { it.secret })
+
+        val onlyName = CardRecord.fromPreference(preferences.getString("2.record", null))!!
+        assertEquals("Gym", onlyName.name)
+        assertNull(onlyName.color) // default color depends on the context
+        assertEquals(-1, onlyName.codeType)
+        assertTrue(onlyName.properties.isEmpty())
+    }
+
+    @Test
+    fun removesLegacyKeysAndSetsVersion() {
+        val preferences = createLegacyPreferences()
+
+        CardPreferenceManager.migrateToRecords(preferences)
+
+        assertEquals(
+            setOf(KEY_STORAGE_VERSION, KEY_ALL_IDS, "custom_sorting_no_grouping", "1.record", "2.record"),
+            preferences.values.keys
+        )
+        assertEquals(CardRecord.VERSION, preferences.getInt(KEY_STORAGE_VERSION, 0))
+        assertEquals("1,2", preferences.getString(KEY_ALL_IDS, null))
+    }
+
+    @Test
+    fun keepsExistingRecords() {
+        val preferences = createLegacyPreferences()
+        val existingRecord = CardRecord(name = "Already migrated").toPreference()
+        preferences.values["2.record"] = existingRecord
+
+        CardPreferenceManager.migrateToRecords(preferences)
+
+        assertEquals(existingRecord, preferences.getString("2.record", null))
+        assertEquals("Library", CardRecord.fromPreference(preferences.getString("1.record", null))!!.name)
+    }
+
+    @Test
+    fun doesNothingIfMigrated() {
+        val preferences = createLegacyPreferences()
+        preferences.values[KEY_STORAGE_VERSION] = CardRecord.VERSION
+
+        CardPreferenceManager.migrateToRecords(preferences)
+
+        assertEquals(0, preferences.commitCount)
+        assertFalse(preferences.contains("1.record"))
+        assertEquals("Library", preferences.getString("1.name", null))
+    }
+
+    @Test
+    fun migratesEmptyPreferences() {
+        val preferences = InMemorySharedPreferences()
+
+        CardPreferenceManager.migrateToRecords(preferences)
+
+        assertEquals(mapOf(KEY_STORAGE_VERSION to CardRecord.VERSION), preferences.all)
+    }
+
+    @Test
+    fun retriesFailedCommit() {
+        val preferences = createLegacyPreferences(failingCommits = 2)
+
+        CardPreferenceManager.migrateToRecords(preferences)
+
+        assertEquals(3, preferences.commitCount)
+        assertEquals(CardRecord.VERSION, preferences.getInt(KEY_STORAGE_VERSION, 0))
+        assertEquals("Library", CardRecord.fromPreference(preferences.getString("1.record", null))!!.name)
+        assertFalse(preferences.contains("1.name"))
+    }
+
+    @Test
+    fun throwsIfCommitKeepsFailing() {
+        val preferences = createLegacyPreferences(failingCommits = Int.MAX_VALUE)
+
+        try {
+            CardPreferenceManager.migrateToRecords(preferences)
+            fail("Expected IllegalStateException")
+        } catch (e: IllegalStateException) {
+            // expected
+        }
+
+        // nothing is lost, the next start migrates again
+        assertEquals(0, preferences.getInt(KEY_STORAGE_VERSION, 0))
+        assertEquals("Library", preferences.getString("1.name", null))
+        assertFalse(preferences.contains("1.record"))
+    }
+}
@@ -0,0 +1,104 @@
+package com.izzdarki.wallet.preferences
+
+import com.izzdarki.wallet.utils.ItemProperty
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Encoding and decoding of [CardRecord] (without code matrix, `android.util.Base64` is not available in unit tests)
+ */
+class CardRecordTest {
+
+    @Test
+    fun roundTrip() {
+        val record = CardRecord(
+            name = "Library",
+            color = 0xff336699.toInt(),
+            creationDate = 1_600_000_000_000,
+            alterationDate = 1_700_000_000_000,
+            labels = listOf("city", "books"),
+            code = "0123456789",
+            codeType = CardPreferenceManager.CARD_CODE_TYPE_CODE_128,
+            codeTypeText = true,
+            frontImagePath = "/files/card_images/front.jpg",
+            backImagePath = "/files/card_images/back.jpg",
+            properties = mutableListOf(
+                ItemProperty(7, "PIN", "1234", true),
+                ItemProperty(-3, "Note", "\"quoted\"\nsecond line", false),
+            ),
+        )
+
+        val decoded = CardRecord.fromPreference(record.toPreference())!!
+
+        assertEquals(record.name, decoded.name)
+        assertEquals(record.color, decoded.color)
+        assertEquals(record.creationDate, decoded.creationDate)
+        assertEquals(record.alterationDate, decoded.alterationDate)
+        assertEquals(record.labels, decoded.labels)
+        assertEquals(record.code, decoded.code)
+        assertEquals(record.codeType, decoded.codeType)
+        assertEquals(record.codeTypeText, decoded.codeTypeText)
+        assertEquals(record.frontImagePath, decoded.frontImagePath)
+        assertEquals(record.backImagePath, decoded.backImagePath)
+        assertEquals(record.properties.size, decoded.properties.size)
+        for ((property, decodedProperty) in record.properties.zip(decoded.properties)) {
+            assertEquals(property.propertyID, decodedProperty.propertyID)
+            assertEquals(property.name, decodedProperty.name)
+            assertEquals(property.value, decodedProperty.value)
+            assertEquals(property.secret, decodedProperty.secret)
+        }
+        assertNull(decoded.codeMatrix)
+    }
+
+    @Test
+    fun roundTripEmptyRecord() {
+        val decoded = CardRecord.fromPreference(CardRecord().toPreference())!!
+
+        assertEquals("", decoded.name)
+        assertNull(decoded.color)
+        assertEquals(0L, decoded.creationDate)
+        assertTrue(decoded.labels.isEmpty())
+        assertEquals("", decoded.code)
+        assertEquals(-1, decoded.codeType)
+        assertFalse(decoded.codeTypeText)
+        assertNull(decoded.frontImagePath)
+        assertNull(decoded.backImagePath)
+        assertTrue(decoded.properties.isEmpty())
+    }
+
+    @Test
+    fun missingRecord() {
+        assertNull(CardRecord.fromPreference(null))
+    }
+
+    @Test
+    fun missingFieldsUseDefaults() {
+        val decoded = CardRecord.fromPreference("{\"v\":1,\"name\":\"Gym\"}")!!
+
+        assertEquals("Gym", decoded.name)
+        assertNull(decoded.color)
+        assertEquals(-1, decoded.codeType)
+        assertTrue(decoded.properties.isEmpty())
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun newerVersionThrows() {
+        val json = JSONObject(CardRecord(name = "Gym").toPreference())
+        json.put("v", CardRecord.VERSION + 1)
+        CardRecord.fromPreference(json.toString())
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun invalidJsonThrows() {
+        CardRecord.fromPreference("{\"v\":1,\"name\":")
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun missingVersionThrows() {
+        CardRecord.fromPreference("{\"name\":\"Gym\"}")
+    }
+}
@@ -0,0 +1,73 @@
+package com.izzdarki.wallet.preferences
+
+import android.content.SharedPreferences
+
+/**
+ * [SharedPreferences] in a map, instead of the (encrypted) preferences file.
+ * The first [failingCommits] commits fail without changing anything
+ */
+internal class InMemorySharedPreferences(var failingCommits: Int = 0) : SharedPreferences {
+
+    val values = HashMap<String, Any?>()
+    var commitCount = 0
+        private set
+
+    override fun getAll(): Map<String, *> = HashMap(values)
+    override fun getString(key: String, defValue: String?): String? = values[key] as String? ?: defValue
+    @Suppress("UNCHECKED_CAST")
+    override fun getStringSet(key: String, defValues: Set<String>?): Set<String>? = values[key] as Set<String>? ?: defValues
+    override fun getInt(key: String, defValue: Int): Int = values[key] as Int? ?: defValue
+    override fun getLong(key: String, defValue: Long): Long = values[key] as Long? ?: defValue
+    override fun getFloat(key: String, defValue: Float): Float = values[key] as Float? ?: defValue
+    override fun getBoolean(key: String, defValue: Boolean): Boolean = values[key] as Boolean? ?: defValue
+    override fun contains(key: String): Boolean = key in values
+
+    override fun edit(): SharedPreferences.Editor = Editor()
+
+    override fun registerOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {}
+    override fun unregisterOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {}
+
+    private inner class Editor : SharedPreferences.Editor {
+        private val changes = LinkedHashMap<String, Any?>() // null means remove, like in the android implementation
+        private var clear = false
+
+        override fun putString(key: String, value: String?) = change(key, value)
+        override fun putStringSet(key: String, values: Set<String>?) = change(key, values?.toSet())
+        override fun putInt(key: String, value: Int) = change(key, value)
+        override fun putLong(key: String, value: Long) = change(key, value)
+        override fun putFloat(key: String, value: Float) = change(key, value)
+        override fun putBoolean(key: String, value: Boolean) = change(key, value)
+        override fun remove(key: String) = change(key, null)
+
+        override fun clear(): SharedPreferences.Editor {
+            clear = true
+            return this
+        }
+
+        private fun change(key: String, value: Any?): SharedPreferences.Editor {
+            changes[key] = value
+            return this
+        }
+
+        override fun commit(): Boolean {
+            commitCount++
+            if (failingCommits > 0) {
+                failingCommits--
+                return false
+            }
+            if (clear)
+                values.clear()
+            for ((key, value) in changes) {
+                if (value == null)
+                    values.remove(key)
+                else
+                    values[key] = value
+            }
+            return true
+        }
+
+        override fun apply() {
+            commit()
+        }
+    }
+}
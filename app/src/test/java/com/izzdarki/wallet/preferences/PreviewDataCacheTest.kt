@@ -0,0 +1,59 @@
+package com.izzdarki.wallet.preferences
+
+import com.izzdarki.wallet.utils.CardOrPasswordPreviewData
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class PreviewDataCacheTest {
+
+    private fun item(ID: Int, name: String = "item $ID") = CardOrPasswordPreviewData(ID, name, 0, listOf(), 0, 0)
+
+    private fun PreviewDataCache.readAllOf(vararg stored: CardOrPasswordPreviewData) =
+        readAll(loadAll = { stored.toList() }, load = { ID -> stored.first { it.ID == ID } })
+
+    @Test
+    fun updateOnlyReplacesCachedItems() {
+        val cache = PreviewDataCache()
+        cache.readAllOf(item(1), item(2))
+
+        cache.update(item(2, "renamed"))
+        cache.update(item(3)) // not in the list of all IDs
+
+        assertEquals(listOf(item(1), item(2, "renamed")), cache.readAllOf())
+    }
+
+    @Test
+    fun invalidateOnlyReloadsCachedItems() {
+        val cache = PreviewDataCache()
+        cache.readAllOf(item(1), item(2))
+
+        cache.invalidate(1)
+        cache.invalidate(3) // not in the list of all IDs
+
+        assertEquals(listOf(item(1, "reloaded"), item(2)), cache.readAllOf(item(1, "reloaded"), item(2), item(3)))
+    }
+
+    @Test
+    fun putAndAddAppendNewItems() {
+        val cache = PreviewDataCache()
+        cache.readAllOf(item(1))
+
+        cache.put(item(2))
+        cache.add(3)
+        cache.update(item(3, "updated before loaded"))
+
+        assertEquals(listOf(item(1), item(2), item(3, "updated before loaded")), cache.readAllOf())
+    }
+
+    @Test
+    fun removedItemsAreNotReloaded() {
+        val cache = PreviewDataCache()
+        cache.readAllOf(item(1), item(2))
+
+        cache.invalidate(2)
+        cache.remove(2)
+        cache.update(item(2))
+
+        assertEquals(listOf(item(1)), cache.readAllOf(item(1)))
+    }
+}
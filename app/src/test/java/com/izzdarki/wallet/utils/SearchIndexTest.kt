@@ -0,0 +1,73 @@
+package com.izzdarki.wallet.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * [SearchIndex] has to return the same items as checking name and labels with `contains(ignoreCase = true)`,
+ * no matter which queries came before
+ */
+class SearchIndexTest {
+
+    private fun item(ID: Int, name: String, vararg labels: String) = CardOrPasswordPreviewData(ID, name, 0, labels.toList(), 0, 0)
+
+    private val items = listOf(
+        item(1, "Library", "city", "books"),
+        item(2, "Gym", "sports"),
+        item(3, "Library of the University", "books"),
+        item(4, "Bank", "Money", "city"),
+        item(5, "Bookstore"),
+        item(6, "LIBRARY CARD"),
+        item(7, "Swimming pool", "sports", "city"),
+        item(8, ""),
+    )
+
+    private fun expected(sortedItems: List<CardOrPasswordPreviewData>, query: String) = sortedItems.filter { item ->
+        item.name.contains(query, ignoreCase = true) || item.labels.any { it.contains(query, ignoreCase = true) }
+    }
+
+    private fun assertSameAsContains(index: SearchIndex, sortedItems: List<CardOrPasswordPreviewData>, vararg queries: String) {
+        for (query in queries)
+            assertEquals("query \"$query\"", expected(sortedItems, query), index.filter(sortedItems, query))
+    }
+
+    @Test
+    fun growingQuery() {
+        assertSameAsContains(SearchIndex(items), items, "l", "li", "lib", "libr", "libra", "library", "library ", "library of", "library card")
+    }
+
+    @Test
+    fun shrinkingQuery() {
+        assertSameAsContains(SearchIndex(items), items, "library card", "library", "libr", "lib", "li", "l", "")
+    }
+
+    @Test
+    fun unrelatedQueries() {
+        assertSameAsContains(SearchIndex(items), items, "book", "city", "gym", "sports", "nothing", "pool", "ok", "BOOKS", "y", "bank")
+    }
+
+    @Test
+    fun queriesShorterThanGramLength() {
+        assertEquals(3, SearchIndex.GRAM_LENGTH)
+        assertSameAsContains(SearchIndex(items), items, "", "b", "bo", "o", "ci", "y", "Y", " ", "x", "xy")
+    }
+
+    @Test
+    fun queryNotSpanningFields() {
+        assertSameAsContains(SearchIndex(items), items, "librarycity", "library city", "gymsports", "moneycity")
+    }
+
+    @Test
+    fun keepsOrderOfSortedItems() {
+        val index = SearchIndex(items)
+        val sortedItems = items.sortedBy { it.name }
+        assertSameAsContains(index, sortedItems, "li", "lib", "library", "b", "book")
+    }
+
+    @Test
+    fun changedItemsAreNotIndexed() {
+        val index = SearchIndex(items)
+        val changedItems = items.map { if (it.ID == 2) item(2, "Gym and library", "sports") else it } + item(9, "New library")
+        assertSameAsContains(index, changedItems, "library", "gym", "lib", "new", "sports")
+    }
+}